@@ -14,18 +14,26 @@
  */
 package org.ow2.chameleon.syndication.rome;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Date;
 import java.util.Dictionary;
 import java.util.List;
 import java.util.Properties;
+import java.util.UUID;
 
 import org.osgi.service.event.Event;
 import org.osgi.service.event.EventAdmin;
 import org.ow2.chameleon.syndication.FeedEntry;
+import org.ow2.chameleon.syndication.FeedEntryFilter;
 import org.ow2.chameleon.syndication.FeedReader;
 import org.ow2.chameleon.syndication.FeedWriter;
+import org.ow2.chameleon.syndication.IdentifiedFeedEntry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import com.sun.syndication.feed.synd.SyndCategory;
 import com.sun.syndication.feed.synd.SyndCategoryImpl;
@@ -34,10 +42,19 @@ import com.sun.syndication.feed.synd.SyndContentImpl;
 import com.sun.syndication.feed.synd.SyndEntry;
 import com.sun.syndication.feed.synd.SyndEntryImpl;
 import com.sun.syndication.feed.synd.SyndFeed;
+import com.sun.syndication.feed.synd.SyndFeedImpl;
 
 /**
  * Provides common behavior of feed writer. It mostly implements the reading
  * features.
+ * <p>
+ * The number of entries kept by the writer can be bounded by count, by age
+ * and by content size. When a bound is exceeded, the oldest entries are
+ * evicted from the end of the {@link EntryStore}: as each entry is evicted
+ * once, the eviction cost is constant per added entry.
+ * <p>
+ * When an archive directory is set, the contents of the added entries are
+ * kept off-heap in an {@link EntryArchive}, and decoded when accessed.
  */
 public abstract class AbstractFeedWriter implements FeedWriter {
 
@@ -46,6 +63,49 @@ public abstract class AbstractFeedWriter implements FeedWriter {
      */
     private int m_recent;
 
+    /**
+     * Maximum number of entries, unbounded if not positive.
+     */
+    private int m_maxEntries = -1;
+
+    /**
+     * Maximum age of the entries in ms, unbounded if not positive.
+     */
+    private long m_maxAge = -1;
+
+    /**
+     * Maximum size of the entry contents in bytes, unbounded if not
+     * positive.
+     */
+    private long m_maxBytes = -1;
+
+    /**
+     * The archive of the entry contents, <code>null</code> to keep the
+     * entries on the heap.
+     */
+    private EntryArchive m_archive;
+
+    /**
+     * The archive directory, <code>null</code> to keep the entries on the
+     * heap.
+     */
+    private File m_archiveDirectory;
+
+    /**
+     * Logger.
+     */
+    private Logger m_logger = LoggerFactory.getLogger(this.toString());
+
+    /**
+     * Version of the feed, incremented on each modification.
+     */
+    private long m_version;
+
+    /**
+     * The entries of the feed, created on first use.
+     */
+    private EntryStore m_store;
+
     /**
      * Sets the number of recent items.
      * @param recent the number of recent item
@@ -55,11 +115,245 @@ public abstract class AbstractFeedWriter implements FeedWriter {
     }
 
     /**
-     * Gets the {@link SyndFeed}. This provides a callback implemented by the
-     * concrete implementation
-     * @return the maintained/written SyndFeed
+     * Sets the maximum number of entries. Older entries are evicted.
+     * @param max the maximum number of entries, unbounded if not positive
+     */
+    protected synchronized void setMaxEntriesCount(int max) {
+        m_maxEntries = max;
+        expireEntries();
+    }
+
+    /**
+     * Sets the maximum age of the entries. Entries published before are
+     * evicted.
+     * @param max the maximum age in ms, unbounded if not positive
+     */
+    protected synchronized void setMaxEntriesAge(long max) {
+        m_maxAge = max;
+        expireEntries();
+    }
+
+    /**
+     * Sets the maximum size of the entry contents (UTF-8 encoded). Older
+     * entries are evicted, but the most recent entry is always kept.
+     * @param max the maximum size in bytes, unbounded if not positive
+     */
+    protected synchronized void setMaxEntriesBytes(long max) {
+        m_maxBytes = max;
+        expireEntries();
+    }
+
+    /**
+     * Sets the directory of the entry archive. The entries added from now
+     * on are archived off-heap in a temporary file of this directory; the
+     * entries already in the feed stay on the heap. The archive cannot be
+     * changed once set.
+     * @param directory the archive directory, <code>null</code> or empty to
+     *        keep the entries on the heap
+     */
+    protected synchronized void setArchiveDirectory(String directory) {
+        if (m_archiveDirectory != null || directory == null
+                || directory.trim().length() == 0) {
+            return;
+        }
+        m_archiveDirectory = new File(directory.trim());
+        openArchive();
+    }
+
+    /**
+     * Opens the entry archive. If it cannot be created, the entries are kept
+     * on the heap.
+     */
+    private void openArchive() {
+        try {
+            m_archive = new EntryArchive(m_archiveDirectory);
+        } catch (IOException e) {
+            m_logger.error("Cannot create the entry archive in "
+                    + m_archiveDirectory + ", entries are kept on the heap",
+                    e);
+            m_archiveDirectory = null;
+        }
+    }
+
+    /**
+     * Closes the entry archive and deletes its file. Called when the writer
+     * is invalidated, as it cannot tell a restart from a disposal: the
+     * archived entries of the store are first decoded back to the heap, so
+     * that they survive a new validation. A new archive is then created for
+     * the next entries.
+     */
+    protected synchronized void closeArchive() {
+        if (m_archive == null) {
+            return;
+        }
+        if (m_store != null) {
+            for (EntryStore.Node node = m_store.first(); node != null; node = node
+                    .next()) {
+                if (node.getEntry() instanceof EntryArchive.ArchivedEntry) {
+                    m_store.replace(node, ((EntryArchive.ArchivedEntry) node
+                            .getEntry()).decode());
+                }
+            }
+        }
+        m_archive.close();
+        m_archive = null;
+    }
+
+    /**
+     * Evicts the entries exceeding the retention bounds. Entries are evicted
+     * from the oldest, so the cost depends only on the number of evicted
+     * entries. Called on each addition and before each read, so that entries
+     * also expire when nothing is added. Does nothing until the store is
+     * created.
      */
-    public abstract SyndFeed getFeed();
+    protected synchronized void expireEntries() {
+        if (m_store != null && evict(m_store)) {
+            feedChanged();
+        }
+    }
+
+    /**
+     * Evicts the oldest entries of a store until the retention bounds are
+     * met.
+     * @param store the store
+     * @return <code>true</code> if entries were evicted
+     */
+    private boolean evict(EntryStore store) {
+        long limit = m_maxAge > 0 ? System.currentTimeMillis() - m_maxAge : 0;
+        boolean evicted = false;
+        EntryStore.Node last = store.last();
+        while (last != null && isExpired(store, last.getEntry(), limit)) {
+            store.remove(last);
+            removed(last.getEntry());
+            evicted = true;
+            last = store.last();
+        }
+        return evicted;
+    }
+
+    /**
+     * Checks whether the oldest entry of a store must be evicted.
+     * @param store the store
+     * @param oldest the oldest entry
+     * @param limit the date before which entries expire, 0 if entries do not
+     *        expire
+     * @return <code>true</code> if the entry must be evicted
+     */
+    private boolean isExpired(EntryStore store, SyndEntry oldest, long limit) {
+        if (m_maxEntries > 0 && store.size() > m_maxEntries) {
+            return true;
+        }
+        if (m_maxBytes > 0 && store.size() > 1
+                && store.getBytes() > m_maxBytes) {
+            return true;
+        }
+        if (limit > 0) {
+            Date date = oldest.getPublishedDate();
+            if (date == null) {
+                date = oldest.getUpdatedDate();
+            }
+            return date != null && date.getTime() < limit;
+        }
+        return false;
+    }
+
+    /**
+     * Gets the version of the feed. The version changes every time an entry
+     * is added or removed.
+     * @return the feed version
+     */
+    public synchronized long getVersion() {
+        return m_version;
+    }
+
+    /**
+     * Notifies that the feed was modified. Increments the feed version.
+     * Must be called with the writer lock held.
+     */
+    protected void feedChanged() {
+        m_version++;
+    }
+
+    /**
+     * Gets the {@link SyndFeed} holding the feed metadata. This provides a
+     * callback implemented by the concrete implementation. Once the store is
+     * created, its entry list is empty: the entries are in the store.
+     * @return the maintained/written SyndFeed metadata
+     */
+    protected abstract SyndFeed getFeedMetadata();
+
+    /**
+     * Gets the {@link SyndFeed} with its metadata and all its entries.
+     * Archived entries are returned as decoded copies: they can be modified,
+     * but the modifications are not stored by the writer.
+     * @return a new feed
+     * @see AbstractFeedWriter#getFeedView()
+     */
+    public SyndFeed getFeed() {
+        return getFeedView();
+    }
+
+    /**
+     * Gets the entry store. On first use, the entries of the
+     * {@link AbstractFeedWriter#getFeedMetadata()} feed (e.g. reloaded from a
+     * file) are moved to the store: the store then holds the entries, and
+     * the {@link SyndFeed} only the feed metadata.
+     * @return the entry store
+     */
+    @SuppressWarnings("unchecked")
+    protected synchronized EntryStore getStore() {
+        if (m_store == null) {
+            m_store = new EntryStore();
+            SyndFeed feed = getFeedMetadata();
+            List<SyndEntry> entries = feed.getEntries();
+            for (SyndEntry entry : entries) {
+                m_store.addLast(entry);
+            }
+            feed.setEntries(new ArrayList<SyndEntry>());
+            evict(m_store);
+        }
+        return m_store;
+    }
+
+    /**
+     * Gets a {@link SyndFeed} containing the metadata of the feed and all
+     * its entries. The feed is built on each call: all the channel metadata
+     * (language, copyright, image, modules, foreign markup...) is copied from
+     * the feed metadata, and archived entries are decoded to mutable copies,
+     * the modifications of which are not stored by the writer.
+     * @return a new feed
+     */
+    public synchronized SyndFeed getFeedView() {
+        SyndFeed view = getStoreView();
+        List< ? > entries = view.getEntries();
+        List<SyndEntry> copies = new ArrayList<SyndEntry>(entries.size());
+        for (Object entry : entries) {
+            if (entry instanceof EntryArchive.ArchivedEntry) {
+                copies.add(((EntryArchive.ArchivedEntry) entry).decode());
+            } else {
+                copies.add((SyndEntry) entry);
+            }
+        }
+        view.setEntries(copies);
+        return view;
+    }
+
+    /**
+     * Gets a {@link SyndFeed} containing the metadata of the feed and the
+     * stored entries, to serialize the whole feed. Archived entries are
+     * read-only, and decoded when accessed.
+     * @return a new feed
+     */
+    protected synchronized SyndFeed getStoreView() {
+        expireEntries();
+        EntryStore store = getStore();
+        SyndFeed feed = getFeedMetadata();
+        SyndFeed view = new SyndFeedImpl();
+        view.copyFrom(feed);
+        view.setForeignMarkup(feed.getForeignMarkup());
+        view.setEntries(store.toList());
+        return view;
+    }
 
     /**
      * Gets the Event Admin service. This callback is implemented by the
@@ -73,15 +367,49 @@ public abstract class AbstractFeedWriter implements FeedWriter {
      * @param entry the entry to add
      * @see org.ow2.chameleon.syndication.FeedWriter#addEntry(org.ow2.chameleon.syndication.FeedEntry)
      */
-    @SuppressWarnings("unchecked")
     public synchronized void addEntry(FeedEntry entry) {
+        SyndEntry theEntry = createSyndEntry(entry, "urn:uuid:"
+                + UUID.randomUUID(), new Date()); // Set now as published date.
+        SyndEntry stored = theEntry;
+        int bytes = -1;
+        if (m_archive == null && m_archiveDirectory != null) {
+            openArchive();
+        }
+        if (m_archive != null) {
+            try {
+                EntryArchive.ArchivedEntry archived = m_archive
+                        .append(theEntry);
+                stored = archived;
+                bytes = archived.getBytes();
+            } catch (IOException e) {
+                m_logger.error("Cannot archive the entry, kept on the heap",
+                        e);
+            }
+        }
+        getStore().addFirst(stored, bytes);
+        entryAdded(stored);
+        evict(getStore());
+        feedChanged();
+
+        postEvent(new FeedEntryImpl(theEntry));
+    }
+
+    /**
+     * Creates the {@link SyndEntry} of an entry.
+     * @param entry the entry
+     * @param id the id of the entry
+     * @param date the publication date of the entry
+     * @return the created {@link SyndEntry}
+     */
+    static SyndEntry createSyndEntry(FeedEntry entry, String id, Date date) {
         SyndEntry theEntry = new SyndEntryImpl();
         SyndContent theContent = new SyndContentImpl();
+        theEntry.setUri(id);
         theEntry.setAuthor(entry.author());
         theEntry.setTitle(entry.title());
         theEntry.setLink(entry.url());
-        theEntry.setPublishedDate(new Date()); // Set now as published date.
-        theEntry.setUpdatedDate(new Date());
+        theEntry.setPublishedDate(date);
+        theEntry.setUpdatedDate(date);
 
         theContent.setValue(entry.content());
         theEntry.setDescription(theContent);
@@ -93,69 +421,203 @@ public abstract class AbstractFeedWriter implements FeedWriter {
             theList.add(theCategory);
         }
         theEntry.setCategories(theList);
+        return theEntry;
+    }
 
-        getFeed().getEntries().add(0, theEntry);
+    /**
+     * Removes an entry from the store and notifies the removal.
+     * @param node the node of the entry
+     */
+    private void remove(EntryStore.Node node) {
+        getStore().remove(node);
+        removed(node.getEntry());
+    }
 
-        postEvent(new FeedEntryImpl(theEntry));
+    /**
+     * Releases the archived content of a removed entry, compacting the
+     * archive if needed, and notifies the removal.
+     * @param entry the removed entry
+     */
+    private void removed(SyndEntry entry) {
+        if (m_archive != null) {
+            m_archive.release(entry);
+            if (m_archive.needsCompaction()) {
+                try {
+                    m_archive.compact(m_store);
+                } catch (IOException e) {
+                    m_logger.error("Cannot compact the entry archive", e);
+                }
+            }
+        }
+        entryRemoved(entry);
+    }
+
+    /**
+     * Notifies that an entry was added to the store. Does nothing by
+     * default. Called with the writer lock held.
+     * @param entry the added entry
+     */
+    protected void entryAdded(SyndEntry entry) {
+        // Nothing by default.
     }
 
     /**
-     * Removes an entry of the feed.
+     * Notifies that an entry was removed from the store, including evicted
+     * entries. Does nothing by default. Called with the writer lock held.
+     * @param entry the removed entry
+     */
+    protected void entryRemoved(SyndEntry entry) {
+        // Nothing by default.
+    }
+
+    /**
+     * Removes an entry of the feed. The entry is looked up by id, or, if the
+     * entry has no id, by title and date.
      * @param entry the entry
      * @see org.ow2.chameleon.syndication.FeedWriter#removeEntry(org.ow2.chameleon.syndication.FeedEntry)
      */
-    @SuppressWarnings("unchecked")
     public synchronized void removeEntry(FeedEntry entry) {
-        List<SyndEntry> entries = getFeed().getEntries();
-        SyndEntry target = null;
-        for (SyndEntry e : entries) {
-            // Look for the title and the date.
-            if (e.getTitle() != null && e.getTitle().equals(entry.title())) {
-                if (e.getPublishedDate() != null
-                        && e.getPublishedDate().equals(entry.publicationDate())) {
-                    target = e;
-                    break;
-                } else if (e.getUpdatedDate() != null
-                        && e.getUpdatedDate().equals(entry.publicationDate())) {
-                    target = e;
-                    break;
-                }
-            }
-        }
+        EntryStore.Node target = find(entry);
         if (target != null) {
-            entries.remove(target);
+            remove(target);
+            feedChanged();
         }
     }
 
     /**
-     * Removes an entry based on its title.
+     * Removes an entry based on its title. If several entries have this
+     * title, the most recent one is removed.
      * @param title the feed title
      * @see org.ow2.chameleon.syndication.FeedWriter#removeEntryByTitle(java.lang.String)
      */
-    @SuppressWarnings("unchecked")
     public synchronized void removeEntryByTitle(String title) {
-        List<SyndEntry> entries = getFeed().getEntries();
-        SyndEntry target = null;
-        for (SyndEntry e : entries) {
-            target = e;
-            break;
+        if (title == null) {
+            return;
         }
+        EntryStore.Node target = getStore().getByTitle(title);
         if (target != null) {
-            entries.remove(target);
+            remove(target);
+            feedChanged();
         }
     }
 
+    /**
+     * Removes an entry based on its id.
+     * @param id the entry id
+     * @see org.ow2.chameleon.syndication.FeedWriter#removeEntryById(java.lang.String)
+     */
+    public synchronized void removeEntryById(String id) {
+        if (id == null) {
+            return;
+        }
+        EntryStore.Node target = getStore().getById(id);
+        if (target != null) {
+            remove(target);
+            feedChanged();
+        }
+    }
+
+    /**
+     * Removes a set of entries. Each entry is looked up in the indexes of the
+     * store, so the cost depends on the number of given entries, not on the
+     * size of the feed.
+     * @param entries the entries to remove
+     * @return the number of removed entries
+     * @see org.ow2.chameleon.syndication.FeedWriter#removeEntries(java.util.Collection)
+     */
+    public synchronized int removeEntries(Collection<FeedEntry> entries) {
+        int removed = 0;
+        for (FeedEntry entry : entries) {
+            EntryStore.Node target = find(entry);
+            if (target != null) {
+                remove(target);
+                removed++;
+            }
+        }
+        if (removed > 0) {
+            feedChanged();
+        }
+        return removed;
+    }
+
+    /**
+     * Removes the entries accepted by a filter, in a single pass over the
+     * feed.
+     * @param filter the filter
+     * @return the number of removed entries
+     * @see org.ow2.chameleon.syndication.FeedWriter#removeEntries(org.ow2.chameleon.syndication.FeedEntryFilter)
+     */
+    public synchronized int removeEntries(FeedEntryFilter filter) {
+        int removed = 0;
+        EntryStore.Node node = getStore().first();
+        while (node != null) {
+            EntryStore.Node next = node.next();
+            if (filter.accept(new FeedEntryImpl(node.getEntry()))) {
+                remove(node);
+                removed++;
+            }
+            node = next;
+        }
+        if (removed > 0) {
+            feedChanged();
+        }
+        return removed;
+    }
+
+    /**
+     * Gets the id of an entry.
+     * @param entry the entry
+     * @return the id, <code>null</code> if the entry is not an
+     *         {@link IdentifiedFeedEntry} or has no id
+     */
+    static String getId(FeedEntry entry) {
+        if (entry instanceof IdentifiedFeedEntry) {
+            return ((IdentifiedFeedEntry) entry).id();
+        }
+        return null;
+    }
+
+    /**
+     * Finds the node of an entry. Entries created by this writer are found
+     * by id. Otherwise, the entries having the same title are checked for
+     * the publication date.
+     * @param entry the entry
+     * @return the node, <code>null</code> if the entry is not in the feed
+     */
+    private EntryStore.Node find(FeedEntry entry) {
+        String id = getId(entry);
+        if (id != null) {
+            return getStore().getById(id);
+        }
+        if (entry.title() == null) {
+            return null;
+        }
+        Date date = entry.publicationDate();
+        for (EntryStore.Node node = getStore().getByTitle(entry.title()); node != null; node = node
+                .nextWithTitle()) {
+            SyndEntry e = node.getEntry();
+            if (e.getPublishedDate() != null
+                    && e.getPublishedDate().equals(date)) {
+                return node;
+            } else if (e.getUpdatedDate() != null
+                    && e.getUpdatedDate().equals(date)) {
+                return node;
+            }
+        }
+        return null;
+    }
+
     /**
      * Gets all the entries of the feed.
      * @return the list of entries
      * @see org.ow2.chameleon.syndication.FeedReader#getEntries()
      */
-    @SuppressWarnings("unchecked")
     public synchronized List<FeedEntry> getEntries() {
-        List<SyndEntry> entries = getFeed().getEntries();
-        List<FeedEntry> result = new ArrayList<FeedEntry>();
-        for (SyndEntry e : entries) {
-            result.add(new FeedEntryImpl(e));
+        expireEntries();
+        List<FeedEntry> result = new ArrayList<FeedEntry>(getStore().size());
+        for (EntryStore.Node node = getStore().first(); node != null; node = node
+                .next()) {
+            result.add(new FeedEntryImpl(node.getEntry()));
         }
         return result;
     }
@@ -165,13 +627,13 @@ public abstract class AbstractFeedWriter implements FeedWriter {
      * @return the last feed entry of <code>null</code> if the feed is empty.
      * @see org.ow2.chameleon.syndication.FeedReader#getLastEntry()
      */
-    @SuppressWarnings("unchecked")
     public synchronized FeedEntry getLastEntry() {
-        List<SyndEntry> entries = getFeed().getEntries();
-        if (entries.isEmpty()) {
+        expireEntries();
+        EntryStore.Node first = getStore().first();
+        if (first == null) {
             return null;
         } else {
-            return new FeedEntryImpl(entries.get(0));
+            return new FeedEntryImpl(first.getEntry());
         }
     }
 
@@ -181,17 +643,17 @@ public abstract class AbstractFeedWriter implements FeedWriter {
      * @return the list of recent entries
      * @see org.ow2.chameleon.syndication.FeedReader#getRecentEntries()
      */
-    @SuppressWarnings("unchecked")
     public synchronized List<FeedEntry> getRecentEntries() {
-        List<SyndEntry> entries = getFeed().getEntries();
+        expireEntries();
         List<FeedEntry> result = new ArrayList<FeedEntry>();
-        int count = 0;
+        List<SyndEntry> entries;
+        if (m_recent < 0) {
+            entries = getStore().toList();
+        } else {
+            entries = getStore().newest(m_recent);
+        }
         for (SyndEntry e : entries) {
-            if (count == m_recent) {
-                return result;
-            }
             result.add(new FeedEntryImpl(e));
-            count++;
         }
         return result;
     }
@@ -202,7 +664,7 @@ public abstract class AbstractFeedWriter implements FeedWriter {
      * @see org.ow2.chameleon.syndication.FeedReader#getTitle()
      */
     public String getTitle() {
-        return getFeed().getTitle();
+        return getFeedMetadata().getTitle();
     }
 
     /**
@@ -259,7 +721,12 @@ public abstract class AbstractFeedWriter implements FeedWriter {
     /**
      * Feed Entry Implementation.
      */
-    private class FeedEntryImpl implements FeedEntry {
+    private class FeedEntryImpl implements IdentifiedFeedEntry {
+
+        /**
+         * Id.
+         */
+        private String m_id;
 
         /**
          * Author.
@@ -297,6 +764,7 @@ public abstract class AbstractFeedWriter implements FeedWriter {
          */
         @SuppressWarnings("unchecked")
         public FeedEntryImpl(SyndEntry e) {
+            m_id = e.getUri();
             m_author = e.getAuthor();
             m_content = e.getDescription().getValue();
             Date d = e.getPublishedDate();
@@ -322,6 +790,15 @@ public abstract class AbstractFeedWriter implements FeedWriter {
             m_categories = new ArrayList<String>();
         }
 
+        /**
+         * Gets the entry id.
+         * @return the entry id
+         * @see org.ow2.chameleon.syndication.IdentifiedFeedEntry#id()
+         */
+        public String id() {
+            return m_id;
+        }
+
         /**
          * Gets the entry author.
          * @return the entry author
@@ -0,0 +1,122 @@
+/*
+ * Copyright 2009 OW2 Chameleon
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ow2.chameleon.syndication.rome;
+
+/**
+ * Computes the polling interval of a feed from its observed change rate.
+ * The policy keeps a smoothed estimate of the time between two changes
+ * (polls finding new entries) and polls twice per estimated interval. Polls
+ * finding nothing new stretch the interval by 50%. The result is never
+ * shorter than the refresh hint sent by the publisher (RSS
+ * <code>ttl</code>, <code>sy:updatePeriod</code>, HTTP
+ * <code>Cache-Control: max-age</code>) and always stays within the
+ * configured bounds.
+ * <p>
+ * This class is not thread safe, readers call it from their polling task
+ * only.
+ */
+public class AdaptivePollingPolicy {
+
+    /**
+     * Minimum interval in ms.
+     */
+    private final long m_min;
+
+    /**
+     * Maximum interval in ms.
+     */
+    private final long m_max;
+
+    /**
+     * The current interval in ms.
+     */
+    private long m_interval;
+
+    /**
+     * Smoothed time between two changes in ms, 0 if unknown.
+     */
+    private long m_changeInterval;
+
+    /**
+     * Time of the last observed change, 0 if none.
+     */
+    private long m_lastChange;
+
+    /**
+     * Creates a {@link AdaptivePollingPolicy}.
+     * @param initial the initial interval in ms
+     * @param min the minimum interval in ms
+     * @param max the maximum interval in ms
+     */
+    public AdaptivePollingPolicy(long initial, long min, long max) {
+        if (min <= 0 || max < min) {
+            throw new IllegalArgumentException("Invalid polling bounds : ["
+                    + min + ", " + max + "]");
+        }
+        m_min = min;
+        m_max = max;
+        m_interval = clamp(initial);
+    }
+
+    /**
+     * Records the result of a poll and computes the next interval.
+     * @param changed has the poll found new entries
+     * @param hint the refresh hint of the publisher in ms, -1 if none
+     * @param now the current time in ms
+     * @return the interval before the next poll in ms
+     */
+    public long next(boolean changed, long hint, long now) {
+        if (changed) {
+            if (m_lastChange != 0) {
+                long observed = now - m_lastChange;
+                if (m_changeInterval == 0) {
+                    m_changeInterval = observed;
+                } else {
+                    m_changeInterval = (3 * m_changeInterval + observed) / 4;
+                }
+                m_interval = m_changeInterval / 2;
+            } else {
+                m_interval = m_interval / 2;
+            }
+            m_lastChange = now;
+        } else {
+            m_interval = m_interval + m_interval / 2;
+        }
+
+        if (hint > m_interval) {
+            m_interval = hint;
+        }
+        m_interval = clamp(m_interval);
+        return m_interval;
+    }
+
+    /**
+     * Gets the current interval.
+     * @return the current interval in ms
+     */
+    public long getInterval() {
+        return m_interval;
+    }
+
+    /**
+     * Keeps an interval within the bounds.
+     * @param interval the interval
+     * @return the bounded interval
+     */
+    private long clamp(long interval) {
+        return Math.max(m_min, Math.min(m_max, interval));
+    }
+
+}
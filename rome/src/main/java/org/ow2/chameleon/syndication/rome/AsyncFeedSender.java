@@ -0,0 +1,333 @@
+/*
+ * Copyright 2009 OW2 Chameleon
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ow2.chameleon.syndication.rome;
+
+import java.io.IOException;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+
+import javax.servlet.ServletOutputStream;
+import javax.servlet.ServletRequest;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Sends a rendered feed with the non-blocking I/O of Servlet 3.1, so that
+ * slow clients do not hold a request thread during the whole transfer. The
+ * bundle is compiled against the Servlet 2.3 API, so the Servlet 3.1 API is
+ * used reflectively, when the HTTP Service provides it.
+ */
+public final class AsyncFeedSender implements InvocationHandler {
+
+    /**
+     * Bodies smaller than this size are written directly: they fit in the
+     * container buffers.
+     */
+    public static final int THRESHOLD = 64 * 1024;
+
+    /**
+     * Size of the chunks written when the output is ready.
+     */
+    private static final int CHUNK = 16 * 1024;
+
+    /**
+     * The Servlet 3.1 API, <code>null</code> if it is not available.
+     */
+    private static final AsyncApi SERVLET_API;
+
+    static {
+        AsyncApi api = null;
+        try {
+            ClassLoader loader = ServletRequest.class.getClassLoader();
+            api = new AsyncApi(ServletRequest.class,
+                    Class.forName("javax.servlet.AsyncContext", false, loader),
+                    ServletOutputStream.class,
+                    Class.forName("javax.servlet.WriteListener", false,
+                            loader));
+        } catch (Exception e) {
+            // Servlet 3.1 not available
+            api = null;
+        } catch (LinkageError e) {
+            // Servlet 3.1 not available
+            api = null;
+        }
+        SERVLET_API = api;
+    }
+
+    /**
+     * Logger.
+     */
+    private static final Logger s_logger = LoggerFactory
+            .getLogger(AsyncFeedSender.class.getName());
+
+    /**
+     * The async methods.
+     */
+    private final AsyncApi m_api;
+
+    /**
+     * The body.
+     */
+    private final byte[] m_bytes;
+
+    /**
+     * The output stream.
+     */
+    private final ServletOutputStream m_out;
+
+    /**
+     * The async context.
+     */
+    private final Object m_context;
+
+    /**
+     * Offset of the next byte to write.
+     */
+    private int m_offset;
+
+    /**
+     * Whether the async request is completed.
+     */
+    private boolean m_completed;
+
+    /**
+     * Creates a {@link AsyncFeedSender}.
+     * @param api the async methods
+     * @param bytes the body
+     * @param out the output stream
+     * @param context the async context
+     */
+    private AsyncFeedSender(AsyncApi api, byte[] bytes,
+            ServletOutputStream out, Object context) {
+        m_api = api;
+        m_bytes = bytes;
+        m_out = out;
+        m_context = context;
+    }
+
+    /**
+     * Sends a body asynchronously, if the container supports it. The
+     * headers must have been set.
+     * @param req the request
+     * @param resp the response
+     * @param bytes the body
+     * @return <code>true</code> if the body is sent asynchronously,
+     *         <code>false</code> if the caller must write it
+     * @throws IOException if the output stream cannot be used
+     */
+    public static boolean send(HttpServletRequest req,
+            HttpServletResponse resp, byte[] bytes) throws IOException {
+        return send(SERVLET_API, req, resp, bytes);
+    }
+
+    /**
+     * Sends a body asynchronously with the given async methods. Once the
+     * request is made async, it is always completed: either by the sender
+     * or, if the sender cannot be installed, before the
+     * <code>IOException</code> is thrown. The caller must not write the body
+     * in that case.
+     * @param api the async methods, <code>null</code> if not available
+     * @param req the request
+     * @param resp the response
+     * @param bytes the body
+     * @return <code>true</code> if the body is sent asynchronously,
+     *         <code>false</code> if the request was not made async and the
+     *         caller must write the body
+     * @throws IOException if the output stream cannot be used
+     */
+    public static boolean send(AsyncApi api, HttpServletRequest req,
+            HttpServletResponse resp, byte[] bytes) throws IOException {
+        if (api == null || bytes.length < THRESHOLD) {
+            return false;
+        }
+        Object context;
+        try {
+            if (!((Boolean) api.m_isAsyncSupported.invoke(req))
+                    .booleanValue()) {
+                return false;
+            }
+            context = api.m_startAsync.invoke(req);
+        } catch (IllegalAccessException e) {
+            return false;
+        } catch (InvocationTargetException e) {
+            // The request cannot be made async (e.g. a filter does not
+            // support it).
+            return false;
+        }
+        AsyncFeedSender sender = null;
+        try {
+            ServletOutputStream out = resp.getOutputStream();
+            sender = new AsyncFeedSender(api, bytes, out, context);
+            Object listener = Proxy.newProxyInstance(api.m_writeListener
+                    .getClassLoader(), new Class< ? >[] {api.m_writeListener},
+                    sender);
+            // The container calls onWritePossible when the output is ready.
+            api.m_setWriteListener.invoke(out, listener);
+            return true;
+        } catch (InvocationTargetException e) {
+            throw abort(api, context, e.getCause());
+        } catch (Exception e) {
+            throw abort(api, context, e);
+        }
+    }
+
+    /**
+     * Completes an async request whose body cannot be sent.
+     * @param api the async methods
+     * @param context the async context
+     * @param cause the failure
+     * @return the exception to throw
+     */
+    private static IOException abort(AsyncApi api, Object context,
+            Throwable cause) {
+        try {
+            api.m_complete.invoke(context);
+        } catch (Exception e) {
+            s_logger.debug("Cannot complete the async request", e);
+        }
+        if (cause instanceof IOException) {
+            return (IOException) cause;
+        }
+        IOException exception = new IOException("Cannot send the feed: "
+                + cause);
+        exception.initCause(cause);
+        return exception;
+    }
+
+    /**
+     * Handles the <code>WriteListener</code> callbacks.
+     * @param proxy the listener
+     * @param method the called method
+     * @param args the arguments
+     * @return the result of the method
+     * @throws Throwable if the method fails
+     * @see java.lang.reflect.InvocationHandler#invoke(java.lang.Object,
+     *      java.lang.reflect.Method, java.lang.Object[])
+     */
+    public Object invoke(Object proxy, Method method, Object[] args)
+            throws Throwable {
+        String name = method.getName();
+        if (name.equals("onWritePossible")) {
+            try {
+                write();
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+            return null;
+        } else if (name.equals("onError")) {
+            s_logger.debug("Cannot send the feed", (Throwable) args[0]);
+            complete();
+            return null;
+        } else if (name.equals("equals")) {
+            return Boolean.valueOf(proxy == args[0]);
+        } else if (name.equals("hashCode")) {
+            return Integer.valueOf(System.identityHashCode(proxy));
+        } else {
+            return toString();
+        }
+    }
+
+    /**
+     * Writes the body while the output is ready, and completes the request
+     * once the body is written.
+     * @throws Exception if the body cannot be written
+     */
+    private synchronized void write() throws Exception {
+        while (m_offset < m_bytes.length) {
+            if (!((Boolean) m_api.m_isReady.invoke(m_out)).booleanValue()) {
+                // onWritePossible will be called again
+                return;
+            }
+            int length = Math.min(CHUNK, m_bytes.length - m_offset);
+            m_out.write(m_bytes, m_offset, length);
+            m_offset += length;
+        }
+        complete();
+    }
+
+    /**
+     * Completes the async request, once.
+     * @throws Exception if the request cannot be completed
+     */
+    private synchronized void complete() throws Exception {
+        if (!m_completed) {
+            m_completed = true;
+            m_api.m_complete.invoke(m_context);
+        }
+    }
+
+    /**
+     * The async methods of the Servlet 3.1 API, resolved on the given types.
+     */
+    public static final class AsyncApi {
+
+        /**
+         * <code>isAsyncSupported()</code> of the request.
+         */
+        private final Method m_isAsyncSupported;
+
+        /**
+         * <code>startAsync()</code> of the request.
+         */
+        private final Method m_startAsync;
+
+        /**
+         * <code>complete()</code> of the async context.
+         */
+        private final Method m_complete;
+
+        /**
+         * <code>isReady()</code> of the output stream.
+         */
+        private final Method m_isReady;
+
+        /**
+         * <code>setWriteListener(WriteListener)</code> of the output stream.
+         */
+        private final Method m_setWriteListener;
+
+        /**
+         * The <code>WriteListener</code> interface.
+         */
+        private final Class< ? > m_writeListener;
+
+        /**
+         * Creates a {@link AsyncApi}.
+         * @param request the request type
+         * @param context the async context type
+         * @param output the output stream type
+         * @param listener the write listener interface
+         * @throws NoSuchMethodException if a method is missing
+         */
+        public AsyncApi(Class< ? > request, Class< ? > context,
+                Class< ? > output, Class< ? > listener)
+            throws NoSuchMethodException {
+            m_isAsyncSupported = request.getMethod("isAsyncSupported");
+            m_startAsync = request.getMethod("startAsync");
+            m_complete = context.getMethod("complete");
+            m_isReady = output.getMethod("isReady");
+            m_setWriteListener = output.getMethod("setWriteListener",
+                    listener);
+            m_writeListener = listener;
+        }
+
+    }
+
+}
@@ -0,0 +1,179 @@
+/*
+ * Copyright 2009 OW2 Chameleon
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ow2.chameleon.syndication.rome;
+
+import java.util.Random;
+
+/**
+ * Circuit breaker and exponential backoff of a polled feed. Each failure
+ * doubles the delay before the next attempt (with a random jitter), up to a
+ * maximum. After a number of consecutive failures, the circuit opens: the
+ * feed is considered unavailable and the next attempt is a trial
+ * (half-open). A successful attempt closes the circuit.
+ */
+public class CircuitBreaker {
+
+    /**
+     * States of the circuit.
+     */
+    public enum State {
+        /**
+         * The feed works, polls are done normally.
+         */
+        CLOSED,
+        /**
+         * The feed keeps failing, polls are delayed by the backoff.
+         */
+        OPEN,
+        /**
+         * A trial poll is in progress after the circuit was opened.
+         */
+        HALF_OPEN
+    }
+
+    /**
+     * Random generator for the jitter.
+     */
+    private static final Random RANDOM = new Random();
+
+    /**
+     * Number of consecutive failures opening the circuit.
+     */
+    private final int m_threshold;
+
+    /**
+     * Delay after the first failure in ms.
+     */
+    private final long m_initialBackoff;
+
+    /**
+     * Maximum delay in ms.
+     */
+    private final long m_maxBackoff;
+
+    /**
+     * The current state.
+     */
+    private State m_state = State.CLOSED;
+
+    /**
+     * Number of consecutive failures.
+     */
+    private int m_failures;
+
+    /**
+     * Last failure, <code>null</code> if the last attempt succeeded.
+     */
+    private Throwable m_lastFailure;
+
+    /**
+     * Creates a {@link CircuitBreaker}.
+     * @param threshold the number of consecutive failures opening the
+     *        circuit
+     * @param initialBackoff the delay after the first failure in ms
+     * @param maxBackoff the maximum delay in ms
+     */
+    public CircuitBreaker(int threshold, long initialBackoff, long maxBackoff) {
+        if (threshold < 1 || initialBackoff <= 0
+                || maxBackoff < initialBackoff) {
+            throw new IllegalArgumentException(
+                    "Invalid circuit breaker configuration");
+        }
+        m_threshold = threshold;
+        m_initialBackoff = initialBackoff;
+        m_maxBackoff = maxBackoff;
+    }
+
+    /**
+     * Notifies the breaker that an attempt starts. An open circuit moves to
+     * half-open.
+     */
+    public synchronized void attempt() {
+        if (m_state == State.OPEN) {
+            m_state = State.HALF_OPEN;
+        }
+    }
+
+    /**
+     * Records a successful attempt. The circuit closes.
+     */
+    public synchronized void success() {
+        m_state = State.CLOSED;
+        m_failures = 0;
+        m_lastFailure = null;
+    }
+
+    /**
+     * Records a failed attempt.
+     * @param failure the failure
+     * @return the delay before the next attempt in ms
+     */
+    public synchronized long failure(Throwable failure) {
+        m_failures++;
+        m_lastFailure = failure;
+        if (m_state == State.HALF_OPEN || m_failures >= m_threshold) {
+            m_state = State.OPEN;
+        }
+        return getBackoff();
+    }
+
+    /**
+     * Computes the delay before the next attempt: the initial backoff
+     * doubled at each consecutive failure, bounded by the maximum backoff,
+     * and randomly picked in the upper half of this value.
+     * @return the delay in ms, 0 if the last attempt succeeded
+     */
+    public synchronized long getBackoff() {
+        if (m_failures == 0) {
+            return 0;
+        }
+        long backoff = m_initialBackoff;
+        for (int i = 1; i < m_failures && backoff < m_maxBackoff; i++) {
+            backoff = backoff * 2;
+        }
+        backoff = Math.min(backoff, m_maxBackoff);
+        double jitter;
+        synchronized (RANDOM) {
+            jitter = RANDOM.nextDouble();
+        }
+        return backoff / 2 + (long) (jitter * (backoff / 2));
+    }
+
+    /**
+     * Gets the state of the circuit.
+     * @return the state
+     */
+    public synchronized State getState() {
+        return m_state;
+    }
+
+    /**
+     * Gets the number of consecutive failures.
+     * @return the number of failures
+     */
+    public synchronized int getFailures() {
+        return m_failures;
+    }
+
+    /**
+     * Gets the last failure.
+     * @return the last failure, <code>null</code> if the last attempt
+     *         succeeded
+     */
+    public synchronized Throwable getLastFailure() {
+        return m_lastFailure;
+    }
+
+}
@@ -0,0 +1,461 @@
+/*
+ * Copyright 2009 OW2 Chameleon
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ow2.chameleon.syndication.rome;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLConnection;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Default {@link FeedFetcher} implementation, based on
+ * {@link URLConnection}. This fetcher:
+ * <ul>
+ * <li>sets connect and read timeouts</li>
+ * <li>asks for (and decodes) gzip / deflate compressed bodies</li>
+ * <li>rejects bodies bigger than a maximum size</li>
+ * <li>limits the number of concurrent fetches per host</li>
+ * <li>consumes the rest of the responses, up to 64 KB, before closing them,
+ * so the connections of responses which were not fully read (the parser
+ * may stop early) still return to the keep-alive cache of the JVM. The
+ * connection is dropped if more data remains. The number of idle
+ * connections kept per host is set by the <code>http.maxConnections</code>
+ * system property.</li>
+ * </ul>
+ * The shared instance is configured with the following system properties:
+ * <ul>
+ * <li><code>org.ow2.chameleon.syndication.fetcher.connect.timeout</code>: the
+ * connect timeout in ms (10 s by default)</li>
+ * <li><code>org.ow2.chameleon.syndication.fetcher.read.timeout</code>: the
+ * read timeout in ms (30 s by default)</li>
+ * <li><code>org.ow2.chameleon.syndication.fetcher.max.size</code>: the
+ * maximum size of a (decoded) feed in bytes (10 MB by default)</li>
+ * <li><code>org.ow2.chameleon.syndication.fetcher.max.per.host</code>: the
+ * maximum number of concurrent fetches per host (4 by default)</li>
+ * </ul>
+ */
+public class DefaultFeedFetcher implements FeedFetcher {
+
+    /**
+     * Connect timeout system property.
+     */
+    public static final String CONNECT_TIMEOUT_PROPERTY = "org.ow2.chameleon.syndication.fetcher.connect.timeout";
+
+    /**
+     * Read timeout system property.
+     */
+    public static final String READ_TIMEOUT_PROPERTY = "org.ow2.chameleon.syndication.fetcher.read.timeout";
+
+    /**
+     * Maximum size system property.
+     */
+    public static final String MAX_SIZE_PROPERTY = "org.ow2.chameleon.syndication.fetcher.max.size";
+
+    /**
+     * Maximum concurrent fetches per host system property.
+     */
+    public static final String MAX_PER_HOST_PROPERTY = "org.ow2.chameleon.syndication.fetcher.max.per.host";
+
+    /**
+     * Accept header sent to the servers.
+     */
+    private static final String ACCEPT = "application/rss+xml, application/atom+xml, "
+            + "application/rdf+xml, application/xml;q=0.9, text/xml;q=0.9, */*;q=0.5";
+
+    /**
+     * Maximum number of unread bytes consumed when a response is closed.
+     */
+    static final int DRAIN_LIMIT = 64 * 1024;
+
+    /**
+     * The shared instance, created on first use.
+     */
+    private static DefaultFeedFetcher s_default;
+
+    /**
+     * Connect timeout in ms.
+     */
+    private final int m_connectTimeout;
+
+    /**
+     * Read timeout in ms.
+     */
+    private final int m_readTimeout;
+
+    /**
+     * Maximum size of a decoded body in bytes.
+     */
+    private final long m_maxSize;
+
+    /**
+     * Maximum number of concurrent fetches per host.
+     */
+    private final int m_maxPerHost;
+
+    /**
+     * Semaphores limiting the concurrent fetches, per host.
+     */
+    private final ConcurrentMap<String, Semaphore> m_hosts = new ConcurrentHashMap<String, Semaphore>();
+
+    /**
+     * Gets the fetcher shared by all the readers of the bundle.
+     * @return the shared fetcher
+     */
+    public static synchronized DefaultFeedFetcher getDefault() {
+        if (s_default == null) {
+            s_default = new DefaultFeedFetcher(
+                    (int) getLong(CONNECT_TIMEOUT_PROPERTY, 10000),
+                    (int) getLong(READ_TIMEOUT_PROPERTY, 30000),
+                    getLong(MAX_SIZE_PROPERTY, 10 * 1024 * 1024),
+                    (int) getLong(MAX_PER_HOST_PROPERTY, 4));
+        }
+        return s_default;
+    }
+
+    /**
+     * Reads a numeric system property.
+     * @param key the property
+     * @param def the default value
+     * @return the value of the property, or the default value if not set or
+     *         invalid
+     */
+    private static long getLong(String key, long def) {
+        String value = System.getProperty(key);
+        if (value != null) {
+            try {
+                return Long.parseLong(value.trim());
+            } catch (NumberFormatException e) {
+                // Use the default value.
+            }
+        }
+        return def;
+    }
+
+    /**
+     * Creates a {@link DefaultFeedFetcher}.
+     * @param connectTimeout the connect timeout in ms
+     * @param readTimeout the read timeout in ms
+     * @param maxSize the maximum size of a decoded body in bytes
+     * @param maxPerHost the maximum number of concurrent fetches per host
+     */
+    public DefaultFeedFetcher(int connectTimeout, int readTimeout,
+            long maxSize, int maxPerHost) {
+        if (maxPerHost < 1) {
+            throw new IllegalArgumentException(
+                    "At least one fetch per host must be allowed");
+        }
+        m_connectTimeout = connectTimeout;
+        m_readTimeout = readTimeout;
+        m_maxSize = maxSize;
+        m_maxPerHost = maxPerHost;
+    }
+
+    /**
+     * Fetches the feed.
+     * @param url the feed url
+     * @param etag the ETag of the last fetch
+     * @param lastModified the Last-Modified value of the last fetch
+     * @return the response
+     * @throws IOException if the feed cannot be fetched
+     * @see org.ow2.chameleon.syndication.rome.FeedFetcher#fetch(java.net.URL,
+     *      java.lang.String, java.lang.String)
+     */
+    public FetchResponse fetch(URL url, String etag, String lastModified)
+        throws IOException {
+        Semaphore permits = acquire(url);
+        boolean returned = false;
+        try {
+            URLConnection connection = url.openConnection();
+            connection.setConnectTimeout(m_connectTimeout);
+            connection.setReadTimeout(m_readTimeout);
+            connection.setUseCaches(false);
+
+            String etagHeader = null;
+            String lastModifiedHeader = null;
+            long maxAge = -1;
+            if (connection instanceof HttpURLConnection) {
+                HttpURLConnection http = (HttpURLConnection) connection;
+                http.setRequestProperty("Accept", ACCEPT);
+                http.setRequestProperty("Accept-Encoding", "gzip, deflate");
+                if (etag != null) {
+                    http.setRequestProperty("If-None-Match", etag);
+                }
+                if (lastModified != null) {
+                    http.setRequestProperty("If-Modified-Since", lastModified);
+                }
+                int code = http.getResponseCode();
+                maxAge = getMaxAge(http.getHeaderField("Cache-Control"));
+                if (code == HttpURLConnection.HTTP_NOT_MODIFIED) {
+                    release(http.getInputStream());
+                    return new FetchResponse(false, null, null, etag,
+                            lastModified, maxAge);
+                }
+                if (code >= HttpURLConnection.HTTP_BAD_REQUEST) {
+                    release(http.getErrorStream());
+                    throw new IOException("Cannot fetch " + url + " : HTTP "
+                            + code + " " + http.getResponseMessage());
+                }
+                etagHeader = http.getHeaderField("ETag");
+                lastModifiedHeader = http.getHeaderField("Last-Modified");
+            }
+
+            long length = connection.getContentLength();
+            if (length > m_maxSize) {
+                release(connection.getInputStream());
+                throw new IOException("The feed " + url + " exceeds "
+                        + m_maxSize + " bytes");
+            }
+
+            InputStream raw = connection.getInputStream();
+            InputStream body = raw;
+            String encoding = connection.getContentEncoding();
+            if (encoding != null) {
+                encoding = encoding.trim().toLowerCase();
+                if ("gzip".equals(encoding) || "x-gzip".equals(encoding)) {
+                    body = new GZIPInputStream(body);
+                } else if ("deflate".equals(encoding)) {
+                    body = new InflaterInputStream(body);
+                }
+            }
+
+            FetchResponse response = new FetchResponse(true,
+                    new BoundedInputStream(body, raw, url, permits),
+                    connection.getContentType(), etagHeader,
+                    lastModifiedHeader, maxAge);
+            returned = true;
+            return response;
+        } finally {
+            if (!returned) {
+                permits.release();
+            }
+        }
+    }
+
+    /**
+     * Extracts the <code>max-age</code> directive of a
+     * <code>Cache-Control</code> header.
+     * @param header the header value, may be <code>null</code>
+     * @return the max age in ms, -1 if not set
+     */
+    static long getMaxAge(String header) {
+        if (header == null) {
+            return -1;
+        }
+        String[] directives = header.split(",");
+        for (String directive : directives) {
+            String d = directive.trim().toLowerCase();
+            if (d.startsWith("max-age=")) {
+                try {
+                    return Long.parseLong(d.substring(8).trim()) * 1000;
+                } catch (NumberFormatException e) {
+                    return -1;
+                }
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Acquires a fetch permit for the host of the given url.
+     * @param url the url
+     * @return the semaphore of the host, to release once the fetch is done
+     * @throws IOException if no permit can be acquired before the connect
+     *         timeout
+     */
+    private Semaphore acquire(URL url) throws IOException {
+        String host = url.getHost();
+        if (host == null) {
+            host = "";
+        }
+        Semaphore semaphore = m_hosts.get(host);
+        if (semaphore == null) {
+            semaphore = new Semaphore(m_maxPerHost, true);
+            Semaphore existing = m_hosts.putIfAbsent(host, semaphore);
+            if (existing != null) {
+                semaphore = existing;
+            }
+        }
+        try {
+            if (!semaphore.tryAcquire(m_connectTimeout, TimeUnit.MILLISECONDS)) {
+                throw new IOException("Too many concurrent fetches on "
+                        + host);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for " + host);
+        }
+        return semaphore;
+    }
+
+    /**
+     * Consumes and closes a stream so its connection can be reused.
+     * @param in the stream, may be <code>null</code>
+     */
+    private static void release(InputStream in) {
+        if (in == null) {
+            return;
+        }
+        try {
+            drain(in);
+        } finally {
+            try {
+                in.close();
+            } catch (IOException e) {
+                // Ignored.
+            }
+        }
+    }
+
+    /**
+     * Consumes the rest of a stream, up to {@link #DRAIN_LIMIT} bytes.
+     * @param in the stream
+     */
+    private static void drain(InputStream in) {
+        try {
+            byte[] buffer = new byte[4096];
+            long drained = 0;
+            int read;
+            while (drained < DRAIN_LIMIT && (read = in.read(buffer)) != -1) {
+                drained += read;
+            }
+        } catch (IOException e) {
+            // Ignored, the connection won't be reused.
+        }
+    }
+
+    /**
+     * Stream rejecting bodies bigger than the maximum size. When closed, the
+     * unread part of the response is consumed (up to
+     * {@link DefaultFeedFetcher#DRAIN_LIMIT} bytes) and the host permit is
+     * released.
+     */
+    private class BoundedInputStream extends FilterInputStream {
+
+        /**
+         * The fetched url.
+         */
+        private final URL m_url;
+
+        /**
+         * The undecoded body of the connection.
+         */
+        private final InputStream m_raw;
+
+        /**
+         * The host permits.
+         */
+        private Semaphore m_permits;
+
+        /**
+         * Number of read bytes.
+         */
+        private long m_count;
+
+        /**
+         * Creates a {@link BoundedInputStream}.
+         * @param in the (decoded) body
+         * @param raw the undecoded body of the connection
+         * @param url the url
+         * @param permits the host permits
+         */
+        BoundedInputStream(InputStream in, InputStream raw, URL url,
+                Semaphore permits) {
+            super(in);
+            m_raw = raw;
+            m_url = url;
+            m_permits = permits;
+        }
+
+        /**
+         * Reads a byte.
+         * @return the byte or -1
+         * @throws IOException if the body is too big
+         * @see java.io.FilterInputStream#read()
+         */
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b != -1) {
+                count(1);
+            }
+            return b;
+        }
+
+        /**
+         * Reads bytes.
+         * @param b the buffer
+         * @param off the offset
+         * @param len the length
+         * @return the number of read bytes or -1
+         * @throws IOException if the body is too big
+         * @see java.io.FilterInputStream#read(byte[], int, int)
+         */
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int read = super.read(b, off, len);
+            if (read > 0) {
+                count(read);
+            }
+            return read;
+        }
+
+        /**
+         * Counts the read bytes.
+         * @param read the number of bytes just read
+         * @throws IOException if the body is too big
+         */
+        private void count(int read) throws IOException {
+            m_count += read;
+            if (m_count > m_maxSize) {
+                throw new IOException("The feed " + m_url + " exceeds "
+                        + m_maxSize + " bytes");
+            }
+        }
+
+        /**
+         * Consumes the rest of the response, closes the body and releases the
+         * host permit.
+         * @throws IOException if the body cannot be closed
+         * @see java.io.FilterInputStream#close()
+         */
+        @Override
+        public void close() throws IOException {
+            try {
+                synchronized (this) {
+                    if (m_permits != null) {
+                        drain(m_raw);
+                    }
+                }
+                super.close();
+            } finally {
+                synchronized (this) {
+                    if (m_permits != null) {
+                        m_permits.release();
+                        m_permits = null;
+                    }
+                }
+            }
+        }
+    }
+
+}
@@ -0,0 +1,849 @@
+/*
+ * Copyright 2009 OW2 Chameleon
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ow2.chameleon.syndication.rome;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.ref.SoftReference;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import org.ow2.chameleon.syndication.FeedEntry;
+import org.ow2.chameleon.syndication.IdentifiedFeedEntry;
+
+import com.sun.syndication.feed.module.Module;
+import com.sun.syndication.feed.synd.SyndContent;
+import com.sun.syndication.feed.synd.SyndEntry;
+import com.sun.syndication.feed.synd.SyndFeed;
+
+/**
+ * Off-heap archive of entry bodies. The entries added to a writer are
+ * encoded with {@link EntryCodec} in a temporary file mapped in memory, by
+ * segments of 16MB. The store only keeps {@link ArchivedEntry} objects,
+ * holding the id, title, date and location of the entry: the size of the
+ * feed is limited by the disk rather than by the heap.
+ * <p>
+ * The archive is append-only. Removed entries leave dead space, which is
+ * reclaimed by copying the live entries to a new file once it exceeds both
+ * 1MB and the live space: as each copy is paid by as many removed bytes,
+ * the cost stays constant per entry.
+ * <p>
+ * The archive file is unlinked as soon as it is opened where the operating
+ * system allows it, so that it does not outlive the JVM; otherwise it is
+ * deleted when the archive is compacted or closed. Removed entries are
+ * decoded on release, so they stay readable by concurrent readers once
+ * their record is reclaimed.
+ */
+final class EntryArchive {
+
+    /**
+     * Size of the mapped segments.
+     */
+    private static final int SEGMENT_SIZE = 16 * 1024 * 1024;
+
+    /**
+     * Dead space above which the archive may be compacted.
+     */
+    private static final long COMPACTION_THRESHOLD = 1024 * 1024;
+
+    /**
+     * The archive directory.
+     */
+    private final File m_directory;
+
+    /**
+     * The archive file.
+     */
+    private File m_file;
+
+    /**
+     * The archive file access.
+     */
+    private RandomAccessFile m_access;
+
+    /**
+     * The mapped segments, by index. Segments not used yet are
+     * <code>null</code>.
+     */
+    private List<MappedByteBuffer> m_segments = new ArrayList<MappedByteBuffer>();
+
+    /**
+     * The used size of the archive.
+     */
+    private long m_size;
+
+    /**
+     * The size of the removed entries and unused segment ends.
+     */
+    private long m_dead;
+
+    /**
+     * Creates an {@link EntryArchive}.
+     * @param directory the directory of the archive file, created if needed
+     * @throws IOException if the archive file cannot be created
+     */
+    EntryArchive(File directory) throws IOException {
+        m_directory = directory;
+        m_file = create();
+        m_access = open(m_file);
+    }
+
+    /**
+     * Creates a new archive file.
+     * @return the file
+     * @throws IOException if the file cannot be created
+     */
+    private File create() throws IOException {
+        if (!m_directory.isDirectory() && !m_directory.mkdirs()) {
+            throw new IOException("Cannot create the archive directory "
+                    + m_directory);
+        }
+        return File.createTempFile("entries", ".archive", m_directory);
+    }
+
+    /**
+     * Opens an archive file, and unlinks it if the operating system allows
+     * it: the space is reclaimed when the file is closed, even if the JVM
+     * is killed. Windows does not delete open files; the file is then
+     * deleted by {@link EntryArchive#compact(EntryStore)} or
+     * {@link EntryArchive#close()}.
+     * @param file the file
+     * @return the file access
+     * @throws IOException if the file cannot be opened
+     */
+    private static RandomAccessFile open(File file) throws IOException {
+        RandomAccessFile access = new RandomAccessFile(file, "rw");
+        file.delete();
+        return access;
+    }
+
+    /**
+     * Archives an entry.
+     * @param entry the entry
+     * @return the archived entry, to add in the store instead of the given
+     *         one
+     * @throws IOException if the entry cannot be written
+     */
+    synchronized ArchivedEntry append(SyndEntry entry) throws IOException {
+        FeedEntry view = new FeedReaderImpl.FeedEntryImpl(entry);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        EntryCodec.write(out, view);
+        out.flush();
+        byte[] record = bytes.toByteArray();
+        long position = write(record);
+        return new ArchivedEntry(this, position, record.length, entry
+                .getUri(), entry.getTitle(), view.publicationDate(),
+                EntryStore.length(view.content()));
+    }
+
+    /**
+     * Writes a record at the end of the archive. A record fitting in a
+     * segment never crosses a segment end. A larger record starts a new
+     * segment and has its own mapping.
+     * @param record the record
+     * @return the position of the record
+     * @throws IOException if the record cannot be written
+     */
+    private long write(byte[] record) throws IOException {
+        long position = m_size;
+        long end = (position / SEGMENT_SIZE + 1) * SEGMENT_SIZE;
+        if (position + record.length > end && position % SEGMENT_SIZE != 0) {
+            m_dead += end - position;
+            position = end;
+        }
+        if (record.length > SEGMENT_SIZE) {
+            m_access.getChannel().map(FileChannel.MapMode.READ_WRITE,
+                    position, record.length).put(record);
+            long next = (position + record.length + SEGMENT_SIZE - 1)
+                    / SEGMENT_SIZE * SEGMENT_SIZE;
+            m_dead += next - position - record.length;
+            m_size = next;
+        } else {
+            ByteBuffer buffer = getSegment(position);
+            buffer.put(record);
+            m_size = position + record.length;
+        }
+        return position;
+    }
+
+    /**
+     * Gets the mapped segment containing a position. The segment is mapped
+     * on first use.
+     * @param position the position
+     * @return a buffer positioned at this position
+     * @throws IOException if the segment cannot be mapped
+     */
+    private ByteBuffer getSegment(long position) throws IOException {
+        int index = (int) (position / SEGMENT_SIZE);
+        while (m_segments.size() <= index) {
+            m_segments.add(null);
+        }
+        MappedByteBuffer segment = m_segments.get(index);
+        if (segment == null) {
+            segment = m_access.getChannel().map(
+                    FileChannel.MapMode.READ_WRITE,
+                    (long) index * SEGMENT_SIZE, SEGMENT_SIZE);
+            m_segments.set(index, segment);
+        }
+        ByteBuffer buffer = segment.duplicate();
+        buffer.position((int) (position % SEGMENT_SIZE));
+        return buffer;
+    }
+
+    /**
+     * Reads a record.
+     * @param position the record position
+     * @param length the record length
+     * @return the record
+     * @throws IOException if the record cannot be read
+     */
+    private byte[] read(long position, int length) throws IOException {
+        byte[] record = new byte[length];
+        if (length > SEGMENT_SIZE) {
+            m_access.getChannel().map(FileChannel.MapMode.READ_ONLY,
+                    position, length).get(record);
+        } else {
+            getSegment(position).get(record);
+        }
+        return record;
+    }
+
+    /**
+     * Decodes an archived entry.
+     * @param entry the entry
+     * @return the decoded entry
+     */
+    private synchronized SyndEntry decode(ArchivedEntry entry) {
+        if (entry.m_released != null) {
+            return entry.m_released;
+        }
+        try {
+            byte[] record = read(entry.m_position, entry.m_length);
+            IdentifiedFeedEntry view = EntryCodec.read(new DataInputStream(
+                    new ByteArrayInputStream(record)));
+            return AbstractFeedWriter.createSyndEntry(view, view.id(), view
+                    .publicationDate());
+        } catch (IOException e) {
+            throw new IllegalStateException("Cannot read the archived entry "
+                    + entry.getUri() + " : " + e.getMessage());
+        }
+    }
+
+    /**
+     * Notifies that an entry was removed from the store. The entry is
+     * decoded and kept by the {@link ArchivedEntry}, as its record may be
+     * reclaimed by the next compaction while a reader still holds it.
+     * @param entry the entry
+     */
+    synchronized void release(SyndEntry entry) {
+        if (entry instanceof ArchivedEntry) {
+            ArchivedEntry archived = (ArchivedEntry) entry;
+            if (archived.m_archive == this && archived.m_released == null) {
+                archived.m_released = decode(archived);
+                m_dead += archived.m_length;
+            }
+        }
+    }
+
+    /**
+     * Checks whether the dead space is worth a compaction.
+     * @return <code>true</code> if the archive should be compacted
+     */
+    synchronized boolean needsCompaction() {
+        return m_dead > COMPACTION_THRESHOLD && m_dead > m_size - m_dead;
+    }
+
+    /**
+     * Compacts the archive: the entries of the store are copied to a new
+     * archive file, and the current file is deleted.
+     * @param store the store
+     * @throws IOException if the new file cannot be written
+     */
+    synchronized void compact(EntryStore store) throws IOException {
+        File oldFile = m_file;
+        RandomAccessFile oldAccess = m_access;
+        List<MappedByteBuffer> oldSegments = m_segments;
+        long oldSize = m_size;
+        long oldDead = m_dead;
+
+        m_file = create();
+        m_access = open(m_file);
+        m_segments = new ArrayList<MappedByteBuffer>();
+        m_size = 0;
+        m_dead = 0;
+        List<ArchivedEntry> moved = new ArrayList<ArchivedEntry>();
+        List<Long> positions = new ArrayList<Long>();
+        try {
+            for (EntryStore.Node node = store.first(); node != null; node = node
+                    .next()) {
+                if (node.getEntry() instanceof ArchivedEntry) {
+                    ArchivedEntry entry = (ArchivedEntry) node.getEntry();
+                    if (entry.m_archive == this) {
+                        byte[] record = readFrom(oldAccess, oldSegments,
+                                entry.m_position, entry.m_length);
+                        moved.add(entry);
+                        positions.add(write(record));
+                    }
+                }
+            }
+        } catch (IOException e) {
+            // Keep the current file.
+            m_access.close();
+            m_file.delete();
+            m_file = oldFile;
+            m_access = oldAccess;
+            m_segments = oldSegments;
+            m_size = oldSize;
+            m_dead = oldDead;
+            throw e;
+        }
+        for (int i = 0; i < moved.size(); i++) {
+            moved.get(i).m_position = positions.get(i);
+        }
+        oldAccess.close();
+        oldFile.delete();
+    }
+
+    /**
+     * Reads a record of a previous archive file.
+     * @param access the file access
+     * @param segments the mapped segments of the file
+     * @param position the record position
+     * @param length the record length
+     * @return the record
+     * @throws IOException if the record cannot be read
+     */
+    private static byte[] readFrom(RandomAccessFile access,
+            List<MappedByteBuffer> segments, long position, int length)
+        throws IOException {
+        byte[] record = new byte[length];
+        int index = (int) (position / SEGMENT_SIZE);
+        if (length <= SEGMENT_SIZE && index < segments.size()
+                && segments.get(index) != null) {
+            ByteBuffer buffer = segments.get(index).duplicate();
+            buffer.position((int) (position % SEGMENT_SIZE));
+            buffer.get(record);
+        } else {
+            access.getChannel().map(FileChannel.MapMode.READ_ONLY,
+                    position, length).get(record);
+        }
+        return record;
+    }
+
+    /**
+     * Gets the used size of the archive, dead space included.
+     * @return the size in bytes
+     */
+    synchronized long getSize() {
+        return m_size;
+    }
+
+    /**
+     * Closes and deletes the archive. The archived entries cannot be read
+     * anymore.
+     */
+    synchronized void close() {
+        try {
+            m_access.close();
+        } catch (IOException e) {
+            // Ignored.
+        }
+        m_segments = new ArrayList<MappedByteBuffer>();
+        m_file.delete();
+    }
+
+    /**
+     * Entry of an archive. Only the id, title and date are kept on the heap.
+     * The other fields are decoded from the archive when accessed; the
+     * decoded entry is softly cached, so the garbage collector reclaims it
+     * under memory pressure. Archived entries are read-only: the public
+     * views of the writers return decoded, mutable copies.
+     */
+    static final class ArchivedEntry implements SyndEntry {
+
+        /**
+         * The archive.
+         */
+        private final EntryArchive m_archive;
+
+        /**
+         * The position of the record, changed by compactions.
+         */
+        private long m_position;
+
+        /**
+         * The length of the record.
+         */
+        private final int m_length;
+
+        /**
+         * The entry id.
+         */
+        private final String m_uri;
+
+        /**
+         * The entry title.
+         */
+        private final String m_title;
+
+        /**
+         * The entry date, {@link Long#MIN_VALUE} if not set.
+         */
+        private final long m_date;
+
+        /**
+         * The size of the entry content.
+         */
+        private final int m_bytes;
+
+        /**
+         * The decoded entry once removed from the store, <code>null</code>
+         * while the entry is stored.
+         */
+        private volatile SyndEntry m_released;
+
+        /**
+         * The decoded entry.
+         */
+        private SoftReference<SyndEntry> m_decoded;
+
+        /**
+         * Creates an {@link ArchivedEntry}.
+         * @param archive the archive
+         * @param position the position of the record
+         * @param length the length of the record
+         * @param uri the entry id
+         * @param title the entry title
+         * @param date the entry date
+         * @param bytes the size of the entry content
+         */
+        private ArchivedEntry(EntryArchive archive, long position, int length,
+                String uri, String title, Date date, int bytes) {
+            m_archive = archive;
+            m_position = position;
+            m_length = length;
+            m_uri = uri;
+            m_title = title;
+            m_date = date == null ? Long.MIN_VALUE : date.getTime();
+            m_bytes = bytes;
+        }
+
+        /**
+         * Gets the size of the entry content.
+         * @return the UTF-8 encoded length of the description
+         */
+        int getBytes() {
+            return m_bytes;
+        }
+
+        /**
+         * Gets the decoded entry, decoding it if needed.
+         * @return the decoded entry
+         */
+        private synchronized SyndEntry get() {
+            SyndEntry entry = null;
+            if (m_decoded != null) {
+                entry = m_decoded.get();
+            }
+            if (entry == null) {
+                entry = m_archive.decode(this);
+                m_decoded = new SoftReference<SyndEntry>(entry);
+            }
+            return entry;
+        }
+
+        /**
+         * Decodes a new copy of the entry, independent of the archive.
+         * @return the decoded entry
+         */
+        SyndEntry decode() {
+            return m_archive.decode(this);
+        }
+
+        /**
+         * Creates the exception rejecting a modification.
+         * @return the exception
+         */
+        private static UnsupportedOperationException readOnly() {
+            return new UnsupportedOperationException(
+                    "Archived entries are read-only");
+        }
+
+        /**
+         * Gets the entry id.
+         * @return the id
+         * @see com.sun.syndication.feed.synd.SyndEntry#getUri()
+         */
+        public String getUri() {
+            return m_uri;
+        }
+
+        /**
+         * Gets the entry title.
+         * @return the title
+         * @see com.sun.syndication.feed.synd.SyndEntry#getTitle()
+         */
+        public String getTitle() {
+            return m_title;
+        }
+
+        /**
+         * Gets the publication date.
+         * @return the date
+         * @see com.sun.syndication.feed.synd.SyndEntry#getPublishedDate()
+         */
+        public Date getPublishedDate() {
+            return m_date == Long.MIN_VALUE ? null : new Date(m_date);
+        }
+
+        /**
+         * Gets the update date, the publication date for written entries.
+         * @return the date
+         * @see com.sun.syndication.feed.synd.SyndEntry#getUpdatedDate()
+         */
+        public Date getUpdatedDate() {
+            return getPublishedDate();
+        }
+
+        /**
+         * Gets the title content.
+         * @return the title content
+         * @see com.sun.syndication.feed.synd.SyndEntry#getTitleEx()
+         */
+        public SyndContent getTitleEx() {
+            return get().getTitleEx();
+        }
+
+        /**
+         * Gets the link.
+         * @return the link
+         * @see com.sun.syndication.feed.synd.SyndEntry#getLink()
+         */
+        public String getLink() {
+            return get().getLink();
+        }
+
+        /**
+         * Gets the links.
+         * @return the links
+         * @see com.sun.syndication.feed.synd.SyndEntry#getLinks()
+         */
+        public List getLinks() {
+            return get().getLinks();
+        }
+
+        /**
+         * Gets the description.
+         * @return the description
+         * @see com.sun.syndication.feed.synd.SyndEntry#getDescription()
+         */
+        public SyndContent getDescription() {
+            return get().getDescription();
+        }
+
+        /**
+         * Gets the contents.
+         * @return the contents
+         * @see com.sun.syndication.feed.synd.SyndEntry#getContents()
+         */
+        public List getContents() {
+            return get().getContents();
+        }
+
+        /**
+         * Gets the enclosures.
+         * @return the enclosures
+         * @see com.sun.syndication.feed.synd.SyndEntry#getEnclosures()
+         */
+        public List getEnclosures() {
+            return get().getEnclosures();
+        }
+
+        /**
+         * Gets the authors.
+         * @return the authors
+         * @see com.sun.syndication.feed.synd.SyndEntry#getAuthors()
+         */
+        public List getAuthors() {
+            return get().getAuthors();
+        }
+
+        /**
+         * Gets the author.
+         * @return the author
+         * @see com.sun.syndication.feed.synd.SyndEntry#getAuthor()
+         */
+        public String getAuthor() {
+            return get().getAuthor();
+        }
+
+        /**
+         * Gets the contributors.
+         * @return the contributors
+         * @see com.sun.syndication.feed.synd.SyndEntry#getContributors()
+         */
+        public List getContributors() {
+            return get().getContributors();
+        }
+
+        /**
+         * Gets the categories.
+         * @return the categories
+         * @see com.sun.syndication.feed.synd.SyndEntry#getCategories()
+         */
+        public List getCategories() {
+            return get().getCategories();
+        }
+
+        /**
+         * Gets the source feed.
+         * @return the source feed
+         * @see com.sun.syndication.feed.synd.SyndEntry#getSource()
+         */
+        public SyndFeed getSource() {
+            return get().getSource();
+        }
+
+        /**
+         * Gets the wire entry.
+         * @return the wire entry
+         * @see com.sun.syndication.feed.synd.SyndEntry#getWireEntry()
+         */
+        public Object getWireEntry() {
+            return get().getWireEntry();
+        }
+
+        /**
+         * Gets a module.
+         * @param uri the module uri
+         * @return the module, <code>null</code> if not found
+         * @see com.sun.syndication.feed.synd.SyndEntry#getModule(java.lang.String)
+         */
+        public Module getModule(String uri) {
+            return get().getModule(uri);
+        }
+
+        /**
+         * Gets the modules.
+         * @return the modules
+         * @see com.sun.syndication.feed.synd.SyndEntry#getModules()
+         */
+        public List getModules() {
+            return get().getModules();
+        }
+
+        /**
+         * Gets the foreign markup.
+         * @return the foreign markup
+         * @see com.sun.syndication.feed.synd.SyndEntry#getForeignMarkup()
+         */
+        public Object getForeignMarkup() {
+            return get().getForeignMarkup();
+        }
+
+        /**
+         * Gets the interface of the entry.
+         * @return {@link SyndEntry}
+         * @see com.sun.syndication.feed.CopyFrom#getInterface()
+         */
+        public Class getInterface() {
+            return SyndEntry.class;
+        }
+
+        /**
+         * Clones the entry. The clone is a decoded, modifiable entry.
+         * @return the clone
+         * @throws CloneNotSupportedException if the entry cannot be cloned
+         * @see java.lang.Object#clone()
+         */
+        public Object clone() throws CloneNotSupportedException {
+            return get().clone();
+        }
+
+        /**
+         * Unsupported, archived entries are read-only.
+         * @param obj the source
+         * @see com.sun.syndication.feed.CopyFrom#copyFrom(java.lang.Object)
+         */
+        public void copyFrom(Object obj) {
+            throw readOnly();
+        }
+
+        /**
+         * Unsupported, archived entries are read-only.
+         * @param uri the id
+         * @see com.sun.syndication.feed.synd.SyndEntry#setUri(java.lang.String)
+         */
+        public void setUri(String uri) {
+            throw readOnly();
+        }
+
+        /**
+         * Unsupported, archived entries are read-only.
+         * @param title the title
+         * @see com.sun.syndication.feed.synd.SyndEntry#setTitle(java.lang.String)
+         */
+        public void setTitle(String title) {
+            throw readOnly();
+        }
+
+        /**
+         * Unsupported, archived entries are read-only.
+         * @param title the title
+         * @see com.sun.syndication.feed.synd.SyndEntry#setTitleEx(com.sun.syndication.feed.synd.SyndContent)
+         */
+        public void setTitleEx(SyndContent title) {
+            throw readOnly();
+        }
+
+        /**
+         * Unsupported, archived entries are read-only.
+         * @param link the link
+         * @see com.sun.syndication.feed.synd.SyndEntry#setLink(java.lang.String)
+         */
+        public void setLink(String link) {
+            throw readOnly();
+        }
+
+        /**
+         * Unsupported, archived entries are read-only.
+         * @param links the links
+         * @see com.sun.syndication.feed.synd.SyndEntry#setLinks(java.util.List)
+         */
+        public void setLinks(List links) {
+            throw readOnly();
+        }
+
+        /**
+         * Unsupported, archived entries are read-only.
+         * @param description the description
+         * @see com.sun.syndication.feed.synd.SyndEntry#setDescription(com.sun.syndication.feed.synd.SyndContent)
+         */
+        public void setDescription(SyndContent description) {
+            throw readOnly();
+        }
+
+        /**
+         * Unsupported, archived entries are read-only.
+         * @param contents the contents
+         * @see com.sun.syndication.feed.synd.SyndEntry#setContents(java.util.List)
+         */
+        public void setContents(List contents) {
+            throw readOnly();
+        }
+
+        /**
+         * Unsupported, archived entries are read-only.
+         * @param enclosures the enclosures
+         * @see com.sun.syndication.feed.synd.SyndEntry#setEnclosures(java.util.List)
+         */
+        public void setEnclosures(List enclosures) {
+            throw readOnly();
+        }
+
+        /**
+         * Unsupported, archived entries are read-only.
+         * @param date the date
+         * @see com.sun.syndication.feed.synd.SyndEntry#setPublishedDate(java.util.Date)
+         */
+        public void setPublishedDate(Date date) {
+            throw readOnly();
+        }
+
+        /**
+         * Unsupported, archived entries are read-only.
+         * @param date the date
+         * @see com.sun.syndication.feed.synd.SyndEntry#setUpdatedDate(java.util.Date)
+         */
+        public void setUpdatedDate(Date date) {
+            throw readOnly();
+        }
+
+        /**
+         * Unsupported, archived entries are read-only.
+         * @param authors the authors
+         * @see com.sun.syndication.feed.synd.SyndEntry#setAuthors(java.util.List)
+         */
+        public void setAuthors(List authors) {
+            throw readOnly();
+        }
+
+        /**
+         * Unsupported, archived entries are read-only.
+         * @param author the author
+         * @see com.sun.syndication.feed.synd.SyndEntry#setAuthor(java.lang.String)
+         */
+        public void setAuthor(String author) {
+            throw readOnly();
+        }
+
+        /**
+         * Unsupported, archived entries are read-only.
+         * @param contributors the contributors
+         * @see com.sun.syndication.feed.synd.SyndEntry#setContributors(java.util.List)
+         */
+        public void setContributors(List contributors) {
+            throw readOnly();
+        }
+
+        /**
+         * Unsupported, archived entries are read-only.
+         * @param categories the categories
+         * @see com.sun.syndication.feed.synd.SyndEntry#setCategories(java.util.List)
+         */
+        public void setCategories(List categories) {
+            throw readOnly();
+        }
+
+        /**
+         * Unsupported, archived entries are read-only.
+         * @param source the source feed
+         * @see com.sun.syndication.feed.synd.SyndEntry#setSource(com.sun.syndication.feed.synd.SyndFeed)
+         */
+        public void setSource(SyndFeed source) {
+            throw readOnly();
+        }
+
+        /**
+         * Unsupported, archived entries are read-only.
+         * @param modules the modules
+         * @see com.sun.syndication.feed.synd.SyndEntry#setModules(java.util.List)
+         */
+        public void setModules(List modules) {
+            throw readOnly();
+        }
+
+        /**
+         * Unsupported, archived entries are read-only.
+         * @param markup the foreign markup
+         * @see com.sun.syndication.feed.synd.SyndEntry#setForeignMarkup(java.lang.Object)
+         */
+        public void setForeignMarkup(Object markup) {
+            throw readOnly();
+        }
+
+    }
+
+}
@@ -0,0 +1,145 @@
+/*
+ * Copyright 2009 OW2 Chameleon
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ow2.chameleon.syndication.rome;
+
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import org.ow2.chameleon.syndication.FeedEntry;
+import org.ow2.chameleon.syndication.IdentifiedFeedEntry;
+
+/**
+ * Compact binary encoding of feed entries, used to save entries on disk.
+ * Strings are written as a length followed by their UTF-8 bytes (-1 for
+ * <code>null</code>), so contents larger than 64KB are supported.
+ * <p>
+ * Entries are read from in-memory buffers (the inputs must return the exact
+ * number of remaining bytes from {@link DataInputStream#available()}), so
+ * that lengths and counts read from a corrupted file are checked against
+ * the remaining bytes before anything is allocated.
+ */
+final class EntryCodec {
+
+    /**
+     * Hidden constructor, utility class.
+     */
+    private EntryCodec() {
+        // Nothing to do.
+    }
+
+    /**
+     * Writes an entry.
+     * @param out the output
+     * @param entry the entry
+     * @throws IOException if the entry cannot be written
+     */
+    static void write(DataOutput out, FeedEntry entry) throws IOException {
+        writeString(out, AbstractFeedWriter.getId(entry));
+        writeString(out, entry.title());
+        writeString(out, entry.url());
+        writeString(out, entry.author());
+        writeString(out, entry.content());
+        Date date = entry.publicationDate();
+        out.writeLong(date == null ? Long.MIN_VALUE : date.getTime());
+        List<String> categories = entry.categories();
+        if (categories == null) {
+            out.writeInt(0);
+        } else {
+            out.writeInt(categories.size());
+            for (String category : categories) {
+                writeString(out, category);
+            }
+        }
+    }
+
+    /**
+     * Reads an entry written by {@link #write(DataOutput, FeedEntry)}.
+     * @param in the input, reading an in-memory buffer
+     * @return the read-only entry
+     * @throws IOException if the entry cannot be read or is corrupted
+     */
+    static IdentifiedFeedEntry read(DataInputStream in) throws IOException {
+        String id = readString(in);
+        String title = readString(in);
+        String url = readString(in);
+        String author = readString(in);
+        String content = readString(in);
+        long time = in.readLong();
+        int count = readCount(in, 4);
+        List<String> categories = new ArrayList<String>(count);
+        for (int i = 0; i < count; i++) {
+            categories.add(readString(in));
+        }
+        return new FeedReaderImpl.FeedEntryImpl(id, title, url, author,
+                content, time == Long.MIN_VALUE ? null : new Date(time),
+                categories);
+    }
+
+    /**
+     * Writes a string.
+     * @param out the output
+     * @param s the string, may be <code>null</code>
+     * @throws IOException if the string cannot be written
+     */
+    static void writeString(DataOutput out, String s) throws IOException {
+        if (s == null) {
+            out.writeInt(-1);
+        } else {
+            byte[] bytes = s.getBytes("UTF-8");
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+    }
+
+    /**
+     * Reads a string written by {@link #writeString(DataOutput, String)}.
+     * @param in the input, reading an in-memory buffer
+     * @return the string, may be <code>null</code>
+     * @throws IOException if the string cannot be read or is corrupted
+     */
+    static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        if (length > in.available()) {
+            throw new IOException("Corrupted string length " + length);
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, "UTF-8");
+    }
+
+    /**
+     * Reads the number of items of a sequence, and checks that the
+     * remaining bytes can hold them.
+     * @param in the input, reading an in-memory buffer
+     * @param size the minimal size of an item in bytes
+     * @return the number of items
+     * @throws IOException if the count cannot be read or is corrupted
+     */
+    static int readCount(DataInputStream in, int size) throws IOException {
+        int count = in.readInt();
+        if (count < 0 || (long) count * size > in.available()) {
+            throw new IOException("Corrupted item count " + count);
+        }
+        return count;
+    }
+
+}
@@ -0,0 +1,616 @@
+/*
+ * Copyright 2009 OW2 Chameleon
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ow2.chameleon.syndication.rome;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.zip.CRC32;
+
+import org.ow2.chameleon.syndication.FeedEntry;
+
+import com.sun.syndication.feed.module.Module;
+import com.sun.syndication.feed.synd.SyndCategory;
+import com.sun.syndication.feed.synd.SyndContent;
+import com.sun.syndication.feed.synd.SyndEntry;
+import com.sun.syndication.feed.synd.SyndEntryImpl;
+
+/**
+ * Binary snapshot of the entries of a written feed. The file starts with a
+ * fixed header, followed by the entry bodies, and ends with an index:
+ * <ul>
+ * <li>header: magic, version, generation, length and modification time of
+ * the source file, entry count, index offset, length and CRC32, and the
+ * CRC32 of the header itself.</li>
+ * <li>body of each entry: link, author, content and categories, encoded
+ * with {@link EntryCodec}.</li>
+ * <li>index, from the most recent entry: body offset, length and CRC32,
+ * dates, content size, id and title.</li>
+ * </ul>
+ * Opening a snapshot maps the file and only decodes the index. Entries are
+ * added to the store with their id, title and dates, and their body is
+ * decoded from the mapped file, and checked, on first access.
+ */
+final class EntrySnapshot {
+
+    /**
+     * Magic number of the snapshot files.
+     */
+    private static final int MAGIC = 0x53594e58;
+
+    /**
+     * Format version of the snapshot files.
+     */
+    private static final int VERSION = 1;
+
+    /**
+     * Size of the header.
+     */
+    private static final int HEADER_SIZE = 56;
+
+    /**
+     * The mapped file.
+     */
+    private final ByteBuffer m_buffer;
+
+    /**
+     * The generation of the snapshot.
+     */
+    private final long m_generation;
+
+    /**
+     * The length of the source file.
+     */
+    private final long m_sourceLength;
+
+    /**
+     * The modification time of the source file.
+     */
+    private final long m_sourceModified;
+
+    /**
+     * The number of entries.
+     */
+    private final int m_count;
+
+    /**
+     * The index offset.
+     */
+    private final long m_indexOffset;
+
+    /**
+     * The index length.
+     */
+    private final int m_indexLength;
+
+    /**
+     * The index CRC32.
+     */
+    private final int m_indexCrc;
+
+    /**
+     * Opens a snapshot. The header is read and checked.
+     * @param buffer the snapshot content
+     * @throws IOException if the snapshot is invalid
+     */
+    private EntrySnapshot(ByteBuffer buffer) throws IOException {
+        m_buffer = buffer;
+        if (buffer.capacity() < HEADER_SIZE) {
+            throw new IOException("Truncated snapshot");
+        }
+        byte[] header = new byte[HEADER_SIZE];
+        buffer.duplicate().get(header);
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(
+                header));
+        if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+            throw new IOException("Not a snapshot, or unsupported version");
+        }
+        m_generation = in.readLong();
+        m_sourceLength = in.readLong();
+        m_sourceModified = in.readLong();
+        m_count = in.readInt();
+        m_indexOffset = in.readLong();
+        m_indexLength = in.readInt();
+        m_indexCrc = in.readInt();
+        if (in.readInt() != crc(header, 0, HEADER_SIZE - 4)) {
+            throw new IOException("Corrupted snapshot header");
+        }
+        if (m_indexOffset < HEADER_SIZE || m_indexLength < 0
+                || m_indexOffset + m_indexLength > buffer.capacity()) {
+            throw new IOException("Truncated snapshot");
+        }
+    }
+
+    /**
+     * Opens a snapshot file. The file is mapped in memory.
+     * @param file the file
+     * @return the snapshot
+     * @throws IOException if the file cannot be read or is invalid
+     */
+    static EntrySnapshot open(File file) throws IOException {
+        FileInputStream in = new FileInputStream(file);
+        try {
+            FileChannel channel = in.getChannel();
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("Snapshot too large to be mapped");
+            }
+            MappedByteBuffer buffer = channel.map(
+                    FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            return new EntrySnapshot(buffer);
+        } finally {
+            // The mapping stays valid once the channel is closed.
+            in.close();
+        }
+    }
+
+    /**
+     * Gets the generation of the snapshot.
+     * @return the generation
+     */
+    long getGeneration() {
+        return m_generation;
+    }
+
+    /**
+     * Checks whether the snapshot was taken from the current version of a
+     * source file.
+     * @param source the source file
+     * @return <code>true</code> if the length and modification time of the
+     *         file match the snapshot
+     */
+    boolean isSnapshotOf(File source) {
+        return source.length() == m_sourceLength
+                && source.lastModified() == m_sourceModified;
+    }
+
+    /**
+     * Gets the number of entries.
+     * @return the number of entries
+     */
+    int size() {
+        return m_count;
+    }
+
+    /**
+     * Adds the entries of the snapshot to a store, as the oldest entries.
+     * Only the index is decoded.
+     * @param store the store
+     * @throws IOException if the index is corrupted
+     */
+    void load(EntryStore store) throws IOException {
+        byte[] index = new byte[m_indexLength];
+        ByteBuffer buffer = m_buffer.duplicate();
+        buffer.position((int) m_indexOffset);
+        buffer.get(index);
+        if (crc(index, 0, index.length) != m_indexCrc) {
+            throw new IOException("Corrupted snapshot index");
+        }
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(
+                index));
+        List<SnapshotEntry> entries = new ArrayList<SnapshotEntry>(m_count);
+        List<Integer> sizes = new ArrayList<Integer>(m_count);
+        for (int i = 0; i < m_count; i++) {
+            long offset = in.readLong();
+            int length = in.readInt();
+            int crc = in.readInt();
+            long published = in.readLong();
+            long updated = in.readLong();
+            int bytes = in.readInt();
+            String id = EntryCodec.readString(in);
+            String title = EntryCodec.readString(in);
+            if (offset < HEADER_SIZE || length < 0
+                    || offset + length > m_indexOffset) {
+                throw new IOException("Corrupted snapshot index");
+            }
+            SnapshotEntry entry = new SnapshotEntry(this, (int) offset,
+                    length, crc);
+            entry.setUri(id);
+            entry.setTitle(title);
+            entry.setPublishedDate(toDate(published));
+            entry.setUpdatedDate(toDate(updated));
+            entry.m_bytes = bytes;
+            entries.add(entry);
+            sizes.add(bytes);
+        }
+        // The whole index is valid.
+        for (int i = 0; i < m_count; i++) {
+            store.addLast(entries.get(i), sizes.get(i));
+        }
+    }
+
+    /**
+     * Writes a snapshot. The snapshot is written to a temporary file,
+     * optionally synced to the disk, and renamed. A snapshot of a source
+     * file does not need to be synced: a torn snapshot fails its checksums
+     * and the entries are parsed from the source file. Entries read from a
+     * snapshot and not accessed yet are copied without being decoded.
+     * @param file the snapshot file
+     * @param generation the generation of the snapshot
+     * @param source the source file of the snapshot, <code>null</code> if
+     *        none
+     * @param entries the entries, from the most recent
+     * @param sync whether the snapshot is synced to the disk before being
+     *        renamed
+     * @throws IOException if the snapshot cannot be written
+     */
+    static void write(File file, long generation, File source,
+            List<SyndEntry> entries, boolean sync) throws IOException {
+        File tmp = new File(file.getPath() + ".tmp");
+        FileOutputStream stream = new FileOutputStream(tmp);
+        try {
+            FileChannel channel = stream.getChannel();
+            CountingOutputStream counter = new CountingOutputStream(
+                    new BufferedOutputStream(stream));
+            DataOutputStream out = new DataOutputStream(counter);
+            out.write(new byte[HEADER_SIZE]);
+
+            ByteArrayOutputStream indexBytes = new ByteArrayOutputStream();
+            DataOutputStream index = new DataOutputStream(indexBytes);
+            ByteArrayOutputStream bodyBytes = new ByteArrayOutputStream();
+            DataOutputStream body = new DataOutputStream(bodyBytes);
+            for (SyndEntry entry : entries) {
+                byte[] record = null;
+                if (entry instanceof SnapshotEntry) {
+                    record = ((SnapshotEntry) entry).getRecord();
+                }
+                FeedEntry view = null;
+                if (record == null) {
+                    view = new FeedReaderImpl.FeedEntryImpl(entry);
+                    bodyBytes.reset();
+                    EntryCodec.writeString(body, view.url());
+                    EntryCodec.writeString(body, view.author());
+                    EntryCodec.writeString(body, view.content());
+                    body.writeInt(view.categories().size());
+                    for (String category : view.categories()) {
+                        EntryCodec.writeString(body, category);
+                    }
+                    body.flush();
+                    record = bodyBytes.toByteArray();
+                }
+                index.writeLong(counter.getCount());
+                index.writeInt(record.length);
+                index.writeInt(crc(record, 0, record.length));
+                index.writeLong(toTime(entry.getPublishedDate()));
+                index.writeLong(toTime(entry.getUpdatedDate()));
+                if (view == null) {
+                    index.writeInt(((SnapshotEntry) entry).m_bytes);
+                } else {
+                    index.writeInt(EntryStore.length(view.content()));
+                }
+                EntryCodec.writeString(index, entry.getUri());
+                EntryCodec.writeString(index, entry.getTitle());
+                out.write(record);
+            }
+            index.flush();
+            byte[] indexContent = indexBytes.toByteArray();
+            long indexOffset = counter.getCount();
+            out.write(indexContent);
+            out.flush();
+
+            ByteArrayOutputStream headerBytes = new ByteArrayOutputStream(
+                    HEADER_SIZE);
+            DataOutputStream header = new DataOutputStream(headerBytes);
+            header.writeInt(MAGIC);
+            header.writeInt(VERSION);
+            header.writeLong(generation);
+            header.writeLong(source == null ? 0 : source.length());
+            header.writeLong(source == null ? 0 : source.lastModified());
+            header.writeInt(entries.size());
+            header.writeLong(indexOffset);
+            header.writeInt(indexContent.length);
+            header.writeInt(crc(indexContent, 0, indexContent.length));
+            byte[] content = headerBytes.toByteArray();
+            header.writeInt(crc(content, 0, content.length));
+            header.flush();
+            ByteBuffer buffer = ByteBuffer.wrap(headerBytes.toByteArray());
+            while (buffer.hasRemaining()) {
+                channel.write(buffer, buffer.position());
+            }
+            if (sync) {
+                channel.force(true);
+            }
+        } finally {
+            stream.close();
+        }
+        FileReplacer.replace(tmp, file);
+    }
+
+    /**
+     * Computes the CRC32 of a byte range.
+     * @param bytes the bytes
+     * @param offset the range offset
+     * @param length the range length
+     * @return the checksum
+     */
+    private static int crc(byte[] bytes, int offset, int length) {
+        CRC32 crc = new CRC32();
+        crc.update(bytes, offset, length);
+        return (int) crc.getValue();
+    }
+
+    /**
+     * Converts a date to a time.
+     * @param date the date, may be <code>null</code>
+     * @return the time, {@link Long#MIN_VALUE} for <code>null</code>
+     */
+    private static long toTime(Date date) {
+        return date == null ? Long.MIN_VALUE : date.getTime();
+    }
+
+    /**
+     * Converts a time to a date.
+     * @param time the time
+     * @return the date, <code>null</code> for {@link Long#MIN_VALUE}
+     */
+    private static Date toDate(long time) {
+        return time == Long.MIN_VALUE ? null : new Date(time);
+    }
+
+    /**
+     * Entry of a snapshot. The id, title and dates are set when the
+     * snapshot is opened, the other fields are decoded on first access.
+     */
+    static final class SnapshotEntry extends SyndEntryImpl {
+
+        /**
+         * Serial version.
+         */
+        private static final long serialVersionUID = 1L;
+
+        /**
+         * The snapshot, <code>null</code> once the body is decoded.
+         */
+        private transient EntrySnapshot m_snapshot;
+
+        /**
+         * The offset of the body.
+         */
+        private final int m_offset;
+
+        /**
+         * The length of the body.
+         */
+        private final int m_length;
+
+        /**
+         * The CRC32 of the body.
+         */
+        private final int m_crc;
+
+        /**
+         * The size of the content.
+         */
+        private int m_bytes;
+
+        /**
+         * Creates a {@link SnapshotEntry}.
+         * @param snapshot the snapshot
+         * @param offset the offset of the body
+         * @param length the length of the body
+         * @param crc the CRC32 of the body
+         */
+        private SnapshotEntry(EntrySnapshot snapshot, int offset, int length,
+                int crc) {
+            m_snapshot = snapshot;
+            m_offset = offset;
+            m_length = length;
+            m_crc = crc;
+        }
+
+        /**
+         * Reads the body.
+         * @return the body, <code>null</code> if already decoded
+         */
+        private synchronized byte[] getRecord() {
+            if (m_snapshot == null) {
+                return null;
+            }
+            byte[] record = new byte[m_length];
+            ByteBuffer buffer = m_snapshot.m_buffer.duplicate();
+            buffer.position(m_offset);
+            buffer.get(record);
+            if (crc(record, 0, record.length) != m_crc) {
+                throw new IllegalStateException("Corrupted snapshot entry "
+                        + getUri());
+            }
+            return record;
+        }
+
+        /**
+         * Decodes the body if not done yet.
+         */
+        private synchronized void load() {
+            byte[] record = getRecord();
+            if (record == null) {
+                return;
+            }
+            m_snapshot = null;
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(
+                    record));
+            try {
+                String url = EntryCodec.readString(in);
+                String author = EntryCodec.readString(in);
+                String content = EntryCodec.readString(in);
+                int count = in.readInt();
+                List<String> categories = new ArrayList<String>(count);
+                for (int i = 0; i < count; i++) {
+                    categories.add(EntryCodec.readString(in));
+                }
+                SyndEntry decoded = AbstractFeedWriter.createSyndEntry(
+                        new FeedReaderImpl.FeedEntryImpl(getUri(), getTitle(),
+                                url, author, content, null, categories),
+                        getUri(), null);
+                super.setLink(decoded.getLink());
+                super.setAuthor(author);
+                super.setDescription(decoded.getDescription());
+                super.setCategories(decoded.getCategories());
+            } catch (IOException e) {
+                throw new IllegalStateException("Corrupted snapshot entry "
+                        + getUri());
+            }
+        }
+
+        /**
+         * Gets the link.
+         * @return the link
+         * @see com.sun.syndication.feed.synd.SyndEntryImpl#getLink()
+         */
+        @Override
+        public String getLink() {
+            load();
+            return super.getLink();
+        }
+
+        /**
+         * Gets the author.
+         * @return the author
+         * @see com.sun.syndication.feed.synd.SyndEntryImpl#getAuthor()
+         */
+        @Override
+        public String getAuthor() {
+            load();
+            return super.getAuthor();
+        }
+
+        /**
+         * Gets the description.
+         * @return the description
+         * @see com.sun.syndication.feed.synd.SyndEntryImpl#getDescription()
+         */
+        @Override
+        public SyndContent getDescription() {
+            load();
+            return super.getDescription();
+        }
+
+        /**
+         * Gets the categories.
+         * @return the list of {@link SyndCategory}
+         * @see com.sun.syndication.feed.synd.SyndEntryImpl#getCategories()
+         */
+        @Override
+        public List getCategories() {
+            load();
+            return super.getCategories();
+        }
+
+        /**
+         * Gets the modules, holding the author and categories.
+         * @return the modules
+         * @see com.sun.syndication.feed.synd.SyndEntryImpl#getModules()
+         */
+        @Override
+        public List getModules() {
+            load();
+            return super.getModules();
+        }
+
+        /**
+         * Gets a module.
+         * @param uri the module uri
+         * @return the module, <code>null</code> if not found
+         * @see com.sun.syndication.feed.synd.SyndEntryImpl#getModule(java.lang.String)
+         */
+        @Override
+        public Module getModule(String uri) {
+            load();
+            return super.getModule(uri);
+        }
+
+    }
+
+    /**
+     * Output stream counting the written bytes.
+     */
+    private static final class CountingOutputStream extends OutputStream {
+
+        /**
+         * The wrapped stream.
+         */
+        private final OutputStream m_out;
+
+        /**
+         * The number of written bytes.
+         */
+        private long m_count;
+
+        /**
+         * Creates a {@link CountingOutputStream}.
+         * @param out the wrapped stream
+         */
+        private CountingOutputStream(OutputStream out) {
+            m_out = out;
+        }
+
+        /**
+         * Gets the number of written bytes.
+         * @return the number of bytes
+         */
+        private long getCount() {
+            return m_count;
+        }
+
+        /**
+         * Writes a byte.
+         * @param b the byte
+         * @throws IOException if the byte cannot be written
+         * @see java.io.OutputStream#write(int)
+         */
+        @Override
+        public void write(int b) throws IOException {
+            m_out.write(b);
+            m_count++;
+        }
+
+        /**
+         * Writes bytes.
+         * @param b the bytes
+         * @param off the offset
+         * @param len the number of bytes
+         * @throws IOException if the bytes cannot be written
+         * @see java.io.OutputStream#write(byte[], int, int)
+         */
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            m_out.write(b, off, len);
+            m_count += len;
+        }
+
+        /**
+         * Flushes the wrapped stream.
+         * @throws IOException if the stream cannot be flushed
+         * @see java.io.OutputStream#flush()
+         */
+        @Override
+        public void flush() throws IOException {
+            m_out.flush();
+        }
+
+    }
+
+}
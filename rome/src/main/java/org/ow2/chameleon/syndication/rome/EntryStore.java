@@ -0,0 +1,455 @@
+/*
+ * Copyright 2009 OW2 Chameleon
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ow2.chameleon.syndication.rome;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.sun.syndication.feed.synd.SyndEntry;
+
+/**
+ * Entries of a written feed, from the most recent to the oldest. The store
+ * is a doubly-linked list: adding an entry, removing an entry from its node
+ * and accessing the newest entries do not depend on the number of entries.
+ * Entries are indexed by id (<code>SyndEntry.getUri()</code>) and by title;
+ * entries sharing a title are chained from the most recent, so that
+ * removals unlink them in constant time.
+ * <p>
+ * The store also sums the size of the entry contents, so that writers can
+ * bound the memory used by a feed by evicting the oldest entries.
+ * <p>
+ * This class is not thread safe, the writers use it under their lock.
+ */
+public final class EntryStore {
+
+    /**
+     * The most recent entry, <code>null</code> if empty.
+     */
+    private Node m_first;
+
+    /**
+     * The oldest entry, <code>null</code> if empty.
+     */
+    private Node m_last;
+
+    /**
+     * The number of entries.
+     */
+    private int m_size;
+
+    /**
+     * The size of the entry contents in bytes.
+     */
+    private long m_bytes;
+
+    /**
+     * Index of the entries by id.
+     */
+    private final Map<String, Node> m_ids = new HashMap<String, Node>();
+
+    /**
+     * Index of the entries by title: first (most recent) and last nodes of
+     * the chain of the entries having this title.
+     */
+    private final Map<String, Node[]> m_titles = new HashMap<String, Node[]>();
+
+    /**
+     * Adds an entry as the most recent entry.
+     * @param entry the entry
+     * @return the node of the entry
+     */
+    public Node addFirst(SyndEntry entry) {
+        return addFirst(entry, -1);
+    }
+
+    /**
+     * Adds an entry as the most recent entry, with a known content size.
+     * The content of the entry is not read.
+     * @param entry the entry
+     * @param bytes the UTF-8 encoded length of the entry description, -1 to
+     *        compute it
+     * @return the node of the entry
+     */
+    public Node addFirst(SyndEntry entry, int bytes) {
+        Node node = new Node(entry, bytes);
+        node.m_next = m_first;
+        if (m_first == null) {
+            m_last = node;
+        } else {
+            m_first.m_previous = node;
+        }
+        m_first = node;
+        m_size++;
+        m_bytes += node.m_bytes;
+        index(node, true);
+        return node;
+    }
+
+    /**
+     * Adds an entry as the oldest entry. Used to load existing feeds.
+     * @param entry the entry
+     * @return the node of the entry
+     */
+    public Node addLast(SyndEntry entry) {
+        return addLast(entry, -1);
+    }
+
+    /**
+     * Adds an entry as the oldest entry, with a known content size. The
+     * content of the entry is not read, so entries loaded lazily stay
+     * unloaded.
+     * @param entry the entry
+     * @param bytes the UTF-8 encoded length of the entry description, -1 to
+     *        compute it
+     * @return the node of the entry
+     */
+    public Node addLast(SyndEntry entry, int bytes) {
+        Node node = new Node(entry, bytes);
+        node.m_previous = m_last;
+        if (m_last == null) {
+            m_first = node;
+        } else {
+            m_last.m_next = node;
+        }
+        m_last = node;
+        m_size++;
+        m_bytes += node.m_bytes;
+        index(node, false);
+        return node;
+    }
+
+    /**
+     * Removes an entry.
+     * @param node the node of the entry, must belong to this store
+     */
+    public void remove(Node node) {
+        if (node.m_removed) {
+            return;
+        }
+        if (node.m_previous == null) {
+            m_first = node.m_next;
+        } else {
+            node.m_previous.m_next = node.m_next;
+        }
+        if (node.m_next == null) {
+            m_last = node.m_previous;
+        } else {
+            node.m_next.m_previous = node.m_previous;
+        }
+        node.m_removed = true;
+        m_size--;
+        m_bytes -= node.m_bytes;
+
+        String id = node.m_entry.getUri();
+        if (id != null && m_ids.get(id) == node) {
+            m_ids.remove(id);
+        }
+        String title = node.m_entry.getTitle();
+        if (title != null) {
+            Node[] chain = m_titles.get(title);
+            if (node.m_titlePrevious == null) {
+                chain[0] = node.m_titleNext;
+            } else {
+                node.m_titlePrevious.m_titleNext = node.m_titleNext;
+            }
+            if (node.m_titleNext == null) {
+                chain[1] = node.m_titlePrevious;
+            } else {
+                node.m_titleNext.m_titlePrevious = node.m_titlePrevious;
+            }
+            if (chain[0] == null) {
+                m_titles.remove(title);
+            }
+        }
+    }
+
+    /**
+     * Indexes a new node.
+     * @param node the node
+     * @param first is the node the most recent entry
+     */
+    private void index(Node node, boolean first) {
+        String id = node.m_entry.getUri();
+        if (id != null) {
+            m_ids.put(id, node);
+        }
+        String title = node.m_entry.getTitle();
+        if (title != null) {
+            Node[] chain = m_titles.get(title);
+            if (chain == null) {
+                m_titles.put(title, new Node[] {node, node});
+            } else if (first) {
+                node.m_titleNext = chain[0];
+                chain[0].m_titlePrevious = node;
+                chain[0] = node;
+            } else {
+                node.m_titlePrevious = chain[1];
+                chain[1].m_titleNext = node;
+                chain[1] = node;
+            }
+        }
+    }
+
+    /**
+     * Replaces the entry of a node by an equivalent entry, with the same id,
+     * title and content (e.g. an archived entry by its decoded copy). The
+     * node keeps its position and its indexes.
+     * @param node the node
+     * @param entry the new entry
+     */
+    public void replace(Node node, SyndEntry entry) {
+        node.m_entry = entry;
+    }
+
+    /**
+     * Gets an entry by id.
+     * @param id the entry id
+     * @return the node of the entry, <code>null</code> if not found
+     */
+    public Node getById(String id) {
+        return m_ids.get(id);
+    }
+
+    /**
+     * Gets the most recent entry having the given title. The other entries
+     * having this title are reachable with {@link Node#nextWithTitle()}.
+     * @param title the title
+     * @return the node of the entry, <code>null</code> if not found
+     */
+    public Node getByTitle(String title) {
+        Node[] chain = m_titles.get(title);
+        if (chain == null) {
+            return null;
+        }
+        return chain[0];
+    }
+
+    /**
+     * Gets the most recent entry.
+     * @return the node of the most recent entry, <code>null</code> if empty
+     */
+    public Node first() {
+        return m_first;
+    }
+
+    /**
+     * Gets the oldest entry.
+     * @return the node of the oldest entry, <code>null</code> if empty
+     */
+    public Node last() {
+        return m_last;
+    }
+
+    /**
+     * Gets the number of entries.
+     * @return the number of entries
+     */
+    public int size() {
+        return m_size;
+    }
+
+    /**
+     * Gets the size of the entry contents, i.e. the UTF-8 encoded length of
+     * the entry descriptions.
+     * @return the number of bytes
+     */
+    public long getBytes() {
+        return m_bytes;
+    }
+
+    /**
+     * Checks whether the store is empty.
+     * @return <code>true</code> if the store has no entries
+     */
+    public boolean isEmpty() {
+        return m_size == 0;
+    }
+
+    /**
+     * Gets a range of entries, from the most recent.
+     * @param from the index of the first returned entry (inclusive)
+     * @param to the index of the last returned entry (exclusive)
+     * @return the entries
+     */
+    public List<SyndEntry> range(int from, int to) {
+        to = Math.min(to, m_size);
+        List<SyndEntry> list = new ArrayList<SyndEntry>(Math.max(0, to
+                - from));
+        Node node = m_first;
+        for (int i = 0; node != null && i < to; i++) {
+            if (i >= from) {
+                list.add(node.m_entry);
+            }
+            node = node.m_next;
+        }
+        return list;
+    }
+
+    /**
+     * Gets the most recent entries.
+     * @param count the number of entries
+     * @return the entries, at most <code>count</code>
+     */
+    public List<SyndEntry> newest(int count) {
+        return range(0, count);
+    }
+
+    /**
+     * Gets all the entries, from the most recent.
+     * @return the entries
+     */
+    public List<SyndEntry> toList() {
+        return range(0, m_size);
+    }
+
+    /**
+     * Computes the UTF-8 encoded length of a string, without encoding it.
+     * @param value the string, may be <code>null</code>
+     * @return the number of bytes
+     */
+    static int length(String value) {
+        if (value == null) {
+            return 0;
+        }
+        int length = 0;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c < 0x80) {
+                length++;
+            } else if (c < 0x800) {
+                length += 2;
+            } else if (Character.isHighSurrogate(c)
+                    && i + 1 < value.length()
+                    && Character.isLowSurrogate(value.charAt(i + 1))) {
+                length += 4;
+                i++;
+            } else {
+                length += 3;
+            }
+        }
+        return length;
+    }
+
+    /**
+     * Node of an entry.
+     */
+    public static final class Node {
+
+        /**
+         * The entry.
+         */
+        private SyndEntry m_entry;
+
+        /**
+         * The more recent node.
+         */
+        private Node m_previous;
+
+        /**
+         * The older node.
+         */
+        private Node m_next;
+
+        /**
+         * The more recent node having the same title.
+         */
+        private Node m_titlePrevious;
+
+        /**
+         * The older node having the same title.
+         */
+        private Node m_titleNext;
+
+        /**
+         * Is the node removed from the store.
+         */
+        private boolean m_removed;
+
+        /**
+         * The size of the entry content in bytes.
+         */
+        private final int m_bytes;
+
+        /**
+         * Creates a {@link Node}.
+         * @param entry the entry
+         * @param bytes the size of the entry content, -1 to compute it
+         */
+        private Node(SyndEntry entry, int bytes) {
+            m_entry = entry;
+            if (bytes >= 0) {
+                m_bytes = bytes;
+            } else if (entry.getDescription() == null) {
+                m_bytes = 0;
+            } else {
+                m_bytes = length(entry.getDescription().getValue());
+            }
+        }
+
+        /**
+         * Gets the entry.
+         * @return the entry
+         */
+        public SyndEntry getEntry() {
+            return m_entry;
+        }
+
+        /**
+         * Gets the size of the entry content.
+         * @return the UTF-8 encoded length of the entry description
+         */
+        public int getBytes() {
+            return m_bytes;
+        }
+
+        /**
+         * Gets the next older entry.
+         * @return the node, <code>null</code> if this entry is the oldest
+         */
+        public Node next() {
+            return m_next;
+        }
+
+        /**
+         * Gets the next older entry having the same title.
+         * @return the node, <code>null</code> if there is no older entry with
+         *         this title
+         */
+        public Node nextWithTitle() {
+            return m_titleNext;
+        }
+
+        /**
+         * Checks whether the entry was removed from the store.
+         * @return <code>true</code> if the entry was removed
+         */
+        public boolean isRemoved() {
+            return m_removed;
+        }
+
+        /**
+         * Gets the next more recent entry.
+         * @return the node, <code>null</code> if this entry is the most
+         *         recent
+         */
+        public Node previous() {
+            return m_previous;
+        }
+
+    }
+
+}
@@ -0,0 +1,221 @@
+/*
+ * Copyright 2009 OW2 Chameleon
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ow2.chameleon.syndication.rome;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+
+import org.ow2.chameleon.syndication.FeedEntry;
+import org.ow2.chameleon.syndication.IdentifiedFeedEntry;
+
+/**
+ * Tracks the entries already seen in a polled feed, to detect the new and
+ * updated entries. Entries are identified by their guid / Atom id, or by
+ * their link, or by their title and date when the feed provides neither.
+ * The publication date is not part of the comparison, so rewritten dates
+ * neither hide nor re-announce entries.
+ * <p>
+ * The tracker keeps, for each entry of the last poll, a 64-bit hash of its
+ * identity and a 32-bit hash of its title and content, in two sorted
+ * arrays (12 bytes per entry). Entries that left the feed are forgotten.
+ * Each entry of a poll costs a binary search; only changed entries produce
+ * any further work.
+ * <p>
+ * This class is not thread safe, the reader uses it under its load lock.
+ */
+public class EntryTracker {
+
+    /**
+     * FNV-1a offset basis.
+     */
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+
+    /**
+     * FNV-1a prime.
+     */
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    /**
+     * Sorted identity hashes of the seen entries.
+     */
+    private long[] m_keys;
+
+    /**
+     * Content hashes, aligned with {@link EntryTracker#m_keys}.
+     */
+    private int[] m_versions;
+
+    /**
+     * Creates an empty {@link EntryTracker}.
+     */
+    public EntryTracker() {
+        this(new long[0], new int[0]);
+    }
+
+    /**
+     * Creates a {@link EntryTracker} from a previously saved state.
+     * @param keys the sorted identity hashes
+     * @param versions the content hashes
+     */
+    public EntryTracker(long[] keys, int[] versions) {
+        if (keys.length != versions.length) {
+            throw new IllegalArgumentException("Inconsistent tracker state");
+        }
+        m_keys = keys;
+        m_versions = versions;
+    }
+
+    /**
+     * Compares the entries of a poll with the seen entries, and remembers
+     * the entries of this poll.
+     * @param entries the entries of the poll
+     * @return the new or updated entries, in the feed order
+     */
+    public List<FeedEntry> diff(List<FeedEntry> entries) {
+        long[] keys = new long[entries.size()];
+        int[] versions = new int[entries.size()];
+        List<FeedEntry> changed = new ArrayList<FeedEntry>();
+        int i = 0;
+        for (FeedEntry entry : entries) {
+            long key = key(entry);
+            int version = version(entry);
+            int index = Arrays.binarySearch(m_keys, key);
+            if (index < 0 || m_versions[index] != version) {
+                changed.add(entry);
+            }
+            keys[i] = key;
+            versions[i] = version;
+            i++;
+        }
+        sort(keys, versions);
+        m_keys = keys;
+        m_versions = versions;
+        return changed;
+    }
+
+    /**
+     * Checks whether an entry was seen.
+     * @param entry the entry
+     * @return <code>true</code> if the entry was seen by the last diff
+     */
+    public boolean contains(FeedEntry entry) {
+        return Arrays.binarySearch(m_keys, key(entry)) >= 0;
+    }
+
+    /**
+     * Checks whether the tracker has seen no entries yet.
+     * @return <code>true</code> if no entries were seen
+     */
+    public boolean isEmpty() {
+        return m_keys.length == 0;
+    }
+
+    /**
+     * Gets the sorted identity hashes, to save the tracker state.
+     * @return the identity hashes
+     */
+    public long[] getKeys() {
+        return m_keys;
+    }
+
+    /**
+     * Gets the content hashes, to save the tracker state.
+     * @return the content hashes, aligned with {@link #getKeys()}
+     */
+    public int[] getVersions() {
+        return m_versions;
+    }
+
+    /**
+     * Computes the identity hash of an entry.
+     * @param entry the entry
+     * @return the identity hash
+     */
+    static long key(FeedEntry entry) {
+        String id = null;
+        if (entry instanceof IdentifiedFeedEntry) {
+            id = ((IdentifiedFeedEntry) entry).id();
+        }
+        if (id == null || id.length() == 0) {
+            id = entry.url();
+        }
+        if (id == null || id.length() == 0) {
+            Date date = entry.publicationDate();
+            id = entry.title() + "@"
+                    + (date == null ? "" : Long.toString(date.getTime()));
+        }
+        return hash(FNV_OFFSET, id);
+    }
+
+    /**
+     * Computes the content hash of an entry.
+     * @param entry the entry
+     * @return the content hash
+     */
+    static int version(FeedEntry entry) {
+        long h = hash(FNV_OFFSET, entry.title());
+        h = hash(h, entry.content());
+        return (int) (h ^ (h >>> 32));
+    }
+
+    /**
+     * Continues a FNV-1a hash with the characters of a string.
+     * @param h the current hash
+     * @param s the string, may be <code>null</code>
+     * @return the new hash
+     */
+    private static long hash(long h, String s) {
+        if (s == null) {
+            return (h ^ 0xff) * FNV_PRIME;
+        }
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            h = (h ^ (c & 0xff)) * FNV_PRIME;
+            h = (h ^ (c >>> 8)) * FNV_PRIME;
+        }
+        return h;
+    }
+
+    /**
+     * Sorts the keys, moving the versions along. The keys are hashes, so
+     * the feed order says nothing about their order: an index array is
+     * sorted on the keys, in O(n log n).
+     * @param keys the keys
+     * @param versions the versions
+     */
+    private static void sort(final long[] keys, int[] versions) {
+        Integer[] order = new Integer[keys.length];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = Integer.valueOf(i);
+        }
+        Arrays.sort(order, new Comparator<Integer>() {
+            public int compare(Integer a, Integer b) {
+                long x = keys[a.intValue()];
+                long y = keys[b.intValue()];
+                return x < y ? -1 : (x == y ? 0 : 1);
+            }
+        });
+        long[] sortedKeys = keys.clone();
+        int[] sortedVersions = versions.clone();
+        for (int i = 0; i < order.length; i++) {
+            keys[i] = sortedKeys[order[i].intValue()];
+            versions[i] = sortedVersions[order[i].intValue()];
+        }
+    }
+
+}
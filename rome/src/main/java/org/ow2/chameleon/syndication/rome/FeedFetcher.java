@@ -0,0 +1,42 @@
+/*
+ * Copyright 2009 OW2 Chameleon
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ow2.chameleon.syndication.rome;
+
+import java.io.IOException;
+import java.net.URL;
+
+/**
+ * Fetch layer used by the feed readers to download feeds. Implementations
+ * are responsible for the transport concerns (timeouts, compression,
+ * connection reuse, concurrency limits...). They must be thread safe, as a
+ * fetcher is shared by many readers.
+ */
+public interface FeedFetcher {
+
+    /**
+     * Fetches a feed. The given validators are sent to the server (as
+     * <code>If-None-Match</code> and <code>If-Modified-Since</code>) when
+     * the protocol supports conditional requests.
+     * @param url the feed url
+     * @param etag the ETag of the last fetch, <code>null</code> if none
+     * @param lastModified the Last-Modified value of the last fetch,
+     *        <code>null</code> if none
+     * @return the response, which must be closed by the caller
+     * @throws IOException if the feed cannot be fetched
+     */
+    FetchResponse fetch(URL url, String etag, String lastModified)
+        throws IOException;
+
+}
@@ -0,0 +1,409 @@
+/*
+ * Copyright 2009 OW2 Chameleon
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ow2.chameleon.syndication.rome;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Date;
+import java.util.List;
+import java.util.zip.CRC32;
+
+import org.ow2.chameleon.syndication.IdentifiedFeedEntry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.sun.syndication.feed.synd.SyndEntry;
+
+/**
+ * Journal storage of a file feed. The entries are kept in an
+ * {@link EntrySnapshot} (<code>&lt;file&gt;.snapshot</code>), and each later addition or removal
+ * is appended to a journal (<code>&lt;file&gt;.journal</code>). A mutation
+ * therefore costs the size of the entry, not the size of the feed. The
+ * state is rebuilt by loading the snapshot and replaying the journal.
+ * <p>
+ * Compacting writes a new snapshot and resets the journal. Snapshot and
+ * journal carry a generation number: a journal whose generation differs
+ * from the snapshot one was already compacted (the writer stopped between
+ * both steps) and is ignored. Journal records are checksummed, so a record
+ * torn by a crash is dropped on replay.
+ * <p>
+ * This class is not thread safe, the writer uses it under its lock.
+ */
+final class FeedJournal {
+
+    /**
+     * Magic number of the journal files.
+     */
+    private static final int JOURNAL_MAGIC = 0x53594e4a;
+
+    /**
+     * Format version of the journal files.
+     */
+    private static final int VERSION = 1;
+
+    /**
+     * Size of the journal header: magic, version and generation.
+     */
+    private static final int HEADER_SIZE = 16;
+
+    /**
+     * Record type of an added entry.
+     */
+    private static final byte ADD = 1;
+
+    /**
+     * Record type of a removed entry.
+     */
+    private static final byte REMOVE = 2;
+
+    /**
+     * The snapshot file.
+     */
+    private final File m_snapshot;
+
+    /**
+     * The journal file.
+     */
+    private final File m_journal;
+
+    /**
+     * The generation of the snapshot.
+     */
+    private long m_generation;
+
+    /**
+     * The number of records of the journal.
+     */
+    private int m_records;
+
+    /**
+     * The journal file stream, <code>null</code> if not opened.
+     */
+    private FileOutputStream m_stream;
+
+    /**
+     * The journal output, <code>null</code> if not opened.
+     */
+    private DataOutputStream m_out;
+
+    /**
+     * Logger.
+     */
+    private Logger m_logger = LoggerFactory.getLogger(this.toString());
+
+    /**
+     * Creates a {@link FeedJournal}.
+     * @param file the feed file, naming the snapshot and journal files
+     */
+    FeedJournal(File file) {
+        m_snapshot = new File(file.getPath() + ".snapshot");
+        m_journal = new File(file.getPath() + ".journal");
+    }
+
+    /**
+     * Checks whether a feed file has a journal storage.
+     * @param file the feed file
+     * @return <code>true</code> if the snapshot file exists
+     */
+    static boolean exists(File file) {
+        return new File(file.getPath() + ".snapshot").isFile();
+    }
+
+    /**
+     * Gets the number of records appended since the last compaction.
+     * @return the number of journal records
+     */
+    int getRecordCount() {
+        return m_records;
+    }
+
+    /**
+     * Loads the snapshot and replays the journal in an entry store.
+     * Entry bodies are decoded from the snapshot on first access.
+     * @param store the store, entries are added as the oldest ones
+     * @return <code>false</code> if there is no snapshot
+     * @throws IOException if the snapshot cannot be read
+     */
+    boolean load(EntryStore store) throws IOException {
+        if (!m_snapshot.isFile()) {
+            return false;
+        }
+        EntrySnapshot snapshot = EntrySnapshot.open(m_snapshot);
+        m_generation = snapshot.getGeneration();
+        snapshot.load(store);
+        replay(store);
+        return true;
+    }
+
+    /**
+     * Replays the journal. Stops at the first invalid record, and truncates
+     * the journal there.
+     * @param store the store
+     * @throws IOException if the journal cannot be read
+     */
+    private void replay(EntryStore store) throws IOException {
+        m_records = 0;
+        if (!m_journal.isFile()) {
+            return;
+        }
+        long length = m_journal.length();
+        long valid = HEADER_SIZE;
+        DataInputStream in = new DataInputStream(new BufferedInputStream(
+                new FileInputStream(m_journal)));
+        try {
+            if (length < HEADER_SIZE || in.readInt() != JOURNAL_MAGIC
+                    || in.readInt() != VERSION
+                    || in.readLong() != m_generation) {
+                // Already compacted, or never written.
+                in.close();
+                m_journal.delete();
+                return;
+            }
+            CRC32 crc = new CRC32();
+            while (true) {
+                int size;
+                try {
+                    size = in.readInt();
+                } catch (EOFException e) {
+                    break;
+                }
+                int checksum = in.readInt();
+                if (size <= 0 || valid + 8 + size > length) {
+                    break;
+                }
+                byte[] record = new byte[size];
+                in.readFully(record);
+                crc.reset();
+                crc.update(record);
+                if ((int) crc.getValue() != checksum) {
+                    break;
+                }
+                apply(store, record);
+                valid += 8 + size;
+                m_records++;
+            }
+        } catch (EOFException e) {
+            // Torn record.
+        } finally {
+            in.close();
+        }
+        if (valid < length && m_journal.isFile()) {
+            m_logger.warn("Dropping " + (length - valid)
+                    + " invalid bytes at the end of " + m_journal);
+            RandomAccessFile file = new RandomAccessFile(m_journal, "rw");
+            try {
+                file.setLength(valid);
+            } finally {
+                file.close();
+            }
+        }
+    }
+
+    /**
+     * Applies a journal record.
+     * @param store the store
+     * @param record the record
+     * @throws IOException if the record cannot be decoded
+     */
+    private void apply(EntryStore store, byte[] record) throws IOException {
+        DataInputStream in = new DataInputStream(
+                new ByteArrayInputStream(record));
+        byte type = in.readByte();
+        if (type == ADD) {
+            store.addFirst(toSyndEntry(EntryCodec.read(in)));
+        } else if (type == REMOVE) {
+            String id = EntryCodec.readString(in);
+            String title = EntryCodec.readString(in);
+            long time = in.readLong();
+            EntryStore.Node node = null;
+            if (id != null) {
+                node = store.getById(id);
+            } else if (title != null) {
+                node = store.getByTitle(title);
+                while (node != null && getTime(node.getEntry()) != time) {
+                    node = node.nextWithTitle();
+                }
+            }
+            if (node != null) {
+                store.remove(node);
+            }
+        } else {
+            throw new IOException("Unknown journal record " + type);
+        }
+    }
+
+    /**
+     * Appends the addition of an entry.
+     * @param entry the added entry
+     * @throws IOException if the record cannot be written
+     */
+    void added(SyndEntry entry) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeByte(ADD);
+        EntryCodec.write(out, new FeedReaderImpl.FeedEntryImpl(entry));
+        out.flush();
+        append(bytes.toByteArray());
+    }
+
+    /**
+     * Appends the removal of an entry. The entry is identified by its id, or
+     * by its title and date.
+     * @param entry the removed entry
+     * @throws IOException if the record cannot be written
+     */
+    void removed(SyndEntry entry) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeByte(REMOVE);
+        EntryCodec.writeString(out, entry.getUri());
+        EntryCodec.writeString(out, entry.getTitle());
+        out.writeLong(getTime(entry));
+        out.flush();
+        append(bytes.toByteArray());
+    }
+
+    /**
+     * Appends a record to the journal. The record is handed to the
+     * operating system, but not synced to the disk.
+     * @param record the record
+     * @throws IOException if the record cannot be written
+     */
+    private void append(byte[] record) throws IOException {
+        if (m_out == null) {
+            boolean empty = m_journal.length() == 0;
+            m_stream = new FileOutputStream(m_journal, true);
+            m_out = new DataOutputStream(new BufferedOutputStream(m_stream));
+            if (empty) {
+                writeHeader(m_out);
+            }
+        }
+        CRC32 crc = new CRC32();
+        crc.update(record);
+        m_out.writeInt(record.length);
+        m_out.writeInt((int) crc.getValue());
+        m_out.write(record);
+        m_out.flush();
+        m_records++;
+    }
+
+    /**
+     * Writes the journal header.
+     * @param out the output
+     * @throws IOException if the header cannot be written
+     */
+    private void writeHeader(DataOutputStream out) throws IOException {
+        out.writeInt(JOURNAL_MAGIC);
+        out.writeInt(VERSION);
+        out.writeLong(m_generation);
+    }
+
+    /**
+     * Compacts the journal: writes a snapshot of the given entries and
+     * resets the journal.
+     * @param entries the entries, from the most recent
+     * @throws IOException if the snapshot cannot be written
+     */
+    void compact(List<SyndEntry> entries) throws IOException {
+        long generation = m_generation + 1;
+        EntrySnapshot.write(m_snapshot, generation, null, entries, true);
+
+        // From here, the old journal is ignored.
+        m_generation = generation;
+        close();
+        m_journal.delete();
+        m_records = 0;
+    }
+
+    /**
+     * Moves an unreadable snapshot and its journal aside, as
+     * <code>.corrupt</code> files, so that the next compaction does not
+     * override them. The journal restarts from an empty state.
+     */
+    void discard() {
+        close();
+        moveAside(m_snapshot);
+        moveAside(m_journal);
+        m_generation = 0;
+        m_records = 0;
+    }
+
+    /**
+     * Renames a file to <code>&lt;file&gt;.corrupt</code>.
+     * @param file the file
+     */
+    private void moveAside(File file) {
+        if (file.isFile()) {
+            File corrupt = new File(file.getPath() + ".corrupt");
+            corrupt.delete();
+            if (file.renameTo(corrupt)) {
+                m_logger.error("Unreadable file kept as "
+                        + corrupt.getAbsolutePath());
+            } else {
+                file.delete();
+            }
+        }
+    }
+
+    /**
+     * Closes the journal. It is reopened by the next record.
+     */
+    void close() {
+        if (m_out != null) {
+            try {
+                m_out.close();
+            } catch (IOException e) {
+                // Ignored.
+            }
+            m_out = null;
+            m_stream = null;
+        }
+    }
+
+    /**
+     * Creates the {@link SyndEntry} of a decoded entry.
+     * @param entry the entry
+     * @return the {@link SyndEntry}
+     */
+    private static SyndEntry toSyndEntry(IdentifiedFeedEntry entry) {
+        return AbstractFeedWriter.createSyndEntry(entry, entry.id(), entry
+                .publicationDate());
+    }
+
+    /**
+     * Gets the date of an entry.
+     * @param entry the entry
+     * @return the publication (or update) time, {@link Long#MIN_VALUE} if
+     *         not set
+     */
+    private static long getTime(SyndEntry entry) {
+        Date date = entry.getPublishedDate();
+        if (date == null) {
+            date = entry.getUpdatedDate();
+        }
+        return date == null ? Long.MIN_VALUE : date.getTime();
+    }
+
+}
@@ -0,0 +1,172 @@
+/*
+ * Copyright 2009 OW2 Chameleon
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ow2.chameleon.syndication.rome;
+
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+import java.util.Date;
+
+import com.sun.syndication.io.impl.DateParser;
+
+/**
+ * Query on a served feed: page (RFC 5005 paged feeds), maximum number of
+ * entries, and lower bound of the returned entries.
+ */
+public final class FeedQuery {
+
+    /**
+     * The query selecting the whole feed.
+     */
+    public static final FeedQuery ALL = new FeedQuery(0, -1, null);
+
+    /**
+     * The requested page, starting at 1, 0 if not set.
+     */
+    private final int m_page;
+
+    /**
+     * The maximum number of entries (page size), -1 if not set.
+     */
+    private final int m_limit;
+
+    /**
+     * Only the entries newer than this date (RFC 822 or W3C date) or than
+     * the entry having this id are selected, <code>null</code> if not set.
+     */
+    private final String m_since;
+
+    /**
+     * Creates a {@link FeedQuery}.
+     * @param page the page, starting at 1, 0 if not set
+     * @param limit the maximum number of entries, -1 if not set
+     * @param since the date or entry id, <code>null</code> if not set
+     */
+    public FeedQuery(int page, int limit, String since) {
+        m_page = Math.max(0, page);
+        m_limit = limit > 0 ? limit : -1;
+        m_since = since;
+    }
+
+    /**
+     * Creates a {@link FeedQuery} from the request parameters. Invalid
+     * values are ignored.
+     * @param page the <code>page</code> parameter, may be <code>null</code>
+     * @param limit the <code>limit</code> parameter, may be
+     *        <code>null</code>
+     * @param since the <code>since</code> parameter, may be
+     *        <code>null</code>
+     * @return the query
+     */
+    public static FeedQuery parse(String page, String limit, String since) {
+        if (since != null && since.trim().length() == 0) {
+            since = null;
+        }
+        return new FeedQuery(parseInt(page, 0), parseInt(limit, -1), since);
+    }
+
+    /**
+     * Creates a copy of this query with another lower bound.
+     * @param since the date or entry id, <code>null</code> if not set
+     * @return the query
+     */
+    public FeedQuery withSince(String since) {
+        return new FeedQuery(m_page, m_limit, since);
+    }
+
+    /**
+     * Parses a positive integer parameter.
+     * @param value the value, may be <code>null</code>
+     * @param def the default value
+     * @return the parsed value, or the default value if not valid
+     */
+    private static int parseInt(String value, int def) {
+        if (value == null) {
+            return def;
+        }
+        try {
+            int i = Integer.parseInt(value.trim());
+            return i > 0 ? i : def;
+        } catch (NumberFormatException e) {
+            return def;
+        }
+    }
+
+    /**
+     * Gets the requested page.
+     * @return the page, starting at 1, 0 if not set
+     */
+    public int getPage() {
+        return m_page;
+    }
+
+    /**
+     * Gets the maximum number of entries.
+     * @return the limit, -1 if not set
+     */
+    public int getLimit() {
+        return m_limit;
+    }
+
+    /**
+     * Gets the lower bound of the returned entries.
+     * @return the date or entry id, <code>null</code> if not set
+     */
+    public String getSince() {
+        return m_since;
+    }
+
+    /**
+     * Gets the lower bound as a date.
+     * @return the date, <code>null</code> if not set or if the lower bound
+     *         is an entry id
+     */
+    public Date getSinceDate() {
+        if (m_since == null) {
+            return null;
+        }
+        return DateParser.parseDate(m_since);
+    }
+
+    /**
+     * Gets the query string selecting another page of this query.
+     * @param page the page
+     * @return the query string, without the leading <code>?</code>
+     */
+    public String toQueryString(int page) {
+        StringBuilder buffer = new StringBuilder("page=").append(page);
+        if (m_limit != -1) {
+            buffer.append("&limit=").append(m_limit);
+        }
+        if (m_since != null) {
+            try {
+                buffer.append("&since=").append(
+                        URLEncoder.encode(m_since, "UTF-8"));
+            } catch (UnsupportedEncodingException e) {
+                // UTF-8 is always supported.
+                throw new IllegalStateException(e);
+            }
+        }
+        return buffer.toString();
+    }
+
+    /**
+     * Gets a key identifying the query, used to cache the renderings.
+     * @return the key
+     */
+    public String getKey() {
+        return m_page + "/" + m_limit + "/" + (m_since == null ? "" : m_since);
+    }
+
+}
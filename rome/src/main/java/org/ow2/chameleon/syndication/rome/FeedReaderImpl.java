@@ -14,7 +14,9 @@
  */
 package org.ow2.chameleon.syndication.rome;
 
+import java.io.File;
 import java.io.IOException;
+import java.io.Reader;
 import java.net.URL;
 import java.util.ArrayList;
 import java.util.Collections;
@@ -22,20 +24,21 @@ import java.util.Date;
 import java.util.Dictionary;
 import java.util.List;
 import java.util.Properties;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.felix.ipojo.annotations.Component;
 import org.apache.felix.ipojo.annotations.Invalidate;
 import org.apache.felix.ipojo.annotations.Property;
 import org.apache.felix.ipojo.annotations.Provides;
 import org.apache.felix.ipojo.annotations.Requires;
+import org.apache.felix.ipojo.annotations.ServiceController;
 import org.apache.felix.ipojo.annotations.ServiceProperty;
+import org.apache.felix.ipojo.annotations.Validate;
 import org.osgi.service.event.Event;
 import org.osgi.service.event.EventAdmin;
 import org.ow2.chameleon.syndication.FeedEntry;
 import org.ow2.chameleon.syndication.FeedReader;
+import org.ow2.chameleon.syndication.IdentifiedFeedEntry;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -82,7 +85,111 @@ public class FeedReaderImpl implements FeedReader {
      * Polling time in ms. By default, 1 hour.
      */
     @Property(name = "feed.period", value = "3600000")
-    private int m_period;
+    private int m_period = 3600000;
+
+    /**
+     * Enables the adaptive polling. If enabled, the polling interval starts at
+     * <code>feed.period</code> and is then tuned according to the observed
+     * change rate and to the refresh hints of the publisher, between
+     * <code>feed.period.min</code> and <code>feed.period.max</code>.
+     * Disabled by default.
+     */
+    @Property(name = "feed.adaptive", value = "false")
+    private boolean m_adaptive;
+
+    /**
+     * Minimum polling time in ms when the adaptive polling is enabled. By
+     * default, 1 minute.
+     */
+    @Property(name = "feed.period.min", value = "60000")
+    private int m_minPeriod = 60000;
+
+    /**
+     * Maximum polling time in ms when the adaptive polling is enabled. By
+     * default, 1 day.
+     */
+    @Property(name = "feed.period.max", value = "86400000")
+    private int m_maxPeriod = 86400000;
+
+    /**
+     * Number of consecutive failures opening the circuit of the feed. By
+     * default, 3.
+     */
+    @Property(name = "feed.failure.threshold", value = "3")
+    private int m_failureThreshold = 3;
+
+    /**
+     * Delay before retrying a failing feed in ms, doubled at each
+     * consecutive failure. By default, 30 seconds.
+     */
+    @Property(name = "feed.backoff.initial", value = "30000")
+    private int m_initialBackoff = 30000;
+
+    /**
+     * Maximum delay before retrying a failing feed in ms. By default, 6
+     * hours.
+     */
+    @Property(name = "feed.backoff.max", value = "21600000")
+    private int m_maxBackoff = 21600000;
+
+    /**
+     * If enabled, the feed is read synchronously when the instance is
+     * configured, and the instance fails if the feed cannot be read.
+     * Otherwise (default), the first read happens in the background on the
+     * polling scheduler, and the reader starts with an empty (or saved)
+     * feed.
+     */
+    @Property(name = "feed.failfast", value = "false")
+    private boolean m_failfast;
+
+    /**
+     * If enabled, the reader service is registered only once the feed was
+     * read (or restored from a saved state). Otherwise (default), the
+     * service is registered immediately, possibly with an empty feed.
+     */
+    @Property(name = "feed.await.first.fetch", value = "false")
+    private boolean m_awaitFirstFetch;
+
+    /**
+     * Controls the registration of the reader service.
+     */
+    @ServiceController(value = false)
+    private boolean m_published;
+
+    /**
+     * Maximum number of entries kept from the read feed, -1 to keep all the
+     * entries (default). The streaming parser stops reading the document
+     * once this number is reached.
+     */
+    @Property(name = "feed.max", value = "-1")
+    private int m_max = -1;
+
+    /**
+     * Stops reading the entries of a polled feed at the first entry older
+     * than the most recent known entry, and keeps the known older entries.
+     * This saves the parsing of the unchanged part of large feeds, but the
+     * modifications of the older entries are not detected anymore. Only
+     * used by the streaming parser, disabled by default.
+     */
+    @Property(name = "feed.stop.known", value = "false")
+    private boolean m_stopOnKnown;
+
+    /**
+     * Enables the streaming (StAX) parser. If disabled, the feed is parsed
+     * by Rome (JDOM). Enabled by default.
+     */
+    @Property(name = "feed.streaming", value = "true")
+    private boolean m_streaming = true;
+
+    /**
+     * Directory where the reader state is saved, so that a restarted reader
+     * neither re-announces the entries nor re-fetches the feed immediately.
+     * By default, the value of the
+     * <code>org.ow2.chameleon.syndication.state.dir</code> system property;
+     * the state is not saved if none is set.
+     */
+    @Property(name = "feed.state.dir")
+    private String m_stateDir;
 
     /**
      * Event Admin (optional dependency).
@@ -91,19 +198,97 @@ public class FeedReaderImpl implements FeedReader {
     private EventAdmin m_ea;
 
     /**
-     * Internal Feed.
+     * Snapshot of the last read feed. A new snapshot is published after each
+     * successful load, so readers never wait for a fetch.
+     */
+    private volatile Snapshot m_snapshot = Snapshot.EMPTY;
+
+    /**
+     * The fetch layer used to download the feed.
+     */
+    private FeedFetcher m_fetcher = DefaultFeedFetcher.getDefault();
+
+    /**
+     * The adaptive polling policy, <code>null</code> if the adaptive polling
+     * is disabled.
+     */
+    private AdaptivePollingPolicy m_policy;
+
+    /**
+     * Refresh hint given by the feed content (ttl, sy:updatePeriod) in ms,
+     * -1 if none.
+     */
+    private volatile long m_feedHint = -1;
+
+    /**
+     * Freshness lifetime given by the server on the last fetch in ms, -1 if
+     * none.
+     */
+    private volatile long m_maxAge = -1;
+
+    /**
+     * Circuit breaker of the feed, created on first use.
+     */
+    private CircuitBreaker m_breaker;
+
+    /**
+     * Lock serializing the loads.
+     */
+    private final Object m_loadLock = new Object();
+
+    /**
+     * The streaming parser, created on first use.
+     */
+    private StreamingFeedParser m_parser;
+
+    /**
+     * The shared scheduler, acquired while the reader is started.
+     */
+    private PollingScheduler m_scheduler;
+
+    /**
+     * Registration of the polling task on the shared scheduler.
+     */
+    private PollingScheduler.Registration m_registration;
+
+    /**
+     * Entries seen by the previous loads, used to detect the new and updated
+     * entries.
      */
-    private SyndFeed m_feed;
+    private EntryTracker m_tracker = new EntryTracker();
 
     /**
-     * Thread Pool for the polling.
+     * The reader state store, <code>null</code> if the state is not saved.
      */
-    private ScheduledExecutorService m_pool;
+    private ReaderStateStore m_store;
 
     /**
-     * More recent entry time.
+     * Time of the last poll of the saved state, -1 if the reader was not
+     * restored from a saved state or has polled since.
      */
-    private volatile Date m_lastDate;
+    private long m_restoredPoll = -1;
+
+    /**
+     * ETag validator returned by the last full fetch, sent back as
+     * <code>If-None-Match</code> on the next poll.
+     */
+    private String m_etag;
+
+    /**
+     * Last-Modified validator returned by the last full fetch, sent back as
+     * <code>If-Modified-Since</code> on the next poll.
+     */
+    private String m_lastModified;
+
+    /**
+     * Number of polls answered with <code>304 Not Modified</code>.
+     */
+    private final AtomicLong m_notModifiedCount = new AtomicLong();
+
+    /**
+     * Number of polls that required to download and parse the feed.
+     */
+    private final AtomicLong m_fullFetchCount = new AtomicLong();
 
     /**
      * Logger.
@@ -121,104 +306,388 @@ public class FeedReaderImpl implements FeedReader {
     public FeedReaderImpl(URL url, int period, int count) throws FeedException,
             IOException {
         m_url = url;
-        m_pool = Executors.newScheduledThreadPool(1);
         m_recentCount = count;
         m_period = period;
-        if (period != -1) {
-            m_pool.scheduleAtFixedRate(new Runnable() {
 
-                public void run() {
-                    try {
-                        m_logger.info("Reading " + m_url);
-                        load();
-                    } catch (Exception e) {
-                        m_logger.error("Cannot read the feed " + m_url, e);
-                    }
-                }
-            }, m_period, m_period, TimeUnit.MILLISECONDS);
+        if (!restore()) {
+            load();
         }
 
-        load();
-        m_title = m_feed.getTitle();
+        if (period != -1) {
+            start();
+        }
     }
 
     /**
      * Creates a {@link FeedReaderImpl}. This constructor is used by iPOJO
-     * @throws FeedException if the feed cannot be read
-     * @throws IOException if there is an IO issue
-     */
-    public FeedReaderImpl() throws FeedException, IOException {
-        m_pool = Executors.newScheduledThreadPool(1);
-        m_pool.scheduleAtFixedRate(new Runnable() {
-
-            public void run() {
-                try {
-                    m_logger.info("Reading " + m_url);
-                    load();
-                } catch (Exception e) {
-                    m_logger.error("Cannot read the feed " + m_url, e);
-                }
-            }
-        }, m_period, m_period, TimeUnit.MILLISECONDS);
+     */
+    public FeedReaderImpl() {
+        // Polling starts on validation.
     }
 
     /**
-     * Sets the URL. (Mandatory property)
+     * Sets the URL. (Mandatory property). The configuration thread does not
+     * wait for the feed: the first read is executed by the polling
+     * scheduler once the instance is valid, unless
+     * <code>feed.failfast</code> is enabled. When the URL is reconfigured,
+     * the entries, validators and hints of the previous feed are dropped,
+     * and a started reader reads the new feed immediately (or when its
+     * saved poll is due).
      * @param u the url
-     * @throws FeedException if the feed cannot be read correctly
-     * @throws IOException if the feed cannot be read correctly
+     * @throws FeedException if the feed cannot be read correctly and
+     *         <code>feed.failfast</code> is enabled
+     * @throws IOException if the feed cannot be read correctly and
+     *         <code>feed.failfast</code> is enabled
      */
     @Property(name = "feed.url", mandatory = true)
     public void setUrl(String u) throws FeedException, IOException {
-        m_url = new URL(u);
-        m_feedUrl = u;
-        load();
-        m_title = m_feed.getTitle();
+        URL url = new URL(u);
+        boolean polling = false;
+        if (m_url != null
+                && !m_url.toExternalForm().equals(url.toExternalForm())) {
+            polling = m_registration != null;
+            if (polling) {
+                stop();
+            }
+            synchronized (m_loadLock) {
+                m_url = url;
+                m_feedUrl = u;
+                reset();
+            }
+        } else {
+            m_url = url;
+            m_feedUrl = u;
+        }
+        try {
+            if (restore()) {
+                // The first poll is scheduled from the saved poll time.
+                return;
+            }
+            if (m_failfast) {
+                load();
+            }
+        } finally {
+            if (polling) {
+                start();
+            }
+        }
+    }
+
+    /**
+     * Forgets the state of the previous feed. Must be called with the load
+     * lock held.
+     */
+    private void reset() {
+        m_snapshot = Snapshot.EMPTY;
+        m_tracker = new EntryTracker();
+        m_etag = null;
+        m_lastModified = null;
+        m_feedHint = -1;
+        m_maxAge = -1;
+        m_restoredPoll = -1;
+        m_title = null;
+        synchronized (this) {
+            m_breaker = null;
+        }
+    }
+
+    /**
+     * Gets the reader state store. Creates it if not already created.
+     * @return the store, <code>null</code> if the state is not saved
+     */
+    private synchronized ReaderStateStore getStateStore() {
+        if (m_store == null) {
+            String dir = m_stateDir;
+            if (dir == null) {
+                dir = System.getProperty(ReaderStateStore.DIRECTORY_PROPERTY);
+            }
+            if (dir != null) {
+                m_store = new ReaderStateStore(new File(dir));
+            }
+        }
+        return m_store;
+    }
+
+    /**
+     * Restores the saved state of the reader: the entries are published
+     * without fetching the feed, and the next poll sends the saved
+     * validators.
+     * @return <code>true</code> if the state was restored
+     */
+    private boolean restore() {
+        ReaderStateStore store = getStateStore();
+        if (store == null) {
+            return false;
+        }
+        ReaderStateStore.State state;
+        try {
+            state = store.load(m_url.toExternalForm());
+        } catch (IOException e) {
+            m_logger.warn("Cannot read the saved state of " + m_url, e);
+            return false;
+        }
+        if (state == null) {
+            return false;
+        }
+        synchronized (m_loadLock) {
+            m_snapshot = new Snapshot(state.m_title, state.m_entries,
+                    m_recentCount);
+            if (state.m_title != null) {
+                m_title = state.m_title;
+            }
+            m_tracker = new EntryTracker(state.m_keys, state.m_versions);
+            m_etag = state.m_etag;
+            m_lastModified = state.m_lastModified;
+            m_restoredPoll = state.m_lastPoll;
+        }
+        return true;
     }
 
     /**
-     * Reads the feed.
+     * Saves the state of the reader, if enabled. Must be called with the
+     * load lock held.
+     * @param modified has the feed been downloaded, or was it not modified
+     */
+    private void save(boolean modified) {
+        ReaderStateStore store = getStateStore();
+        if (store == null) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        if (!modified) {
+            store.touch(m_url.toExternalForm(), now);
+            return;
+        }
+        ReaderStateStore.State state = new ReaderStateStore.State();
+        state.m_etag = m_etag;
+        state.m_lastModified = m_lastModified;
+        state.m_lastPoll = now;
+        state.m_title = m_snapshot.m_title;
+        state.m_entries = m_snapshot.m_entries;
+        state.m_keys = m_tracker.getKeys();
+        state.m_versions = m_tracker.getVersions();
+        try {
+            store.save(m_url.toExternalForm(), state);
+        } catch (IOException e) {
+            m_logger.warn("Cannot save the state of " + m_url, e);
+        }
+    }
+
+    /**
+     * Gets the circuit breaker of the feed. Creates it if not already
+     * created.
+     * @return the circuit breaker
+     */
+    private synchronized CircuitBreaker getCircuitBreaker() {
+        if (m_breaker == null) {
+            m_breaker = new CircuitBreaker(m_failureThreshold,
+                    m_initialBackoff, Math.max(m_initialBackoff,
+                            m_maxBackoff));
+        }
+        return m_breaker;
+    }
+
+    /**
+     * Reads the feed. When the feed is served over HTTP, the validators
+     * received on the previous fetch are sent back, and a
+     * <code>304 Not Modified</code> answer keeps the current feed without
+     * parsing anything. Loads are serialized on a dedicated lock: the entries
+     * remain readable during the fetch.
+     * @return <code>true</code> if new or updated entries were found
      * @throws FeedException if the feed cannot be read correctly
      * @throws IOException if the feed cannot be read correctly
      */
-    private synchronized void load() throws FeedException, IOException {
-        SyndFeedInput input = new SyndFeedInput();
+    private boolean load() throws FeedException, IOException {
+        synchronized (m_loadLock) {
+            CircuitBreaker breaker = getCircuitBreaker();
+            breaker.attempt();
+            try {
+                boolean changed = fetch();
+                breaker.success();
+                return changed;
+            } catch (FeedException e) {
+                breaker.failure(e);
+                throw e;
+            } catch (IOException e) {
+                breaker.failure(e);
+                throw e;
+            } catch (RuntimeException e) {
+                breaker.failure(e);
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Fetches and parses the feed, and publishes the new snapshot. Must be
+     * called with the load lock held.
+     * @return <code>true</code> if new or updated entries were found
+     * @throws FeedException if the feed cannot be read correctly
+     * @throws IOException if the feed cannot be read correctly
+     */
+    private boolean fetch() throws FeedException, IOException {
+        FetchResponse response;
+        // Validators are useless if we don't have a feed to keep.
+        if (m_snapshot != Snapshot.EMPTY) {
+            response = m_fetcher.fetch(m_url, m_etag, m_lastModified);
+        } else {
+            response = m_fetcher.fetch(m_url, null, null);
+        }
+        m_maxAge = response.getMaxAge();
+        if (!response.isModified()) {
+            m_notModifiedCount.incrementAndGet();
+            response.close();
+            save(false);
+            return false;
+        }
+        m_etag = response.getETag();
+        m_lastModified = response.getLastModified();
+
         ClassLoader original = Thread.currentThread().getContextClassLoader();
+        Reader reader = null;
         try {
             Thread.currentThread().setContextClassLoader(this.getClass().getClassLoader());
-            m_feed = input.build(new XmlReader(m_url));
-
-            // Look for new entries
-            for (FeedEntry entry : getRecentEntries()) {
-                if (m_lastDate == null
-                        || m_lastDate.before(entry.publicationDate())) {
-                    postEvent(entry);
+            if (response.getContentType() != null) {
+                reader = new XmlReader(response.getBody(), response
+                        .getContentType(), true);
+            } else {
+                reader = new XmlReader(response.getBody(), true);
+            }
+            if (m_streaming) {
+                if (m_parser == null) {
+                    m_parser = new StreamingFeedParser();
+                }
+                Date stopBefore = null;
+                if (m_stopOnKnown && m_snapshot.m_last != null) {
+                    stopBefore = m_snapshot.m_last.publicationDate();
+                }
+                StreamingFeedParser.ParsedFeed feed = m_parser.parse(reader,
+                        m_max, stopBefore);
+                List<FeedEntry> entries = feed.getEntries();
+                if (stopBefore != null && feed.isTruncated()) {
+                    entries = merge(entries, m_snapshot.m_entries, stopBefore);
                 }
+                m_snapshot = new Snapshot(feed.getTitle(), entries,
+                        m_recentCount);
+                m_feedHint = feed.getRefreshHint();
+            } else {
+                SyndFeed feed = new SyndFeedInput().build(reader);
+                m_snapshot = new Snapshot(feed.getTitle(), toEntries(feed),
+                        m_recentCount);
+                m_feedHint = -1;
+            }
+            m_fullFetchCount.incrementAndGet();
+            String title = m_snapshot.m_title;
+            if (title != null && !title.equals(m_title)) {
+                m_title = title;
+            }
+
+            // Look for new and updated entries
+            Snapshot snapshot = m_snapshot;
+            List<FeedEntry> changed;
+            if (m_tracker.isEmpty()) {
+                // First load, only announce the recent entries.
+                m_tracker.diff(snapshot.m_entries);
+                changed = snapshot.m_recent;
+            } else {
+                changed = m_tracker.diff(snapshot.m_entries);
             }
-            if (getLastEntry() != null) {
-                m_lastDate = getLastEntry().publicationDate();
+            for (FeedEntry entry : changed) {
+                postEvent(entry);
             }
+            save(true);
+            return !changed.isEmpty();
         } finally {
+            if (reader != null) {
+                reader.close();
+            }
+            response.close();
             // Revert the TCCL
             Thread.currentThread().setContextClassLoader(original);
         }
     }
 
     /**
-     * Gets the list of entries.
-     * @return the list of entries
-     * @see org.ow2.chameleon.syndication.FeedReader#getEntries()
+     * Completes the entries of a feed read up to the most recent known entry
+     * with the known entries older than this entry.
+     * @param read the read entries, most recent first
+     * @param known the entries of the previous load, most recent first
+     * @param stopBefore the date of the first entry which was not read
+     * @return the entries, limited to {@link FeedReaderImpl#m_max}
+     */
+    private List<FeedEntry> merge(List<FeedEntry> read, List<FeedEntry> known,
+            Date stopBefore) {
+        List<FeedEntry> result = new ArrayList<FeedEntry>(read);
+        for (FeedEntry entry : known) {
+            if (m_max != -1 && result.size() >= m_max) {
+                break;
+            }
+            Date date = entry.publicationDate();
+            if (date != null && date.before(stopBefore)) {
+                result.add(entry);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Creates the read-only entries of a feed parsed by Rome.
+     * @param feed the feed
+     * @return the entries, limited to {@link FeedReaderImpl#m_max}
      */
     @SuppressWarnings("unchecked")
-    public synchronized List<FeedEntry> getEntries() {
-        List<SyndEntry> entries = m_feed.getEntries();
+    private List<FeedEntry> toEntries(SyndFeed feed) {
+        List<SyndEntry> entries = feed.getEntries();
         List<FeedEntry> result = new ArrayList<FeedEntry>();
         for (SyndEntry e : entries) {
+            if (m_max != -1 && result.size() >= m_max) {
+                break;
+            }
             result.add(new FeedEntryImpl(e));
         }
         return result;
     }
 
+    /**
+     * Sets the fetch layer used to download the feed. By default, readers
+     * share the {@link DefaultFeedFetcher#getDefault()} instance.
+     * @param fetcher the fetcher
+     */
+    public void setFetcher(FeedFetcher fetcher) {
+        if (fetcher == null) {
+            m_fetcher = DefaultFeedFetcher.getDefault();
+        } else {
+            m_fetcher = fetcher;
+        }
+    }
+
+    /**
+     * Gets the number of polls answered with <code>304 Not Modified</code>,
+     * i.e. polls that did not download nor parse the feed.
+     * @return the number of not-modified polls
+     */
+    public long getNotModifiedCount() {
+        return m_notModifiedCount.get();
+    }
+
+    /**
+     * Gets the number of polls that downloaded and parsed the whole feed.
+     * @return the number of full fetches
+     */
+    public long getFullFetchCount() {
+        return m_fullFetchCount.get();
+    }
+
+    /**
+     * Gets the list of entries. The returned list is the unmodifiable list
+     * built by the last load; this method never blocks.
+     * @return the list of entries
+     * @see org.ow2.chameleon.syndication.FeedReader#getEntries()
+     */
+    public List<FeedEntry> getEntries() {
+        return m_snapshot.m_entries;
+    }
+
     /**
      * Gets the feed url.
      * @return the feed url
@@ -233,34 +702,18 @@ public class FeedReaderImpl implements FeedReader {
      * @return the last entry of <code>null</code> if the feed is empty
      * @see org.ow2.chameleon.syndication.FeedReader#getLastEntry()
      */
-    @SuppressWarnings("unchecked")
-    public synchronized FeedEntry getLastEntry() {
-        List<SyndEntry> entries = m_feed.getEntries();
-        if (entries.isEmpty()) {
-            return null;
-        } else {
-            return new FeedEntryImpl(entries.get(0));
-        }
+    public FeedEntry getLastEntry() {
+        return m_snapshot.m_last;
     }
 
     /**
-     * Gets the recent entries.
+     * Gets the recent entries. The returned list is the unmodifiable list
+     * built by the last load; this method never blocks.
      * @return the list of entries.
      * @see org.ow2.chameleon.syndication.FeedReader#getRecentEntries()
      */
-    @SuppressWarnings("unchecked")
-    public synchronized List<FeedEntry> getRecentEntries() {
-        List<SyndEntry> entries = m_feed.getEntries();
-        List<FeedEntry> result = new ArrayList<FeedEntry>();
-        int count = 0;
-        for (SyndEntry e : entries) {
-            if (count == m_recentCount) {
-                return result;
-            }
-            result.add(new FeedEntryImpl(e));
-            count++;
-        }
-        return result;
+    public List<FeedEntry> getRecentEntries() {
+        return m_snapshot.m_recent;
     }
 
     /**
@@ -273,11 +726,137 @@ public class FeedReaderImpl implements FeedReader {
     }
 
     /**
-     * Stop method. Stops the polling.
+     * Start method. Registers the polling task on the shared scheduler. If
+     * the feed was neither read nor restored yet, it is read as soon as a
+     * worker is available.
+     */
+    @Validate
+    public void start() {
+        if (m_registration == null) {
+            m_scheduler = PollingScheduler.acquire();
+            if (m_adaptive) {
+                m_policy = new AdaptivePollingPolicy(m_period, m_minPeriod,
+                        m_maxPeriod);
+            }
+            PollingScheduler.Task task = new PollingScheduler.Task() {
+
+                public long poll() {
+                    try {
+                        m_logger.info("Reading " + m_url);
+                        boolean changed = load();
+                        if (!m_published) {
+                            m_published = true;
+                        }
+                        return next(changed);
+                    } catch (Exception e) {
+                        CircuitBreaker breaker = getCircuitBreaker();
+                        long backoff = breaker.getBackoff();
+                        m_logger.error("Cannot read the feed " + m_url
+                                + " (" + breaker.getFailures()
+                                + " consecutive failures), next attempt in "
+                                + backoff + " ms", e);
+                        return backoff;
+                    }
+                }
+            };
+            if (!m_awaitFirstFetch || m_snapshot != Snapshot.EMPTY) {
+                m_published = true;
+            }
+            if (m_snapshot == Snapshot.EMPTY
+                    && getCircuitBreaker().getFailures() == 0) {
+                // Not read yet, read now.
+                m_registration = m_scheduler.schedule(task,
+                        0);
+            } else if (getCircuitBreaker().getFailures() > 0) {
+                // Degraded, retry soon.
+                m_registration = m_scheduler.schedule(task,
+                        getCircuitBreaker().getBackoff());
+            } else if (m_restoredPoll != -1) {
+                // Restored, poll when the saved poll is due.
+                m_registration = m_scheduler.resume(task,
+                        m_restoredPoll + m_period
+                                - System.currentTimeMillis(), m_period);
+                m_restoredPoll = -1;
+            } else {
+                m_registration = m_scheduler.register(task,
+                        m_period);
+            }
+        }
+    }
+
+    /**
+     * Computes the delay before the next poll.
+     * @param changed has the last poll found new entries
+     * @return the delay in ms
+     */
+    private long next(boolean changed) {
+        if (m_policy == null) {
+            return m_period;
+        }
+        return m_policy.next(changed, getRefreshHint(), System
+                .currentTimeMillis());
+    }
+
+    /**
+     * Gets the refresh hint of the publisher: the greatest value of the feed
+     * ttl / <code>sy:updatePeriod</code> and of the HTTP
+     * <code>Cache-Control: max-age</code>.
+     * @return the hint in ms, -1 if the publisher gives no hint
+     */
+    public long getRefreshHint() {
+        return Math.max(m_feedHint, m_maxAge);
+    }
+
+    /**
+     * Gets the state of the circuit of the feed.
+     * @return {@link CircuitBreaker.State#CLOSED} if the feed works,
+     *         {@link CircuitBreaker.State#OPEN} or
+     *         {@link CircuitBreaker.State#HALF_OPEN} if it keeps failing
+     */
+    public CircuitBreaker.State getCircuitState() {
+        return getCircuitBreaker().getState();
+    }
+
+    /**
+     * Gets the number of consecutive failed polls.
+     * @return the number of failures, 0 if the last poll succeeded
+     */
+    public int getConsecutiveFailures() {
+        return getCircuitBreaker().getFailures();
+    }
+
+    /**
+     * Gets the failure of the last poll.
+     * @return the failure, <code>null</code> if the last poll succeeded
+     */
+    public Throwable getLastFailure() {
+        return getCircuitBreaker().getLastFailure();
+    }
+
+    /**
+     * Gets the current polling interval.
+     * @return the polling interval in ms
+     */
+    public long getPollingInterval() {
+        if (m_policy == null) {
+            return m_period;
+        }
+        return m_policy.getInterval();
+    }
+
+    /**
+     * Stop method. Stops the polling and releases the shared scheduler.
      */
     @Invalidate
     public void stop() {
-        m_pool.shutdownNow();
+        if (m_registration != null) {
+            m_registration.cancel();
+            m_registration = null;
+        }
+        if (m_scheduler != null) {
+            PollingScheduler.release(m_scheduler);
+            m_scheduler = null;
+        }
     }
 
     /**
@@ -308,8 +887,9 @@ public class FeedReaderImpl implements FeedReader {
             if (entry.url() != null) {
                 data.put(FeedReader.ENTRY_URL_KEY, entry.url());
             }
-            if (m_feed.getTitle() != null) {
-                data.put(FeedReader.FEED_TITLE_KEY, m_feed.getTitle());
+            String title = m_snapshot.m_title;
+            if (title != null) {
+                data.put(FeedReader.FEED_TITLE_KEY, title);
             }
             if (m_feedUrl != null) {
                 data.put(FeedReader.FEED_URL_KEY, m_feedUrl);
@@ -320,10 +900,68 @@ public class FeedReaderImpl implements FeedReader {
         }
     }
 
+    /**
+     * Immutable state of the read feed. Built once per successful load and
+     * shared by all the callers.
+     */
+    private static final class Snapshot {
+
+        /**
+         * Snapshot used before the first successful load.
+         */
+        static final Snapshot EMPTY = new Snapshot(null,
+                new ArrayList<FeedEntry>(), 0);
+
+        /**
+         * The feed title.
+         */
+        final String m_title;
+
+        /**
+         * All the entries (unmodifiable).
+         */
+        final List<FeedEntry> m_entries;
+
+        /**
+         * The recent entries (unmodifiable).
+         */
+        final List<FeedEntry> m_recent;
+
+        /**
+         * The last (more recent) entry, <code>null</code> if the feed is
+         * empty.
+         */
+        final FeedEntry m_last;
+
+        /**
+         * Creates a {@link Snapshot}.
+         * @param title the feed title
+         * @param entries the entries, most recent first
+         * @param recent the number of recent entries
+         */
+        Snapshot(String title, List<FeedEntry> entries, int recent) {
+            m_title = title;
+            m_entries = Collections.unmodifiableList(
+                    new ArrayList<FeedEntry>(entries));
+            m_recent = m_entries.subList(0, Math.min(recent, m_entries
+                    .size()));
+            if (m_entries.isEmpty()) {
+                m_last = null;
+            } else {
+                m_last = m_entries.get(0);
+            }
+        }
+    }
+
     /**
      * Implementation of Feed Entry. These Feed Entries are unmodifiable
      */
-    private class FeedEntryImpl implements FeedEntry {
+    static class FeedEntryImpl implements IdentifiedFeedEntry {
+
+        /**
+         * Entry id (guid or Atom id), may be <code>null</code>.
+         */
+        private final String m_id;
 
         /**
          * Author.
@@ -355,13 +993,45 @@ public class FeedReaderImpl implements FeedReader {
          */
         private final List<String> m_categories;
 
+        /**
+         * Creates a {@link FeedEntryImpl}.
+         * @param id the entry id (guid or Atom id)
+         * @param title the title
+         * @param url the url
+         * @param author the author, an empty string is used if
+         *        <code>null</code>
+         * @param content the content
+         * @param date the publication date
+         * @param categories the categories
+         */
+        FeedEntryImpl(String id, String title, String url, String author,
+                String content, Date date, List<String> categories) {
+            m_id = id;
+            m_title = title;
+            m_url = url;
+            if (author == null) {
+                m_author = "";
+            } else {
+                m_author = author;
+            }
+            m_content = content;
+            m_date = date;
+            m_categories = categories;
+        }
+
         /**
          * Creates a {@link FeedEntryImpl} from a {@link SyndEntry}.
          * @param e the {@link SyndEntry}
          */
+        @SuppressWarnings("unchecked")
         public FeedEntryImpl(SyndEntry e) {
+            m_id = e.getUri();
             m_author = e.getAuthor();
-            m_content = e.getDescription().getValue();
+            if (e.getDescription() != null) {
+                m_content = e.getDescription().getValue();
+            } else {
+                m_content = null;
+            }
             Date d = e.getPublishedDate();
             if (d == null) {
                 m_date = e.getUpdatedDate();
@@ -378,6 +1048,15 @@ public class FeedReaderImpl implements FeedReader {
             }
         }
 
+        /**
+         * Gets the entry id (guid or Atom id).
+         * @return the entry id or <code>null</code> if not set
+         * @see org.ow2.chameleon.syndication.IdentifiedFeedEntry#id()
+         */
+        public String id() {
+            return m_id;
+        }
+
         /**
          * Gets the entry author.
          * @return the entry author
@@ -0,0 +1,56 @@
+/*
+ * Copyright 2009 OW2 Chameleon
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ow2.chameleon.syndication.rome;
+
+import java.util.List;
+
+import com.sun.syndication.feed.synd.SyndEntry;
+import com.sun.syndication.feed.synd.SyndFeed;
+import com.sun.syndication.io.FeedException;
+
+/**
+ * Serializes a feed in a wire format. Renderers are stateless and shared by
+ * the writers.
+ */
+public interface FeedRenderer {
+
+    /**
+     * Gets the name of the format, used as cache key.
+     * @return the format name
+     */
+    String getName();
+
+    /**
+     * Gets the content type of the rendered feeds.
+     * @return the content type, including the charset
+     */
+    String getContentType();
+
+    /**
+     * Serializes a selection of the entries of a feed. Renderers assemble
+     * the feed from the fragments of the cache, and serialize only the
+     * missing fragments.
+     * @param feed the feed, giving the title, link and description
+     * @param entries the selected entries, most recent first
+     * @param links the <code>self</code> link and the paging links, as
+     *        pairs of relation and URL
+     * @param cache the fragment cache of this format
+     * @return the UTF-8 serialized feed
+     * @throws FeedException if the feed cannot be rendered
+     */
+    byte[] render(SyndFeed feed, List<SyndEntry> entries,
+            List<String[]> links, FragmentCache cache) throws FeedException;
+
+}
@@ -0,0 +1,140 @@
+/*
+ * Copyright 2009 OW2 Chameleon
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ow2.chameleon.syndication.rome;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Response returned by a {@link FeedFetcher}. The response holds the
+ * (decoded) body and the validators sent by the server. It must be closed
+ * once read to release the underlying connection.
+ */
+public class FetchResponse {
+
+    /**
+     * Is the feed modified since the given validators.
+     */
+    private final boolean m_modified;
+
+    /**
+     * The body, <code>null</code> if the feed is not modified.
+     */
+    private final InputStream m_body;
+
+    /**
+     * The content type, <code>null</code> if unknown.
+     */
+    private final String m_contentType;
+
+    /**
+     * The ETag, <code>null</code> if not sent.
+     */
+    private final String m_etag;
+
+    /**
+     * The Last-Modified value, <code>null</code> if not sent.
+     */
+    private final String m_lastModified;
+
+    /**
+     * The freshness lifetime given by the server in ms, -1 if unknown.
+     */
+    private final long m_maxAge;
+
+    /**
+     * Creates a {@link FetchResponse}.
+     * @param modified is the feed modified
+     * @param body the body (not read yet)
+     * @param contentType the content type
+     * @param etag the ETag
+     * @param lastModified the Last-Modified value
+     * @param maxAge the freshness lifetime in ms, -1 if unknown
+     */
+    public FetchResponse(boolean modified, InputStream body,
+            String contentType, String etag, String lastModified, long maxAge) {
+        m_modified = modified;
+        m_body = body;
+        m_contentType = contentType;
+        m_etag = etag;
+        m_lastModified = lastModified;
+        m_maxAge = maxAge;
+    }
+
+    /**
+     * Checks whether the feed was modified since the validators given to the
+     * fetcher.
+     * @return <code>false</code> if the server answered
+     *         <code>304 Not Modified</code>
+     */
+    public boolean isModified() {
+        return m_modified;
+    }
+
+    /**
+     * Gets the body. The stream is already decoded (gzip / deflate).
+     * @return the body, <code>null</code> if the feed is not modified
+     */
+    public InputStream getBody() {
+        return m_body;
+    }
+
+    /**
+     * Gets the content type.
+     * @return the content type, <code>null</code> if unknown
+     */
+    public String getContentType() {
+        return m_contentType;
+    }
+
+    /**
+     * Gets the ETag.
+     * @return the ETag, <code>null</code> if not sent
+     */
+    public String getETag() {
+        return m_etag;
+    }
+
+    /**
+     * Gets the Last-Modified value.
+     * @return the Last-Modified value, <code>null</code> if not sent
+     */
+    public String getLastModified() {
+        return m_lastModified;
+    }
+
+    /**
+     * Gets the freshness lifetime given by the server (e.g.
+     * <code>Cache-Control: max-age</code>).
+     * @return the lifetime in ms, -1 if unknown
+     */
+    public long getMaxAge() {
+        return m_maxAge;
+    }
+
+    /**
+     * Releases the response.
+     */
+    public void close() {
+        if (m_body != null) {
+            try {
+                m_body.close();
+            } catch (IOException e) {
+                // Ignored.
+            }
+        }
+    }
+
+}
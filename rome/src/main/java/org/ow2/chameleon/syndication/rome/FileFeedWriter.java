@@ -14,31 +14,78 @@
  */
 package org.ow2.chameleon.syndication.rome;
 
+import java.io.BufferedOutputStream;
 import java.io.File;
-import java.io.FileWriter;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.Writer;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.util.Collection;
+import java.util.List;
 
 import org.apache.felix.ipojo.annotations.Component;
+import org.apache.felix.ipojo.annotations.Invalidate;
 import org.apache.felix.ipojo.annotations.Property;
 import org.apache.felix.ipojo.annotations.Provides;
 import org.apache.felix.ipojo.annotations.Requires;
 import org.apache.felix.ipojo.annotations.ServiceProperty;
 import org.apache.felix.ipojo.annotations.Validate;
+import org.jdom.Document;
+import org.jdom.output.Format;
+import org.jdom.output.XMLOutputter;
 import org.osgi.service.event.EventAdmin;
 import org.ow2.chameleon.syndication.FeedEntry;
+import org.ow2.chameleon.syndication.FeedEntryFilter;
 import org.ow2.chameleon.syndication.FeedWriter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.sun.syndication.feed.synd.SyndEntry;
 import com.sun.syndication.feed.synd.SyndFeed;
 import com.sun.syndication.feed.synd.SyndFeedImpl;
+import com.sun.syndication.io.FeedException;
 import com.sun.syndication.io.SyndFeedInput;
 import com.sun.syndication.io.SyndFeedOutput;
 import com.sun.syndication.io.XmlReader;
 
 /**
  * Feed Writer using a file to dump the feed.
+ * <p>
+ * By default the file is written on each modification. When a write delay
+ * is set, modifications only mark the feed dirty, and the file is written
+ * by the shared {@link PollingScheduler} at most <code>delay</code> ms after
+ * the first unwritten modification, or as soon as <code>batch</code>
+ * modifications are pending. The feed is serialized outside of the writer
+ * lock. Pending modifications are written by {@link FileFeedWriter#flush()}
+ * and when the instance is invalidated.
+ * <p>
+ * The default mode is durable but costly: each modification serializes the
+ * whole feed and syncs it to the disk, i.e. one full write and one
+ * <code>fsync</code> per added or removed entry. Writers with frequent
+ * modifications should set a write delay or batch, or use the
+ * <code>journal</code> storage.
+ * <p>
+ * The feed is written to a temporary file of the same directory, synced to
+ * the disk and renamed over the feed file, so readers never see a partial
+ * or missing feed (except on Windows, see {@link FileReplacer}). The
+ * previous good copy is kept as <code>&lt;file&gt;.bak</code> (copied, not
+ * synced), and used when the feed file cannot be parsed on startup.
+ * <p>
+ * Each written feed file comes with a binary {@link EntrySnapshot} of its
+ * entries (<code>&lt;file&gt;.entries</code>), stamped with the length and
+ * modification time of the feed file. On startup, the snapshot is used
+ * instead of parsing the feed file, unless it is missing or stale: only its
+ * index is read, and entry contents are decoded when first accessed.
+ * <p>
+ * With the <code>journal</code> storage, the entries are stored by a
+ * {@link FeedJournal}: each modification is appended to a journal, and the
+ * feed file is only regenerated when the journal is compacted, i.e. when
+ * pending modifications are written (every 10 seconds if no write delay is
+ * set). On startup the entries are loaded from the journal snapshot instead
+ * of the feed file. Journal records are not synced to the disk: a system crash
+ * may lose the modifications made since the last compaction.
  */
 @Component(name = "org.ow2.chameleon.syndication.rome.filewriter", immediate = true)
 @Provides
@@ -100,6 +147,86 @@ public class FileFeedWriter extends AbstractFeedWriter {
     @Property(name = "org.ow2.chameleon.syndication.feed.file", mandatory = true)
     private String m_fileName;
 
+    /**
+     * The delay before writing modifications in ms. The file is written on
+     * each modification if not positive.
+     */
+    private long m_writeDelay;
+
+    /**
+     * The number of pending modifications triggering a write, unbounded if
+     * not positive.
+     */
+    private int m_writeBatch;
+
+    /**
+     * The number of modifications not written yet.
+     */
+    private int m_pending;
+
+    /**
+     * The scheduled write, <code>null</code> if none.
+     */
+    private PollingScheduler.Registration m_flush;
+
+    /**
+     * The shared scheduler, acquired on the first scheduled write and
+     * released when the writer stops.
+     */
+    private PollingScheduler m_scheduler;
+
+    /**
+     * The storage of the entries: <code>xml</code> or <code>journal</code>.
+     */
+    private String m_storage = STORAGE_XML;
+
+    /**
+     * The journal, <code>null</code> if the journal storage is not used.
+     */
+    private FeedJournal m_journal;
+
+    /**
+     * The entry snapshot of the feed file, to load in the store,
+     * <code>null</code> if none.
+     */
+    private EntrySnapshot m_snapshot;
+
+    /**
+     * Lock serializing the writes of the file.
+     */
+    private final Object m_fileLock = new Object();
+
+    /**
+     * The version of the feed last written to the file.
+     */
+    private long m_writtenVersion = -1;
+
+    /**
+     * Does the feed file contain a valid feed. Only valid files are copied
+     * to the backup file.
+     */
+    private boolean m_valid;
+
+    /**
+     * Size of the output buffer.
+     */
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * Storage keeping the entries in the feed file only.
+     */
+    public static final String STORAGE_XML = "xml";
+
+    /**
+     * Storage keeping the entries in a journal.
+     */
+    public static final String STORAGE_JOURNAL = "journal";
+
+    /**
+     * Delay between journal compactions if no write delay is set.
+     */
+    private static final long COMPACTION_DELAY = 10000;
+
     /**
      * Logger.
      */
@@ -128,13 +255,85 @@ public class FileFeedWriter extends AbstractFeedWriter {
         setRecentItemsCount(recent);
     }
 
+    /**
+     * Sets the maximum number of entries kept in the feed.
+     * @param max the maximum number of entries, -1 (default) for unbounded
+     */
+    @Property(name = "org.ow2.chameleon.syndication.feed.max.entries", value = "-1")
+    public void setMaxEntries(int max) {
+        setMaxEntriesCount(max);
+    }
+
+    /**
+     * Sets the maximum age of the entries kept in the feed.
+     * @param max the maximum age in ms, -1 (default) for unbounded
+     */
+    @Property(name = "org.ow2.chameleon.syndication.feed.max.age", value = "-1")
+    public void setMaxAge(long max) {
+        setMaxEntriesAge(max);
+    }
+
+    /**
+     * Sets the maximum size of the entry contents kept in the feed.
+     * @param max the maximum size in bytes, -1 (default) for unbounded
+     */
+    @Property(name = "org.ow2.chameleon.syndication.feed.max.bytes", value = "-1")
+    public void setMaxBytes(long max) {
+        setMaxEntriesBytes(max);
+    }
+
+    /**
+     * Sets the directory of the off-heap entry archive.
+     * @param directory the directory, not set by default (entries are kept
+     *        on the heap)
+     */
+    @Property(name = "org.ow2.chameleon.syndication.feed.archive")
+    public void setArchive(String directory) {
+        setArchiveDirectory(directory);
+    }
+
+    /**
+     * Sets the write delay. With a positive delay, modifications are written
+     * in the background instead of on each modification.
+     * @param delay the delay in ms, 0 (default) to write on each modification
+     */
+    @Property(name = "org.ow2.chameleon.syndication.feed.write.delay", value = "0")
+    public void setWriteDelay(long delay) {
+        synchronized (this) {
+            m_writeDelay = delay;
+        }
+        if (delay <= 0) {
+            flush();
+        }
+    }
+
+    /**
+     * Sets the storage of the entries. Must be set before the feed is used.
+     * @param storage <code>xml</code> (default) to keep the entries in the
+     *        feed file only, <code>journal</code> to keep them in a journal
+     */
+    @Property(name = "org.ow2.chameleon.syndication.feed.storage", value = STORAGE_XML)
+    public synchronized void setStorage(String storage) {
+        m_storage = storage;
+    }
+
+    /**
+     * Sets the number of pending modifications triggering a background
+     * write. Only used with a write delay.
+     * @param batch the number of modifications, -1 (default) for no limit
+     */
+    @Property(name = "org.ow2.chameleon.syndication.feed.write.batch", value = "-1")
+    public synchronized void setWriteBatch(int batch) {
+        m_writeBatch = batch;
+    }
+
     /**
      * Gets the underlying feed. If the feed is not created, it creates the
      * feed.
      * @return the created feed object
-     * @see org.ow2.chameleon.syndication.rome.AbstractFeedWriter#getFeed()
+     * @see org.ow2.chameleon.syndication.rome.AbstractFeedWriter#getFeedMetadata()
      */
-    public SyndFeed getFeed() {
+    protected SyndFeed getFeedMetadata() {
         if (m_feed == null) {
             m_feed = new SyndFeedImpl();
             m_feed.setTitle(m_title);
@@ -155,6 +354,10 @@ public class FileFeedWriter extends AbstractFeedWriter {
                     throw new IllegalArgumentException(
                             "Cannot create the feed : " + e.getMessage());
                 }
+                // The file may have been lost while being replaced.
+                if (!isJournalStorage() || !FeedJournal.exists(m_file)) {
+                    m_feed = load(m_feed);
+                }
             } else {
                 if (file.isDirectory()) {
                     // Create the new file.
@@ -166,13 +369,12 @@ public class FileFeedWriter extends AbstractFeedWriter {
                                 "Cannot create the feed : " + e.getMessage());
                     }
                 } else {
-                    // Reload the file.
+                    // Reload the file, unless the journal has the entries.
                     m_file = file;
-                    SyndFeedInput input = new SyndFeedInput();
-                    try {
-                        m_feed = input.build(new XmlReader(m_file));
-                    } catch (Exception e) {
-                        // Cannot reload the file, override it.
+                    if (!isJournalStorage() || !FeedJournal.exists(m_file)) {
+                        m_feed = load(m_feed);
+                    } else {
+                        m_feed = loadMetadata(m_feed);
                     }
                 }
             }
@@ -191,13 +393,317 @@ public class FileFeedWriter extends AbstractFeedWriter {
         return m_feed;
     }
 
+    /**
+     * Checks whether the journal storage is configured.
+     * @return <code>true</code> if the entries are kept in a journal
+     */
+    private boolean isJournalStorage() {
+        return STORAGE_JOURNAL.equals(m_storage);
+    }
+
+    /**
+     * Gets the entry store. The entries are loaded on first use from the
+     * entry snapshot of the feed file if it is up to date, or from the
+     * journal with the journal storage. A feed without journal is imported
+     * from the feed file and compacted to create the snapshot. An unreadable
+     * journal snapshot is moved aside, and the entries are imported from the
+     * feed file, or its backup, before the journal is compacted again.
+     * @return the entry store
+     * @see org.ow2.chameleon.syndication.rome.AbstractFeedWriter#getStore()
+     */
+    protected synchronized EntryStore getStore() {
+        EntryStore store = super.getStore();
+        if (m_snapshot != null) {
+            EntrySnapshot snapshot = m_snapshot;
+            m_snapshot = null;
+            try {
+                snapshot.load(store);
+            } catch (IOException e) {
+                m_logger.warn("Invalid entry snapshot, parsing the feed file "
+                        + m_file.getAbsolutePath(), e);
+                importEntries(store);
+            }
+        }
+        if (m_journal == null && isJournalStorage()) {
+            FeedJournal journal = new FeedJournal(m_file);
+            boolean loaded;
+            try {
+                loaded = journal.load(store);
+            } catch (IOException e) {
+                m_logger.error("Cannot load the journal of "
+                        + m_file.getAbsolutePath()
+                        + ", importing the feed file", e);
+                journal.discard();
+                while (!store.isEmpty()) {
+                    store.remove(store.first());
+                }
+                importEntries(store);
+                loaded = false;
+            }
+            if (!loaded) {
+                try {
+                    journal.compact(store.toList());
+                } catch (IOException e) {
+                    m_logger.error("Cannot compact the journal of "
+                            + m_file.getAbsolutePath(), e);
+                }
+            }
+            m_journal = journal;
+        }
+        return store;
+    }
+
+    /**
+     * Appends the added entry to the journal, if used.
+     * @param entry the added entry
+     * @see org.ow2.chameleon.syndication.rome.AbstractFeedWriter#entryAdded(com.sun.syndication.feed.synd.SyndEntry)
+     */
+    protected void entryAdded(SyndEntry entry) {
+        if (m_journal != null) {
+            try {
+                m_journal.added(entry);
+            } catch (IOException e) {
+                m_logger.error("Cannot write the journal of "
+                        + m_file.getAbsolutePath(), e);
+            }
+        }
+    }
+
+    /**
+     * Appends the removed entry to the journal, if used.
+     * @param entry the removed entry
+     * @see org.ow2.chameleon.syndication.rome.AbstractFeedWriter#entryRemoved(com.sun.syndication.feed.synd.SyndEntry)
+     */
+    protected void entryRemoved(SyndEntry entry) {
+        if (m_journal != null) {
+            try {
+                m_journal.removed(entry);
+            } catch (IOException e) {
+                m_logger.error("Cannot write the journal of "
+                        + m_file.getAbsolutePath(), e);
+            }
+        }
+    }
+
+    /**
+     * Reloads the feed from the entry snapshot or the feed file, or from the
+     * backup file if the feed file cannot be parsed. An unreadable feed file is kept as
+     * <code>&lt;file&gt;.corrupt</code> rather than overridden.
+     * @param empty the feed used if no file can be loaded
+     * @return the loaded feed
+     */
+    private SyndFeed load(SyndFeed empty) {
+        File entries = getSibling(".entries");
+        if (m_file.length() > 0 && entries.isFile()) {
+            try {
+                EntrySnapshot snapshot = EntrySnapshot.open(entries);
+                if (snapshot.isSnapshotOf(m_file)) {
+                    // The entries are loaded with the store.
+                    m_snapshot = snapshot;
+                    m_valid = true;
+                    return loadMetadata(empty);
+                }
+            } catch (IOException e) {
+                m_logger.warn("Ignoring the invalid entry snapshot "
+                        + entries.getAbsolutePath(), e);
+            }
+        }
+        if (m_file.length() > 0) {
+            try {
+                SyndFeed feed = parse(m_file);
+                m_valid = true;
+                return feed;
+            } catch (Exception e) {
+                m_logger.warn("Cannot parse the feed file "
+                        + m_file.getAbsolutePath(), e);
+            }
+        }
+        File backup = getSibling(".bak");
+        SyndFeed feed = empty;
+        if (backup.isFile()) {
+            try {
+                feed = parse(backup);
+                m_logger.warn("Feed recovered from " + backup.getAbsolutePath());
+            } catch (Exception e) {
+                m_logger.error("Cannot parse the feed backup "
+                        + backup.getAbsolutePath(), e);
+            }
+        }
+        if (m_file.length() > 0) {
+            File corrupt = getSibling(".corrupt");
+            corrupt.delete();
+            if (m_file.renameTo(corrupt)) {
+                m_logger.error("Unreadable feed file kept as "
+                        + corrupt.getAbsolutePath());
+                try {
+                    m_file.createNewFile();
+                } catch (IOException e) {
+                    // Checked by the caller.
+                }
+            }
+        }
+        return feed;
+    }
+
+    /**
+     * Loads the channel metadata of the feed file, when the entries are
+     * loaded from a snapshot or a journal. Only the document header is
+     * parsed.
+     * @param empty the feed used if the feed file cannot be parsed
+     * @return the feed metadata, without entries
+     */
+    private SyndFeed loadMetadata(SyndFeed empty) {
+        if (m_file.length() == 0) {
+            return empty;
+        }
+        try {
+            XmlReader reader = new XmlReader(m_file);
+            try {
+                return new StreamingFeedParser().parseMetadata(reader);
+            } finally {
+                reader.close();
+            }
+        } catch (Exception e) {
+            m_logger.warn("Cannot read the metadata of the feed file "
+                    + m_file.getAbsolutePath(), e);
+            return empty;
+        }
+    }
+
+    /**
+     * Imports the entries of the feed file in a store, or of the backup file
+     * if the feed file cannot be parsed.
+     * @param store the store
+     */
+    @SuppressWarnings("unchecked")
+    private void importEntries(EntryStore store) {
+        File[] files = new File[] {m_file, getSibling(".bak")};
+        for (File file : files) {
+            if (!file.isFile() || file.length() == 0) {
+                continue;
+            }
+            try {
+                List<SyndEntry> entries = parse(file).getEntries();
+                for (SyndEntry entry : entries) {
+                    store.addLast(entry);
+                }
+                if (file != m_file) {
+                    m_logger.warn("Entries recovered from "
+                            + file.getAbsolutePath());
+                }
+                return;
+            } catch (Exception e) {
+                m_logger.error("Cannot parse the feed file "
+                        + file.getAbsolutePath(), e);
+            }
+        }
+    }
+
+    /**
+     * Parses a feed file.
+     * @param file the file
+     * @return the feed
+     * @throws Exception if the file cannot be read or parsed
+     */
+    private static SyndFeed parse(File file) throws Exception {
+        XmlReader reader = new XmlReader(file);
+        try {
+            return new SyndFeedInput().build(reader);
+        } finally {
+            reader.close();
+        }
+    }
+
+    /**
+     * Gets a file of the feed directory named after the feed file.
+     * @param suffix the suffix appended to the feed file name
+     * @return the file
+     */
+    private File getSibling(String suffix) {
+        return new File(m_file.getAbsoluteFile().getParentFile(), m_file
+                .getName()
+                + suffix);
+    }
+
     /**
      * Initializes the writer. This methods creates the feed.
      * @throws IOException
      */
     @Validate
     public void init() throws IOException {
-        getFeed();
+        getFeedMetadata();
+    }
+
+    /**
+     * Stops the writer. Pending modifications are written, the entry
+     * archive is closed and the shared scheduler is released.
+     */
+    @Invalidate
+    public void stop() {
+        flush();
+        closeArchive();
+        synchronized (this) {
+            if (m_journal != null) {
+                m_journal.close();
+            }
+            if (m_scheduler != null) {
+                PollingScheduler.release(m_scheduler);
+                m_scheduler = null;
+            }
+        }
+    }
+
+    /**
+     * Writes the pending modifications to the file. Returns once the file
+     * contains them. With the journal storage, the journal is compacted.
+     */
+    public void flush() {
+        SyndFeed view;
+        long version;
+        synchronized (this) {
+            if (m_flush != null) {
+                m_flush.cancel();
+                m_flush = null;
+            }
+            boolean pending = m_pending > 0;
+            if (!pending && isWritten(getVersion())) {
+                return;
+            }
+            m_pending = 0;
+            view = getStoreView();
+            version = getVersion();
+            if (pending && m_journal != null) {
+                try {
+                    m_journal.compact(getStore().toList());
+                } catch (IOException e) {
+                    m_logger.error("Cannot compact the journal of "
+                            + m_file.getAbsolutePath(), e);
+                }
+            }
+        }
+        write(view, version);
+    }
+
+    /**
+     * Checks whether a version of the feed is written. A background write
+     * may still be writing the file after the pending modifications are
+     * cleared.
+     * @param version the version
+     * @return <code>true</code> if the file contains this version or a
+     *         newer one, or if the feed was never modified
+     */
+    private boolean isWritten(long version) {
+        synchronized (m_fileLock) {
+            return version == 0 || version <= m_writtenVersion;
+        }
+    }
+
+    /**
+     * Checks whether modifications are not written yet.
+     * @return <code>true</code> if the file is not up to date
+     */
+    public synchronized boolean isDirty() {
+        return m_pending > 0;
     }
 
     /**
@@ -228,58 +734,212 @@ public class FileFeedWriter extends AbstractFeedWriter {
     }
 
     /**
-     * Writes the feed to the file.
+     * Notifies a modification of the feed. Writes the file, or schedules the
+     * write if a write delay is set or if the journal storage is used. Must be called with the writer lock
+     * held.
      */
-    private void write() {
-        Writer writer = null;
+    private void changed() {
+        m_pending++;
+        long delay = m_writeDelay;
+        if (delay <= 0 && m_journal != null) {
+            delay = COMPACTION_DELAY;
+        }
+        if (delay <= 0) {
+            m_pending = 0;
+            write(getStoreView(), getVersion());
+            return;
+        }
+        if (m_writeBatch > 0 && m_pending >= m_writeBatch) {
+            delay = 0;
+        } else if (m_flush != null) {
+            // Already scheduled.
+            return;
+        }
+        if (m_flush != null) {
+            m_flush.cancel();
+        }
+        if (m_scheduler == null) {
+            m_scheduler = PollingScheduler.acquire();
+        }
+        m_flush = m_scheduler.schedule(
+                new PollingScheduler.Task() {
+                    public long poll() {
+                        flush();
+                        return -1;
+                    }
+                }, delay);
+    }
+
+    /**
+     * Writes the feed to the file. Writes are serialized, and a feed older
+     * than the written one is ignored.
+     * @param feed the feed to write
+     * @param version the version of the feed
+     */
+    private void write(SyndFeed feed, long version) {
+        synchronized (m_fileLock) {
+            if (version <= m_writtenVersion) {
+                return;
+            }
+            try {
+                publish(feed);
+                m_writtenVersion = version;
+            } catch (Exception e) {
+                m_logger.error("Cannot write feed to "
+                        + m_file.getAbsolutePath(), e);
+            }
+        }
+    }
+
+    /**
+     * Publishes the feed. The feed is written to a temporary file, synced to
+     * the disk, and renamed over the feed file, so the feed file always
+     * exists. The replaced file is first copied to the backup file. The
+     * entry snapshot is removed before the feed file is replaced, and
+     * written once it is, so that it is never newer than the feed file.
+     * @param feed the feed
+     * @throws IOException if the file cannot be written
+     * @throws FeedException if the feed cannot be generated
+     */
+    @SuppressWarnings("unchecked")
+    private void publish(SyndFeed feed) throws IOException, FeedException {
+        Document document = new SyndFeedOutput().outputJDom(feed);
+        Format format = Format.getPrettyFormat();
+        if (feed.getEncoding() != null) {
+            format.setEncoding(feed.getEncoding());
+        }
+        File tmp = getSibling(".tmp");
+        FileOutputStream stream = new FileOutputStream(tmp);
         try {
-            writer = new FileWriter(m_file);
-            SyndFeedOutput output = new SyndFeedOutput();
-            output.output(m_feed, writer);
-        } catch (Exception e) {
-            m_logger.error("Cannot write feed to " + m_file.getAbsolutePath(),
-                    e);
+            FileChannel channel = stream.getChannel();
+            OutputStream out = new BufferedOutputStream(Channels
+                    .newOutputStream(channel), BUFFER_SIZE);
+            new XMLOutputter(format).output(document, out);
+            out.flush();
+            channel.force(true);
         } finally {
-            if (writer != null) {
-                try {
-                    writer.close();
-                } catch (IOException e) {
-                    // Ignored.
+            stream.close();
+        }
+        File entries = getSibling(".entries");
+        entries.delete();
+        if (m_valid) {
+            backup();
+        }
+        FileReplacer.replace(tmp, m_file);
+        m_valid = true;
+        if (!isJournalStorage()) {
+            try {
+                EntrySnapshot.write(entries, 0, m_file, feed.getEntries(),
+                        false);
+            } catch (IOException e) {
+                m_logger.warn("Cannot write the entry snapshot "
+                        + entries.getAbsolutePath(), e);
+            }
+        }
+    }
+
+    /**
+     * Copies the feed file to the backup file. The copy is written to a
+     * temporary file and renamed, but not synced: the backup is only a
+     * fallback for a feed file damaged outside of the writer, and syncing
+     * it would double the cost of each write.
+     * @throws IOException if the copy fails
+     */
+    private void backup() throws IOException {
+        File tmp = getSibling(".bak.tmp");
+        FileInputStream in = new FileInputStream(m_file);
+        try {
+            FileOutputStream out = new FileOutputStream(tmp);
+            try {
+                FileChannel source = in.getChannel();
+                FileChannel target = out.getChannel();
+                long size = source.size();
+                long position = 0;
+                while (position < size) {
+                    position += source.transferTo(position, size - position,
+                            target);
                 }
+            } finally {
+                out.close();
             }
+        } finally {
+            in.close();
         }
+        FileReplacer.replace(tmp, getSibling(".bak"));
     }
 
     /**
-     * Adds an entry to the feed. This method writes the file.
+     * Adds an entry to the feed. This method writes the file,
+     * or schedules the write.
      * @param entry the entry to add
      * @see org.ow2.chameleon.syndication.rome.AbstractFeedWriter#addEntry(org.ow2.chameleon.syndication.FeedEntry)
      */
     public synchronized void addEntry(FeedEntry entry) {
         super.addEntry(entry);
-        write();
-
+        changed();
     }
 
     /**
-     * Removes an entry from the feed. This method writes the file.
+     * Removes an entry from the feed. This method writes the file,
+     * or schedules the write.
      * @param entry the entry to remove
      * @see org.ow2.chameleon.syndication.rome.AbstractFeedWriter#removeEntry(org.ow2.chameleon.syndication.FeedEntry)
      */
     public synchronized void removeEntry(FeedEntry entry) {
         super.removeEntry(entry);
-        write();
+        changed();
     }
 
     /**
      * Removes an entry from the feed, based on its name. This method writes the
-     * file.
+     * file, or schedules the write.
      * @param title the feed title
      * @see org.ow2.chameleon.syndication.rome.AbstractFeedWriter#removeEntryByTitle(java.lang.String)
      */
     public synchronized void removeEntryByTitle(String title) {
         super.removeEntryByTitle(title);
-        write();
+        changed();
+    }
+
+    /**
+     * Removes an entry from the feed, based on its id. This method writes the
+     * file, or schedules the write.
+     * @param id the entry id
+     * @see org.ow2.chameleon.syndication.rome.AbstractFeedWriter#removeEntryById(java.lang.String)
+     */
+    public synchronized void removeEntryById(String id) {
+        super.removeEntryById(id);
+        changed();
+    }
+
+    /**
+     * Removes a set of entries from the feed. This method writes the file
+     * once, or schedules the write.
+     * @param entries the entries to remove
+     * @return the number of removed entries
+     * @see org.ow2.chameleon.syndication.rome.AbstractFeedWriter#removeEntries(java.util.Collection)
+     */
+    public synchronized int removeEntries(Collection<FeedEntry> entries) {
+        int removed = super.removeEntries(entries);
+        if (removed > 0) {
+            changed();
+        }
+        return removed;
+    }
+
+    /**
+     * Removes the entries accepted by a filter. This method writes the file
+     * once, or schedules the write.
+     * @param filter the filter
+     * @return the number of removed entries
+     * @see org.ow2.chameleon.syndication.rome.AbstractFeedWriter#removeEntries(org.ow2.chameleon.syndication.FeedEntryFilter)
+     */
+    public synchronized int removeEntries(FeedEntryFilter filter) {
+        int removed = super.removeEntries(filter);
+        if (removed > 0) {
+            changed();
+        }
+        return removed;
     }
 
 }
@@ -0,0 +1,58 @@
+/*
+ * Copyright 2009 OW2 Chameleon
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ow2.chameleon.syndication.rome;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Replaces files by renaming a temporary file over them. The writers write
+ * a complete temporary file in the same directory, then rename it over the
+ * target: on POSIX systems the rename is atomic, so readers and a crash
+ * see either the old or the new file.
+ * <p>
+ * {@link File#renameTo(File)} does not replace an existing file on
+ * Windows. There, the target is deleted before the rename: this fallback is
+ * not atomic, and a crash between both steps leaves no target file, only
+ * the temporary one. Each caller therefore treats a missing file as a lost
+ * one and recovers from its other copies: the feed backup, the feed file
+ * for the entry snapshots, or a new fetch for the reader state.
+ */
+final class FileReplacer {
+
+    /**
+     * Hidden constructor, utility class.
+     */
+    private FileReplacer() {
+        // Nothing to do.
+    }
+
+    /**
+     * Renames a file over a target file.
+     * @param file the file to rename
+     * @param target the replaced file
+     * @throws IOException if the file cannot be renamed
+     */
+    static void replace(File file, File target) throws IOException {
+        if (!file.renameTo(target)) {
+            target.delete();
+            if (!file.renameTo(target)) {
+                throw new IOException("Cannot rename " + file + " to "
+                        + target);
+            }
+        }
+    }
+
+}
@@ -0,0 +1,129 @@
+/*
+ * Copyright 2009 OW2 Chameleon
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ow2.chameleon.syndication.rome;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.sun.syndication.feed.synd.SyndEntry;
+
+/**
+ * Cache of the serialized fragments of a feed in a given format: one
+ * fragment per entry, keyed by the entry id, and the envelopes (everything
+ * around the entries) of the last renderings. Entries never change once
+ * added, so their fragments are serialized once and then only copied.
+ * <p>
+ * This class is not thread safe, the writers use it under their lock.
+ */
+public class FragmentCache {
+
+    /**
+     * Maximum number of cached envelopes.
+     */
+    private static final int MAX_ENVELOPES = 8;
+
+    /**
+     * Entry fragments, indexed by entry id.
+     */
+    private final Map<String, byte[]> m_fragments = new HashMap<String, byte[]>();
+
+    /**
+     * Envelopes (header and footer), indexed by an envelope key.
+     */
+    private final Map<String, byte[][]> m_envelopes = new HashMap<String, byte[][]>();
+
+    /**
+     * Gets the fragment of an entry.
+     * @param entry the entry
+     * @return the fragment, <code>null</code> if not cached
+     */
+    public byte[] get(SyndEntry entry) {
+        if (entry.getUri() == null) {
+            return null;
+        }
+        return m_fragments.get(entry.getUri());
+    }
+
+    /**
+     * Caches the fragment of an entry. Entries without id are not cached.
+     * @param entry the entry
+     * @param fragment the fragment
+     */
+    public void put(SyndEntry entry, byte[] fragment) {
+        if (entry.getUri() != null) {
+            m_fragments.put(entry.getUri(), fragment);
+        }
+    }
+
+    /**
+     * Gets a cached envelope.
+     * @param key the envelope key
+     * @return the header and the footer, <code>null</code> if not cached
+     */
+    public byte[][] getEnvelope(String key) {
+        return m_envelopes.get(key);
+    }
+
+    /**
+     * Caches an envelope.
+     * @param key the envelope key
+     * @param envelope the header and the footer
+     */
+    public void putEnvelope(String key, byte[][] envelope) {
+        if (m_envelopes.size() >= MAX_ENVELOPES) {
+            m_envelopes.clear();
+        }
+        m_envelopes.put(key, envelope);
+    }
+
+    /**
+     * Forgets the envelopes, which depend on the feed metadata.
+     */
+    public void clearEnvelopes() {
+        m_envelopes.clear();
+    }
+
+    /**
+     * Gets the number of cached fragments.
+     * @return the number of fragments
+     */
+    public int size() {
+        return m_fragments.size();
+    }
+
+    /**
+     * Removes the fragments of the entries that are no longer in the feed.
+     * @param entries the entries of the feed
+     */
+    public void retain(List<SyndEntry> entries) {
+        Set<String> ids = new HashSet<String>();
+        for (SyndEntry entry : entries) {
+            if (entry.getUri() != null) {
+                ids.add(entry.getUri());
+            }
+        }
+        Iterator<String> iterator = m_fragments.keySet().iterator();
+        while (iterator.hasNext()) {
+            if (!ids.contains(iterator.next())) {
+                iterator.remove();
+            }
+        }
+    }
+
+}
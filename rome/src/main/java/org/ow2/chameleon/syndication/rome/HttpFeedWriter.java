@@ -15,9 +15,14 @@
 package org.ow2.chameleon.syndication.rome;
 
 import java.io.IOException;
-import java.io.Writer;
+import java.io.OutputStream;
 import java.net.InetAddress;
 import java.net.URL;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 
 import javax.servlet.ServletException;
@@ -27,6 +32,7 @@ import javax.servlet.http.HttpServletResponse;
 
 import org.apache.felix.ipojo.annotations.Bind;
 import org.apache.felix.ipojo.annotations.Component;
+import org.apache.felix.ipojo.annotations.Invalidate;
 import org.apache.felix.ipojo.annotations.Property;
 import org.apache.felix.ipojo.annotations.Provides;
 import org.apache.felix.ipojo.annotations.Requires;
@@ -38,12 +44,13 @@ import org.osgi.service.event.EventAdmin;
 import org.osgi.service.http.HttpContext;
 import org.osgi.service.http.HttpService;
 import org.osgi.service.http.NamespaceException;
+import org.ow2.chameleon.syndication.FeedEntry;
 import org.ow2.chameleon.syndication.FeedWriter;
 
+import com.sun.syndication.feed.synd.SyndEntry;
 import com.sun.syndication.feed.synd.SyndFeed;
 import com.sun.syndication.feed.synd.SyndFeedImpl;
 import com.sun.syndication.io.FeedException;
-import com.sun.syndication.io.SyndFeedOutput;
 
 /**
  * Feed Writer implementation publishing the feed in a servlet. (exposed using
@@ -53,6 +60,26 @@ import com.sun.syndication.io.SyndFeedOutput;
 @Provides
 public class HttpFeedWriter extends AbstractFeedWriter {
 
+    /**
+     * Maximum number of cached renderings (pages and queries).
+     */
+    private static final int MAX_RENDERINGS = 32;
+
+    /**
+     * The RSS 2.0 renderer.
+     */
+    private static final FeedRenderer RSS = new RomeFeedRenderer("rss_2.0");
+
+    /**
+     * The Atom 1.0 renderer.
+     */
+    private static final FeedRenderer ATOM = new RomeFeedRenderer("atom_1.0");
+
+    /**
+     * The JSON Feed renderer.
+     */
+    private static final FeedRenderer JSON = new JsonFeedRenderer();
+
     /**
      * The servlet alias (mandatory property).
      */
@@ -77,6 +104,15 @@ public class HttpFeedWriter extends AbstractFeedWriter {
     @ServiceProperty(name = FeedWriter.FEED_URL_PROPERTY)
     private String m_url;
 
+    /**
+     * The public URL of the feed, used as feed URL and to build the paging
+     * links. By default, the URL is computed from the host name and the
+     * port of the HTTP service. The links never depend on the
+     * <code>Host</code> header sent by the clients.
+     */
+    @Property(name = "org.ow2.chameleon.syndication.feed.base.url")
+    private String m_baseUrl;
+
     /**
      * The feed type / format. Supported values are:
      * <ul>
@@ -89,6 +125,8 @@ public class HttpFeedWriter extends AbstractFeedWriter {
      * <li>rss_2.0 (default value)</li>
      * <li>atom_0.3</li>
      * </ul>
+     * This is the format served by default: clients can also request RSS
+     * 2.0, Atom 1.0 or JSON Feed with the <code>Accept</code> header.
      */
     @Property(name = "org.ow2.chameleon.syndication.feed.type", value = "rss_2.0")
     private String m_type;
@@ -104,6 +142,62 @@ public class HttpFeedWriter extends AbstractFeedWriter {
     @Property(name = "org.ow2.chameleon.syndication.feed.recent", value = "20")
     protected int m_recentCount;
 
+    /**
+     * The renderer of the configured feed type, served by default.
+     */
+    private FeedRenderer m_renderer;
+
+    /**
+     * Default page size of the served feed (RFC 5005 paged feed), -1 to
+     * serve all the entries (default). Clients can also request smaller
+     * pages with the <code>limit</code> parameter.
+     */
+    @Property(name = "org.ow2.chameleon.syndication.feed.page.size", value = "-1")
+    private int m_pageSize = -1;
+
+    /**
+     * Renderings of the current version, indexed by query key. The least
+     * recently used renderings are evicted.
+     */
+    private final Map<String, RenderedFeed> m_rendered = new LinkedHashMap<String, RenderedFeed>(
+            16, 0.75f, true) {
+
+        /**
+         * UUID.
+         */
+        private static final long serialVersionUID = 4336379442563431394L;
+
+        /**
+         * Evicts the least recently used rendering.
+         * @param eldest the least recently used rendering
+         * @return <code>true</code> if the cache is full
+         * @see java.util.LinkedHashMap#removeEldestEntry(java.util.Map.Entry)
+         */
+        @Override
+        protected boolean removeEldestEntry(
+                Map.Entry<String, RenderedFeed> eldest) {
+            return size() > MAX_RENDERINGS;
+        }
+    };
+
+    /**
+     * Fragment caches, indexed by format name.
+     */
+    private final Map<String, FragmentCache> m_fragments = new HashMap<String, FragmentCache>();
+
+    /**
+     * The version of the cached renderings.
+     */
+    private long m_renderedVersion = -1;
+
+    /**
+     * Prefix of the entity tags, unique to this writer instance so that tags
+     * are never reused after a restart.
+     */
+    private final String m_etagPrefix = Long.toHexString(System
+            .currentTimeMillis())
+            + "-" + Integer.toHexString(System.identityHashCode(this));
+
     /**
      * HTTP Service.
      */
@@ -141,7 +235,9 @@ public class HttpFeedWriter extends AbstractFeedWriter {
             Map<String, ?> properties) throws IOException, ServletException,
             NamespaceException {
         m_http = http;
-        if (properties.containsKey("org.osgi.service.http.port")) {
+        if (m_baseUrl != null && m_baseUrl.trim().length() > 0) {
+            m_url = m_baseUrl.trim();
+        } else if (properties.containsKey("org.osgi.service.http.port")) {
             String host = InetAddress.getLocalHost().getHostName();
             String port = (String) properties.get("org.osgi.service.http.port");
             m_url = "http://" + host + ":" + port + "/" + m_alias;
@@ -189,13 +285,50 @@ public class HttpFeedWriter extends AbstractFeedWriter {
         setRecentItemsCount(recent);
     }
 
+    /**
+     * Sets the maximum number of entries kept in the feed.
+     * @param max the maximum number of entries, -1 (default) for unbounded
+     */
+    @Property(name = "org.ow2.chameleon.syndication.feed.max.entries", value = "-1")
+    public void setMaxEntries(int max) {
+        setMaxEntriesCount(max);
+    }
+
+    /**
+     * Sets the maximum age of the entries kept in the feed.
+     * @param max the maximum age in ms, -1 (default) for unbounded
+     */
+    @Property(name = "org.ow2.chameleon.syndication.feed.max.age", value = "-1")
+    public void setMaxAge(long max) {
+        setMaxEntriesAge(max);
+    }
+
+    /**
+     * Sets the maximum size of the entry contents kept in the feed.
+     * @param max the maximum size in bytes, -1 (default) for unbounded
+     */
+    @Property(name = "org.ow2.chameleon.syndication.feed.max.bytes", value = "-1")
+    public void setMaxBytes(long max) {
+        setMaxEntriesBytes(max);
+    }
+
+    /**
+     * Sets the directory of the off-heap entry archive.
+     * @param directory the directory, not set by default (entries are kept
+     *        on the heap)
+     */
+    @Property(name = "org.ow2.chameleon.syndication.feed.archive")
+    public void setArchive(String directory) {
+        setArchiveDirectory(directory);
+    }
+
     /**
      * Gets the underlying Feed object. If not already created, this method
      * creates the feed.
      * @return the underlying feed object
-     * @see org.ow2.chameleon.syndication.rome.AbstractFeedWriter#getFeed()
+     * @see org.ow2.chameleon.syndication.rome.AbstractFeedWriter#getFeedMetadata()
      */
-    public SyndFeed getFeed() {
+    protected SyndFeed getFeedMetadata() {
         if (m_feed == null) {
             m_feed = new SyndFeedImpl();
             m_feed.setTitle(m_title);
@@ -204,16 +337,304 @@ public class HttpFeedWriter extends AbstractFeedWriter {
                     .setDescription("This feed has been created using the Chameleon"
                             + " Syndication Service");
             m_feed.setFeedType(m_type);
+            m_feed.setEncoding("UTF-8");
         }
         return m_feed;
     }
 
+    /**
+     * Gets the serialized feed. The feed is rendered on the first call
+     * following a modification, and the cached rendering is returned until
+     * the next modification. The entries are selected under the writer
+     * lock, so the rendering is consistent with concurrent modifications,
+     * but the rendering itself does not hold the lock.
+     * @return the rendered feed
+     * @throws FeedException if the feed cannot be rendered
+     */
+    public RenderedFeed getRenderedFeed() throws FeedException {
+        return getRenderedFeed(FeedQuery.ALL, getURL(), getDefaultRenderer());
+    }
+
+    /**
+     * Gets the serialized result of a query on the feed, in the configured
+     * feed type.
+     * @param query the query
+     * @param base the feed URL, used to build the paging links
+     * @return the rendered feed
+     * @throws FeedException if the feed cannot be rendered
+     */
+    public RenderedFeed getRenderedFeed(FeedQuery query, String base)
+            throws FeedException {
+        return getRenderedFeed(query, base, getDefaultRenderer());
+    }
+
+    /**
+     * Gets the renderer of the configured feed type.
+     * @return the default renderer
+     */
+    public synchronized FeedRenderer getDefaultRenderer() {
+        if (m_renderer == null) {
+            m_renderer = new RomeFeedRenderer(m_type);
+        }
+        return m_renderer;
+    }
+
+    /**
+     * Selects the renderer of a request. An explicit format (file extension
+     * or <code>format</code> parameter) wins, otherwise the
+     * <code>Accept</code> header is used. The configured feed type is used
+     * if neither selects a supported format.
+     * @param format the requested format (<code>rss</code>,
+     *        <code>atom</code> or <code>json</code>), may be
+     *        <code>null</code>
+     * @param accept the <code>Accept</code> header, may be <code>null</code>
+     * @return the renderer
+     */
+    public FeedRenderer getRenderer(String format, String accept) {
+        if ("rss".equalsIgnoreCase(format)) {
+            return RSS;
+        } else if ("atom".equalsIgnoreCase(format)) {
+            return ATOM;
+        } else if ("json".equalsIgnoreCase(format)) {
+            return JSON;
+        }
+        FeedRenderer best = getDefaultRenderer();
+        if (accept == null) {
+            return best;
+        }
+        float max = 0;
+        for (String range : accept.split(",")) {
+            String[] params = range.split(";");
+            String type = params[0].trim().toLowerCase();
+            float q = 1;
+            for (int i = 1; i < params.length; i++) {
+                String param = params[i].trim();
+                if (param.startsWith("q=")) {
+                    try {
+                        q = Float.parseFloat(param.substring(2));
+                    } catch (NumberFormatException e) {
+                        q = 0;
+                    }
+                }
+            }
+            FeedRenderer renderer;
+            if (type.equals("application/feed+json")
+                    || type.equals("application/json")) {
+                renderer = JSON;
+            } else if (type.equals("application/atom+xml")) {
+                renderer = ATOM;
+            } else if (type.equals("application/rss+xml")) {
+                renderer = RSS;
+            } else {
+                renderer = getDefaultRenderer();
+            }
+            if (q > max) {
+                max = q;
+                best = renderer;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Gets the serialized result of a query on the feed. The renderings of
+     * the current version are cached per query and format. The
+     * <code>since</code> bound of the query is replaced by the id of the
+     * first excluded entry, so that all the bounds selecting the same
+     * entries share one rendering. The entries are selected under the
+     * writer lock, but rendered outside of it.
+     * @param query the query
+     * @param base the feed URL, used to build the paging links
+     * @param renderer the renderer of the requested format
+     * @return the rendered feed
+     * @throws FeedException if the feed cannot be rendered
+     */
+    public RenderedFeed getRenderedFeed(FeedQuery query, String base,
+            FeedRenderer renderer) throws FeedException {
+        long version;
+        String key;
+        List<SyndEntry> selected;
+        List<String[]> links = new ArrayList<String[]>();
+        SyndFeed feed;
+        long lastModified;
+        int count;
+        FragmentCache cache;
+        synchronized (this) {
+            expireEntries();
+            version = getVersion();
+            if (m_renderedVersion != version) {
+                m_rendered.clear();
+                m_renderedVersion = version;
+            }
+            EntryStore store = getStore();
+            count = store.size();
+            int end = getSinceIndex(store, query);
+            query = normalize(store, query, end);
+            key = renderer.getName() + ":" + query.getKey() + "@" + base;
+            RenderedFeed rendered = m_rendered.get(key);
+            if (rendered != null) {
+                return rendered;
+            }
+
+            int size = query.getLimit() != -1 ? query.getLimit() : m_pageSize;
+            String prefix = (base == null ? "" : base)
+                    + (base != null && base.indexOf('?') != -1 ? "&" : "?");
+            if (base != null) {
+                if (query.getKey().equals(FeedQuery.ALL.getKey())) {
+                    links.add(new String[] {"self", base});
+                } else {
+                    links.add(new String[] {"self",
+                        prefix + query.toQueryString(Math.max(1,
+                                query.getPage()))});
+                }
+            }
+            if (size <= 0) {
+                selected = store.range(0, end);
+            } else {
+                int page = Math.max(1, query.getPage());
+                int last = Math.max(1, (end + size - 1) / size);
+                int from = Math.min((page - 1) * size, end);
+                selected = store.range(from, Math.min(from + size, end));
+                links.add(new String[] {"first",
+                    prefix + query.toQueryString(1)});
+                links.add(new String[] {"last",
+                    prefix + query.toQueryString(last)});
+                if (page > 1) {
+                    links.add(new String[] {"previous",
+                        prefix + query.toQueryString(Math.min(page - 1, last))});
+                }
+                if (page < last) {
+                    links.add(new String[] {"next",
+                        prefix + query.toQueryString(page + 1)});
+                }
+            }
+            feed = getFeedMetadata();
+            lastModified = getLastModified();
+            cache = m_fragments.get(renderer.getName());
+            if (cache == null) {
+                cache = new FragmentCache();
+                m_fragments.put(renderer.getName(), cache);
+            }
+        }
+
+        String etag = m_etagPrefix + "-" + version;
+        if (!query.getKey().equals(FeedQuery.ALL.getKey())
+                || renderer != getDefaultRenderer()) {
+            etag += "-" + Integer.toHexString(key.hashCode());
+        }
+        byte[] bytes;
+        synchronized (cache) {
+            bytes = renderer.render(feed, selected, links, cache);
+            if (cache.size() > 2 * count + 16) {
+                // Forget the removed entries
+                cache.retain(getEntryList());
+            }
+        }
+        RenderedFeed rendered = new RenderedFeed(version, bytes, renderer
+                .getContentType(), "\"" + etag + "\"", lastModified);
+        synchronized (this) {
+            if (m_renderedVersion == version) {
+                m_rendered.put(key, rendered);
+            }
+        }
+        return rendered;
+    }
+
+    /**
+     * Gets the entries of the feed.
+     * @return the entries, most recent first
+     */
+    private synchronized List<SyndEntry> getEntryList() {
+        return getStore().toList();
+    }
+
+    /**
+     * Replaces the <code>since</code> bound of a query by the id of the
+     * first excluded entry. The bound is removed if no entry is excluded.
+     * @param store the entries
+     * @param query the query
+     * @param end the index of the first excluded entry
+     * @return the normalized query
+     */
+    private FeedQuery normalize(EntryStore store, FeedQuery query, int end) {
+        if (query.getSince() == null) {
+            return query;
+        }
+        if (end >= store.size()) {
+            return query.withSince(null);
+        }
+        SyndEntry excluded = store.range(end, end + 1).get(0);
+        String id = excluded.getUri();
+        if (id == null) {
+            id = excluded.getLink();
+        }
+        if (id == null) {
+            return query;
+        }
+        return query.withSince(id);
+    }
+
+    /**
+     * Gets the index of the first entry excluded by the <code>since</code>
+     * parameter of a query. Entries are sorted from the most recent, so
+     * only the returned entries are visited.
+     * @param store the entries
+     * @param query the query
+     * @return the number of entries newer than the lower bound of the query
+     */
+    private int getSinceIndex(EntryStore store, FeedQuery query) {
+        if (query.getSince() == null) {
+            return store.size();
+        }
+        Date date = query.getSinceDate();
+        int i = 0;
+        for (EntryStore.Node node = store.first(); node != null; node = node
+                .next()) {
+            SyndEntry entry = node.getEntry();
+            if (date != null) {
+                Date d = entry.getPublishedDate();
+                if (d == null) {
+                    d = entry.getUpdatedDate();
+                }
+                if (d != null && !d.after(date)) {
+                    return i;
+                }
+            } else if (query.getSince().equals(entry.getUri())
+                    || query.getSince().equals(entry.getLink())) {
+                return i;
+            }
+            i++;
+        }
+        return i;
+    }
+
+    /**
+     * Gets the modification time of the feed, i.e. the date of the newest
+     * entry.
+     * @return the time in ms, -1 if the feed is empty
+     */
+    private long getLastModified() {
+        FeedEntry last = getLastEntry();
+        if (last == null || last.publicationDate() == null) {
+            return -1;
+        }
+        return last.publicationDate().getTime();
+    }
+
     /**
      * Initializes the feed.
      */
     @Validate
     public void init() {
-        getFeed();
+        getFeedMetadata();
+    }
+
+    /**
+     * Stops the writer. The entry archive is closed.
+     */
+    @Invalidate
+    public void stop() {
+        closeArchive();
     }
 
     /**
@@ -254,45 +675,109 @@ public class HttpFeedWriter extends AbstractFeedWriter {
         private static final long serialVersionUID = -8582988702950725976L;
 
         /**
-         * Dump the feed according to the chosen type.
+         * Dump the feed according to the chosen type. The feed is served
+         * from the rendering cached for the current feed version.
          * @param req the request
          * @param resp the response
          * @throws ServletException if the feed cannot be dumped correctly
-         * @throws IOException if the servlet writer cannot be used.
+         * @throws IOException if the servlet output stream cannot be used.
          * @see javax.servlet.http.HttpServlet#doGet(javax.servlet.http.HttpServletRequest,
          *      javax.servlet.http.HttpServletResponse)
          */
         @Override
         protected void doGet(HttpServletRequest req, HttpServletResponse resp)
                 throws ServletException, IOException {
-            try {
-                getAllEntries(resp.getWriter());
-            } catch (FeedException e) {
-                throw new ServletException("Cannot render the feed", e);
-            }
+            serve(req, resp, true);
         }
 
         /**
-         * Writes all entries to the given writer. This method switches the
-         * Thread Context ClassLoaded and restores it after the dump.
-         * @param writer the writer
-         * @throws IOException if the feed cannot be dumped correctly.
-         * @throws FeedException if the feed is incorrect.
+         * Sends the headers of the feed, without the body.
+         * @param req the request
+         * @param resp the response
+         * @throws ServletException if the feed cannot be rendered correctly
+         * @throws IOException if the response cannot be written
+         * @see javax.servlet.http.HttpServlet#doHead(javax.servlet.http.HttpServletRequest,
+         *      javax.servlet.http.HttpServletResponse)
+         */
+        @Override
+        protected void doHead(HttpServletRequest req, HttpServletResponse resp)
+                throws ServletException, IOException {
+            serve(req, resp, false);
+        }
+
+        /**
+         * Serves the feed. Sends the validators, and a
+         * <code>304 Not Modified</code> response if the client already has
+         * the current version. The format is negotiated with the
+         * <code>Accept</code> header, or selected by the extension of the
+         * path or the <code>format</code> parameter. The gzip variant is
+         * sent to the clients accepting it. Large bodies are sent with the
+         * non-blocking I/O of Servlet 3.1 when the container supports it.
+         * @param req the request
+         * @param resp the response
+         * @param body whether the body is sent
+         * @throws ServletException if the feed cannot be rendered correctly
+         * @throws IOException if the response cannot be written
          */
-        private void getAllEntries(Writer writer) throws IOException,
-                FeedException {
-            ClassLoader bundle = this.getClass().getClassLoader();
-            ClassLoader thread = Thread.currentThread().getContextClassLoader();
+        private void serve(HttpServletRequest req, HttpServletResponse resp,
+                boolean body) throws ServletException, IOException {
+            RenderedFeed feed;
             try {
-                // Switch
-                Thread.currentThread().setContextClassLoader(bundle);
-                SyndFeedOutput output = new SyndFeedOutput();
-                output.output(getFeed(), writer, true);
-                writer.flush();
-                writer.close();
-            } finally {
-                // Restore
-                Thread.currentThread().setContextClassLoader(thread);
+                FeedQuery query = FeedQuery.parse(req.getParameter("page"), req
+                        .getParameter("limit"), req.getParameter("since"));
+                String format = req.getParameter("format");
+                String path = req.getPathInfo();
+                if (format == null && path != null
+                        && path.lastIndexOf('.') != -1) {
+                    format = path.substring(path.lastIndexOf('.') + 1);
+                }
+                FeedRenderer renderer = getRenderer(format, req
+                        .getHeader("Accept"));
+                String base = getURL();
+                if ("rss".equalsIgnoreCase(format)
+                        || "atom".equalsIgnoreCase(format)
+                        || "json".equalsIgnoreCase(format)) {
+                    // Explicit format, kept in the paging links.
+                    base += "?format=" + format.toLowerCase();
+                }
+                feed = getRenderedFeed(query, base, renderer);
+            } catch (FeedException e) {
+                throw new ServletException("Cannot render the feed", e);
+            }
+            boolean gzip = RenderedFeed.acceptsGzip(req
+                    .getHeader("Accept-Encoding"));
+            resp.setHeader("Vary", "Accept, Accept-Encoding");
+            if (gzip) {
+                resp.setHeader("ETag", feed.getGzipETag());
+            } else {
+                resp.setHeader("ETag", feed.getETag());
+            }
+            if (feed.getLastModified() >= 0) {
+                resp.setDateHeader("Last-Modified", feed.getLastModified());
+            }
+            long since;
+            try {
+                since = req.getDateHeader("If-Modified-Since");
+            } catch (IllegalArgumentException e) {
+                since = -1;
+            }
+            if (feed.isNotModified(req.getHeader("If-None-Match"), since)) {
+                resp.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+                return;
+            }
+            byte[] bytes;
+            if (gzip) {
+                bytes = feed.getGzipBytes();
+                resp.setHeader("Content-Encoding", "gzip");
+            } else {
+                bytes = feed.getBytes();
+            }
+            resp.setContentType(feed.getContentType());
+            resp.setContentLength(bytes.length);
+            if (body && !AsyncFeedSender.send(req, resp, bytes)) {
+                OutputStream out = resp.getOutputStream();
+                out.write(bytes);
+                out.close();
             }
         }
     }
@@ -0,0 +1,234 @@
+/*
+ * Copyright 2009 OW2 Chameleon
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ow2.chameleon.syndication.rome;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import com.sun.syndication.feed.synd.SyndCategory;
+import com.sun.syndication.feed.synd.SyndEntry;
+import com.sun.syndication.feed.synd.SyndFeed;
+import com.sun.syndication.io.FeedException;
+import com.sun.syndication.io.impl.DateParser;
+
+/**
+ * Renders feeds in the JSON Feed 1.1 format (https://jsonfeed.org). The
+ * JSON is written directly, without any intermediate object tree, and each
+ * item is serialized only once.
+ */
+public class JsonFeedRenderer implements FeedRenderer {
+
+    /**
+     * The format name.
+     */
+    public static final String NAME = "json";
+
+    /**
+     * The JSON Feed version URL.
+     */
+    private static final String VERSION = "https://jsonfeed.org/version/1.1";
+
+    /**
+     * Gets the format name.
+     * @return {@link JsonFeedRenderer#NAME}
+     * @see org.ow2.chameleon.syndication.rome.FeedRenderer#getName()
+     */
+    public String getName() {
+        return NAME;
+    }
+
+    /**
+     * Gets the JSON Feed content type.
+     * @return the content type
+     * @see org.ow2.chameleon.syndication.rome.FeedRenderer#getContentType()
+     */
+    public String getContentType() {
+        return "application/feed+json; charset=UTF-8";
+    }
+
+    /**
+     * Serializes a selection of entries. The <code>self</code> link is
+     * written as <code>feed_url</code>, and the <code>next</code> paging
+     * link as <code>next_url</code>. JSON Feed defines no other paging
+     * link. Items are serialized once, and then copied from the cache.
+     * @param feed the feed
+     * @param entries the selected entries
+     * @param links the paging links (relation and URL)
+     * @param cache the fragment cache
+     * @return the serialized feed
+     * @throws FeedException if the feed cannot be rendered
+     * @see org.ow2.chameleon.syndication.rome.FeedRenderer#render(SyndFeed,
+     *      List, List, FragmentCache)
+     */
+    public byte[] render(SyndFeed feed, List<SyndEntry> entries,
+            List<String[]> links, FragmentCache cache) throws FeedException {
+        try {
+            StringBuilder json = new StringBuilder(256);
+            json.append("{\"version\":");
+            string(json, VERSION);
+            member(json, "title", feed.getTitle());
+            member(json, "home_page_url", feed.getLink());
+            member(json, "description", feed.getDescription());
+            for (String[] link : links) {
+                if (link[0].equals("self")) {
+                    member(json, "feed_url", link[1]);
+                } else if (link[0].equals("next")) {
+                    member(json, "next_url", link[1]);
+                }
+            }
+            json.append(",\"items\":[");
+            byte[] header = json.toString().getBytes("UTF-8");
+
+            List<byte[]> fragments = new ArrayList<byte[]>(entries.size());
+            int length = header.length + entries.size() + 2;
+            for (SyndEntry entry : entries) {
+                byte[] fragment = cache.get(entry);
+                if (fragment == null) {
+                    fragment = renderEntry(entry);
+                    cache.put(entry, fragment);
+                }
+                fragments.add(fragment);
+                length += fragment.length;
+            }
+            ByteArrayOutputStream out = new ByteArrayOutputStream(length);
+            out.write(header);
+            for (int i = 0; i < fragments.size(); i++) {
+                if (i > 0) {
+                    out.write(',');
+                }
+                out.write(fragments.get(i));
+            }
+            out.write(']');
+            out.write('}');
+            return out.toByteArray();
+        } catch (IOException e) {
+            throw new FeedException("Cannot render the feed", e);
+        }
+    }
+
+    /**
+     * Serializes an item.
+     * @param entry the entry
+     * @return the JSON object of the item
+     * @throws UnsupportedEncodingException if UTF-8 is not supported
+     */
+    @SuppressWarnings("unchecked")
+    private byte[] renderEntry(SyndEntry entry)
+            throws UnsupportedEncodingException {
+        StringBuilder json = new StringBuilder(512);
+        json.append("{\"id\":");
+        String id = entry.getUri();
+        if (id == null) {
+            id = entry.getLink();
+        }
+        string(json, id == null ? "" : id);
+        member(json, "url", entry.getLink());
+        member(json, "title", entry.getTitle());
+        if (entry.getDescription() != null) {
+            member(json, "content_html", entry.getDescription().getValue());
+        }
+        member(json, "date_published", entry.getPublishedDate());
+        member(json, "date_modified", entry.getUpdatedDate());
+        if (entry.getAuthor() != null && entry.getAuthor().length() > 0) {
+            json.append(",\"authors\":[{\"name\":");
+            string(json, entry.getAuthor());
+            json.append("}]");
+        }
+        List<SyndCategory> categories = entry.getCategories();
+        if (categories != null && !categories.isEmpty()) {
+            json.append(",\"tags\":[");
+            for (int i = 0; i < categories.size(); i++) {
+                if (i > 0) {
+                    json.append(',');
+                }
+                string(json, categories.get(i).getName());
+            }
+            json.append(']');
+        }
+        json.append('}');
+        return json.toString().getBytes("UTF-8");
+    }
+
+    /**
+     * Appends a string member, if the value is set.
+     * @param json the JSON buffer
+     * @param name the member name
+     * @param value the value, may be <code>null</code>
+     */
+    private static void member(StringBuilder json, String name, String value) {
+        if (value != null) {
+            json.append(",\"").append(name).append("\":");
+            string(json, value);
+        }
+    }
+
+    /**
+     * Appends a RFC 3339 date member, if the value is set.
+     * @param json the JSON buffer
+     * @param name the member name
+     * @param value the value, may be <code>null</code>
+     */
+    private static void member(StringBuilder json, String name, Date value) {
+        if (value != null) {
+            member(json, name, DateParser.formatW3CDateTime(value));
+        }
+    }
+
+    /**
+     * Appends a JSON string.
+     * @param json the JSON buffer
+     * @param s the string
+     */
+    static void string(StringBuilder json, String s) {
+        json.append('"');
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            switch (c) {
+                case '"':
+                    json.append("\\\"");
+                    break;
+                case '\\':
+                    json.append("\\\\");
+                    break;
+                case '\n':
+                    json.append("\\n");
+                    break;
+                case '\r':
+                    json.append("\\r");
+                    break;
+                case '\t':
+                    json.append("\\t");
+                    break;
+                default:
+                    if (c < 0x20 || c == 0x2028 || c == 0x2029) {
+                        String hex = Integer.toHexString(c);
+                        json.append("\\u");
+                        for (int j = hex.length(); j < 4; j++) {
+                            json.append('0');
+                        }
+                        json.append(hex);
+                    } else {
+                        json.append(c);
+                    }
+            }
+        }
+        json.append('"');
+    }
+
+}
@@ -15,6 +15,7 @@
 package org.ow2.chameleon.syndication.rome;
 
 import org.apache.felix.ipojo.annotations.Component;
+import org.apache.felix.ipojo.annotations.Invalidate;
 import org.apache.felix.ipojo.annotations.Property;
 import org.apache.felix.ipojo.annotations.Provides;
 import org.apache.felix.ipojo.annotations.Requires;
@@ -107,12 +108,49 @@ public class MemoryFeedWriter extends AbstractFeedWriter {
         setRecentItemsCount(recent);
     }
 
+    /**
+     * Sets the maximum number of entries kept in the feed.
+     * @param max the maximum number of entries, -1 (default) for unbounded
+     */
+    @Property(name = "org.ow2.chameleon.syndication.feed.max.entries", value = "-1")
+    public void setMaxEntries(int max) {
+        setMaxEntriesCount(max);
+    }
+
+    /**
+     * Sets the maximum age of the entries kept in the feed.
+     * @param max the maximum age in ms, -1 (default) for unbounded
+     */
+    @Property(name = "org.ow2.chameleon.syndication.feed.max.age", value = "-1")
+    public void setMaxAge(long max) {
+        setMaxEntriesAge(max);
+    }
+
+    /**
+     * Sets the maximum size of the entry contents kept in the feed.
+     * @param max the maximum size in bytes, -1 (default) for unbounded
+     */
+    @Property(name = "org.ow2.chameleon.syndication.feed.max.bytes", value = "-1")
+    public void setMaxBytes(long max) {
+        setMaxEntriesBytes(max);
+    }
+
+    /**
+     * Sets the directory of the off-heap entry archive.
+     * @param directory the directory, not set by default (entries are kept
+     *        on the heap)
+     */
+    @Property(name = "org.ow2.chameleon.syndication.feed.archive")
+    public void setArchive(String directory) {
+        setArchiveDirectory(directory);
+    }
+
     /**
      * Gets the underlying feed. Creates it if not already created.
      * @return the managed feed
-     * @see org.ow2.chameleon.syndication.rome.AbstractFeedWriter#getFeed()
+     * @see org.ow2.chameleon.syndication.rome.AbstractFeedWriter#getFeedMetadata()
      */
-    public SyndFeed getFeed() {
+    protected SyndFeed getFeedMetadata() {
         if (m_feed == null) {
             m_feed = new SyndFeedImpl();
             m_feed.setTitle(m_title);
@@ -130,7 +168,15 @@ public class MemoryFeedWriter extends AbstractFeedWriter {
      */
     @Validate
     public void init() {
-        getFeed();
+        getFeedMetadata();
+    }
+
+    /**
+     * Stops the writer. The entry archive is closed.
+     */
+    @Invalidate
+    public void stop() {
+        closeArchive();
     }
 
     /**
@@ -0,0 +1,334 @@
+/*
+ * Copyright 2009 OW2 Chameleon
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ow2.chameleon.syndication.rome;
+
+import java.util.Random;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Polling scheduler shared by the feed readers of the bundle. Readers
+ * register a {@link Task} instead of owning a thread: the due times are kept
+ * in the priority queue of a {@link ScheduledThreadPoolExecutor}, and a
+ * bounded pool of workers executes the polls. The number of threads therefore
+ * does not depend on the number of polled feeds.
+ * <p>
+ * The size of the shared pool is set with the
+ * <code>org.ow2.chameleon.syndication.scheduler.workers</code> system
+ * property (4 by default).
+ * <p>
+ * The shared instance is reference counted: components {@link #acquire()}
+ * it when they start and {@link #release(PollingScheduler)} it when they
+ * stop. The workers are stopped when the last user releases the scheduler,
+ * so that no thread keeps the bundle class loader alive once the bundle is
+ * updated or stopped. The next acquisition creates a new pool.
+ */
+public class PollingScheduler {
+
+    /**
+     * System property setting the number of workers of the shared scheduler.
+     */
+    public static final String WORKERS_PROPERTY = "org.ow2.chameleon.syndication.scheduler.workers";
+
+    /**
+     * Default number of workers.
+     */
+    public static final int DEFAULT_WORKERS = 4;
+
+    /**
+     * The shared instance, created on first use.
+     */
+    private static PollingScheduler s_default;
+
+    /**
+     * The number of users of the shared instance.
+     */
+    private static int s_users;
+
+    /**
+     * The executor holding the due times.
+     */
+    private final ScheduledThreadPoolExecutor m_executor;
+
+    /**
+     * Random generator used to spread the first polls.
+     */
+    private final Random m_random = new Random();
+
+    /**
+     * Logger.
+     */
+    private Logger m_logger = LoggerFactory.getLogger(this.toString());
+
+    /**
+     * Acquires the scheduler shared by all the components of the bundle. The
+     * scheduler must be released with {@link #release(PollingScheduler)}
+     * once the caller does not schedule tasks anymore.
+     * @return the shared scheduler
+     */
+    public static synchronized PollingScheduler acquire() {
+        if (s_default == null) {
+            int workers = DEFAULT_WORKERS;
+            String value = System.getProperty(WORKERS_PROPERTY);
+            if (value != null) {
+                try {
+                    workers = Integer.parseInt(value.trim());
+                } catch (NumberFormatException e) {
+                    // Keep the default value.
+                }
+            }
+            s_default = new PollingScheduler(workers);
+        }
+        s_users++;
+        return s_default;
+    }
+
+    /**
+     * Releases the shared scheduler. The scheduler is shut down when its
+     * last user releases it.
+     * @param scheduler the scheduler returned by {@link #acquire()}
+     */
+    public static synchronized void release(PollingScheduler scheduler) {
+        if (scheduler == null || scheduler != s_default) {
+            // Already shut down.
+            return;
+        }
+        s_users--;
+        if (s_users <= 0) {
+            s_users = 0;
+            s_default = null;
+            scheduler.shutdown();
+        }
+    }
+
+    /**
+     * Creates a {@link PollingScheduler}.
+     * @param workers the number of worker threads
+     */
+    public PollingScheduler(int workers) {
+        if (workers < 1) {
+            throw new IllegalArgumentException(
+                    "The scheduler needs at least one worker");
+        }
+        m_executor = new ScheduledThreadPoolExecutor(workers,
+                new PollerThreadFactory());
+        m_executor.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+    }
+
+    /**
+     * Registers a periodic task. The first execution is spread randomly
+     * between the half of the period and the period, so that readers
+     * created together do not poll at the same moment.
+     * @param task the task
+     * @param period the polling period in ms
+     * @return the registration, used to cancel the task
+     */
+    public Registration register(Task task, long period) {
+        long spread = period / 2;
+        long delay = period - spread;
+        if (spread > 0) {
+            synchronized (m_random) {
+                delay += (long) (m_random.nextDouble() * spread);
+            }
+        }
+        return schedule(task, delay);
+    }
+
+    /**
+     * Registers a periodic task resumed from a saved state. The first
+     * execution happens after the given delay, or, if the task is already
+     * due, is spread randomly over the first half of the period, so that
+     * restarted readers do not all poll at the same moment.
+     * @param task the task
+     * @param delay the delay before the task is due in ms, may be negative
+     * @param period the polling period in ms
+     * @return the registration, used to cancel the task
+     */
+    public Registration resume(Task task, long delay, long period) {
+        if (delay <= 0) {
+            delay = 0;
+            if (period > 1) {
+                synchronized (m_random) {
+                    delay = (long) (m_random.nextDouble() * (period / 2));
+                }
+            }
+        }
+        return schedule(task, delay);
+    }
+
+    /**
+     * Registers a task executed after the given delay. The task is then
+     * re-scheduled according to the delay it returns.
+     * @param task the task
+     * @param delay the delay of the first execution in ms
+     * @return the registration, used to cancel the task
+     */
+    public Registration schedule(Task task, long delay) {
+        Registration registration = new Registration(task);
+        registration.next(delay);
+        return registration;
+    }
+
+    /**
+     * Gets the number of worker threads.
+     * @return the number of workers
+     */
+    public int getWorkerCount() {
+        return m_executor.getCorePoolSize();
+    }
+
+    /**
+     * Stops the scheduler. Registered tasks are not executed anymore.
+     * Executions in progress complete.
+     */
+    public void shutdown() {
+        m_executor.shutdown();
+    }
+
+    /**
+     * Checks whether the scheduler is shut down.
+     * @return <code>true</code> if the scheduler does not execute tasks
+     *         anymore
+     */
+    public boolean isShutdown() {
+        return m_executor.isShutdown();
+    }
+
+    /**
+     * A task executed by the scheduler.
+     */
+    public interface Task {
+
+        /**
+         * Executes the task.
+         * @return the delay in ms before the next execution, or a negative
+         *         value to stop the task.
+         */
+        long poll();
+
+    }
+
+    /**
+     * Registration of a task. Keeps the pending execution of the task.
+     */
+    public final class Registration implements Runnable {
+
+        /**
+         * The task.
+         */
+        private final Task m_task;
+
+        /**
+         * The pending execution.
+         */
+        private ScheduledFuture< ? > m_future;
+
+        /**
+         * Is the registration cancelled.
+         */
+        private boolean m_cancelled;
+
+        /**
+         * Creates a {@link Registration}.
+         * @param task the task
+         */
+        private Registration(Task task) {
+            m_task = task;
+        }
+
+        /**
+         * Schedules the next execution.
+         * @param delay the delay in ms
+         */
+        private synchronized void next(long delay) {
+            if (m_cancelled || delay < 0 || m_executor.isShutdown()) {
+                return;
+            }
+            try {
+                m_future = m_executor.schedule(this, delay,
+                        TimeUnit.MILLISECONDS);
+            } catch (RejectedExecutionException e) {
+                // Shut down in the meantime.
+                m_cancelled = true;
+            }
+        }
+
+        /**
+         * Executes the task and schedules the next execution.
+         * @see java.lang.Runnable#run()
+         */
+        public void run() {
+            long delay;
+            try {
+                delay = m_task.poll();
+            } catch (RuntimeException e) {
+                m_logger.error("Polling task failed, task stopped", e);
+                delay = -1;
+            }
+            next(delay);
+        }
+
+        /**
+         * Cancels the task. The task is not executed anymore.
+         */
+        public synchronized void cancel() {
+            m_cancelled = true;
+            if (m_future != null) {
+                m_future.cancel(false);
+            }
+        }
+
+        /**
+         * Checks whether the registration was cancelled.
+         * @return <code>true</code> if the registration was cancelled
+         */
+        public synchronized boolean isCancelled() {
+            return m_cancelled;
+        }
+
+    }
+
+    /**
+     * Creates the daemon worker threads.
+     */
+    private static class PollerThreadFactory implements ThreadFactory {
+
+        /**
+         * Thread counter.
+         */
+        private final AtomicInteger m_count = new AtomicInteger();
+
+        /**
+         * Creates a new worker thread.
+         * @param r the runnable
+         * @return the thread
+         * @see java.util.concurrent.ThreadFactory#newThread(java.lang.Runnable)
+         */
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "syndication-poller-"
+                    + m_count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+
+}
@@ -0,0 +1,276 @@
+/*
+ * Copyright 2009 OW2 Chameleon
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ow2.chameleon.syndication.rome;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+
+import org.ow2.chameleon.syndication.FeedEntry;
+
+/**
+ * Local store of the reader states, so that restarted readers resume where
+ * they stopped: validators, seen entries and last poll time. Each feed has
+ * its own file in the store directory, named after a hash of the feed URL.
+ * <p>
+ * The time of the last poll is the modification time of the file: polls
+ * answered with <code>304 Not Modified</code> only touch the file.
+ */
+public class ReaderStateStore {
+
+    /**
+     * System property setting the default store directory. If not set,
+     * reader states are not saved.
+     */
+    public static final String DIRECTORY_PROPERTY = "org.ow2.chameleon.syndication.state.dir";
+
+    /**
+     * Magic number of the state files.
+     */
+    private static final int MAGIC = 0x53594e53;
+
+    /**
+     * Format version of the state files. Version 2 adds the payload length
+     * and checksum to the header.
+     */
+    private static final int VERSION = 2;
+
+    /**
+     * Size of the header: magic, version, payload length and CRC-32.
+     */
+    private static final int HEADER_SIZE = 16;
+
+    /**
+     * Minimal size of an encoded entry: five string lengths, the date and
+     * the number of categories.
+     */
+    private static final int ENTRY_MIN_SIZE = 5 * 4 + 8 + 4;
+
+    /**
+     * The store directory.
+     */
+    private final File m_directory;
+
+    /**
+     * Creates a {@link ReaderStateStore}.
+     * @param directory the store directory, created if needed
+     */
+    public ReaderStateStore(File directory) {
+        m_directory = directory;
+    }
+
+    /**
+     * Gets the file storing the state of a feed.
+     * @param url the feed url
+     * @return the state file
+     */
+    public File getFile(String url) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < url.length(); i++) {
+            h = (h ^ url.charAt(i)) * 0x100000001b3L;
+        }
+        return new File(m_directory, Long.toHexString(h) + ".state");
+    }
+
+    /**
+     * Loads the state of a feed. The file is read in memory and its checksum
+     * verified before the state is decoded.
+     * @param url the feed url
+     * @return the state, <code>null</code> if the feed has no state
+     * @throws IOException if the state file cannot be read or is corrupted
+     */
+    public State load(String url) throws IOException {
+        File file = getFile(url);
+        if (!file.isFile()) {
+            return null;
+        }
+        long size = file.length();
+        if (size < HEADER_SIZE || size > Integer.MAX_VALUE) {
+            throw new IOException("Invalid state file " + file);
+        }
+        byte[] bytes = new byte[(int) size];
+        DataInputStream in = new DataInputStream(new FileInputStream(file));
+        try {
+            in.readFully(bytes);
+        } finally {
+            in.close();
+        }
+        in = new DataInputStream(new ByteArrayInputStream(bytes));
+        if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+            throw new IOException("Invalid state file " + file);
+        }
+        int length = in.readInt();
+        int crc = in.readInt();
+        CRC32 checksum = new CRC32();
+        checksum.update(bytes, HEADER_SIZE, bytes.length - HEADER_SIZE);
+        if (length != bytes.length - HEADER_SIZE
+                || crc != (int) checksum.getValue()) {
+            throw new IOException("Corrupted state file " + file);
+        }
+        if (!url.equals(EntryCodec.readString(in))) {
+            // Hash collision
+            return null;
+        }
+        State state = new State();
+        state.m_etag = EntryCodec.readString(in);
+        state.m_lastModified = EntryCodec.readString(in);
+        state.m_title = EntryCodec.readString(in);
+        int count = EntryCodec.readCount(in, ENTRY_MIN_SIZE);
+        state.m_entries = new ArrayList<FeedEntry>(count);
+        for (int i = 0; i < count; i++) {
+            state.m_entries.add(EntryCodec.read(in));
+        }
+        count = EntryCodec.readCount(in, 12);
+        state.m_keys = new long[count];
+        state.m_versions = new int[count];
+        for (int i = 0; i < count; i++) {
+            state.m_keys[i] = in.readLong();
+            state.m_versions[i] = in.readInt();
+        }
+        state.m_lastPoll = file.lastModified();
+        return state;
+    }
+
+    /**
+     * Saves the state of a feed. The state is written in a temporary file,
+     * synced to the disk and renamed once complete with
+     * {@link FileReplacer}, so a crash never leaves a truncated state. A checksum protects the state against other
+     * corruptions.
+     * @param url the feed url
+     * @param state the state
+     * @throws IOException if the state cannot be written
+     */
+    public void save(String url, State state) throws IOException {
+        if (!m_directory.isDirectory() && !m_directory.mkdirs()) {
+            throw new IOException("Cannot create the state directory "
+                    + m_directory);
+        }
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        DataOutputStream data = new DataOutputStream(buffer);
+        EntryCodec.writeString(data, url);
+        EntryCodec.writeString(data, state.m_etag);
+        EntryCodec.writeString(data, state.m_lastModified);
+        EntryCodec.writeString(data, state.m_title);
+        data.writeInt(state.m_entries.size());
+        for (FeedEntry entry : state.m_entries) {
+            EntryCodec.write(data, entry);
+        }
+        data.writeInt(state.m_keys.length);
+        for (int i = 0; i < state.m_keys.length; i++) {
+            data.writeLong(state.m_keys[i]);
+            data.writeInt(state.m_versions[i]);
+        }
+        data.flush();
+        byte[] payload = buffer.toByteArray();
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+
+        File file = getFile(url);
+        File tmp = new File(m_directory, file.getName() + ".tmp");
+        FileOutputStream stream = new FileOutputStream(tmp);
+        try {
+            DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(stream));
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(payload.length);
+            out.writeInt((int) crc.getValue());
+            out.write(payload);
+            out.flush();
+            stream.getChannel().force(true);
+        } finally {
+            stream.close();
+        }
+        FileReplacer.replace(tmp, file);
+        file.setLastModified(state.m_lastPoll);
+    }
+
+    /**
+     * Records a poll that did not change the state of a feed.
+     * @param url the feed url
+     * @param time the time of the poll
+     */
+    public void touch(String url, long time) {
+        getFile(url).setLastModified(time);
+    }
+
+    /**
+     * State of a reader.
+     */
+    public static class State {
+
+        /**
+         * ETag validator.
+         */
+        String m_etag;
+
+        /**
+         * Last-Modified validator.
+         */
+        String m_lastModified;
+
+        /**
+         * Time of the last successful poll.
+         */
+        long m_lastPoll;
+
+        /**
+         * Feed title.
+         */
+        String m_title;
+
+        /**
+         * Entries of the feed.
+         */
+        List<FeedEntry> m_entries;
+
+        /**
+         * Identity hashes of the seen entries.
+         */
+        long[] m_keys;
+
+        /**
+         * Content hashes of the seen entries.
+         */
+        int[] m_versions;
+
+        /**
+         * Gets the time of the last successful poll.
+         * @return the time in ms
+         */
+        public long getLastPoll() {
+            return m_lastPoll;
+        }
+
+        /**
+         * Gets the saved entries.
+         * @return the entries
+         */
+        public List<FeedEntry> getEntries() {
+            return m_entries;
+        }
+
+    }
+
+}
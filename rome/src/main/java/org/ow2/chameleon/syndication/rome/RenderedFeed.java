@@ -0,0 +1,217 @@
+/*
+ * Copyright 2009 OW2 Chameleon
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ow2.chameleon.syndication.rome;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Serialized form of a version of a feed. Rendered once per feed version
+ * and shared by all the requests served for this version. The gzip variant
+ * is compressed on the first request accepting it, and then shared too.
+ */
+public final class RenderedFeed {
+
+    /**
+     * The rendered feed version.
+     */
+    private final long m_version;
+
+    /**
+     * The serialized feed.
+     */
+    private final byte[] m_bytes;
+
+    /**
+     * The content type of the serialized feed.
+     */
+    private final String m_contentType;
+
+    /**
+     * The strong entity tag of the rendered version.
+     */
+    private final String m_etag;
+
+    /**
+     * The modification time of the feed (date of the newest entry) in ms,
+     * truncated to the second, -1 if unknown.
+     */
+    private final long m_lastModified;
+
+    /**
+     * The gzip variant of the serialized feed, <code>null</code> if not yet
+     * compressed.
+     */
+    private byte[] m_gzip;
+
+    /**
+     * Creates a {@link RenderedFeed}.
+     * @param version the feed version
+     * @param bytes the serialized feed
+     * @param contentType the content type
+     * @param etag the entity tag, including the quotes
+     * @param lastModified the modification time in ms, -1 if unknown
+     */
+    public RenderedFeed(long version, byte[] bytes, String contentType,
+            String etag, long lastModified) {
+        m_version = version;
+        m_bytes = bytes;
+        m_contentType = contentType;
+        m_etag = etag;
+        if (lastModified < 0) {
+            m_lastModified = -1;
+        } else {
+            m_lastModified = lastModified - lastModified % 1000;
+        }
+    }
+
+    /**
+     * Gets the rendered feed version.
+     * @return the version
+     */
+    public long getVersion() {
+        return m_version;
+    }
+
+    /**
+     * Gets the serialized feed. The returned array is shared and must not be
+     * modified.
+     * @return the serialized feed
+     */
+    public byte[] getBytes() {
+        return m_bytes;
+    }
+
+    /**
+     * Gets the gzip variant of the serialized feed. The feed is compressed
+     * on the first call. The returned array is shared and must not be
+     * modified.
+     * @return the compressed feed
+     */
+    public synchronized byte[] getGzipBytes() {
+        if (m_gzip == null) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream(
+                    m_bytes.length / 4 + 64);
+            try {
+                GZIPOutputStream gzip = new GZIPOutputStream(out);
+                gzip.write(m_bytes);
+                gzip.close();
+            } catch (IOException e) {
+                // Cannot happen with a byte array stream.
+                throw new IllegalStateException(e);
+            }
+            m_gzip = out.toByteArray();
+        }
+        return m_gzip;
+    }
+
+    /**
+     * Gets the entity tag of the gzip variant. Variants of a same version
+     * have different strong tags.
+     * @return the strong entity tag of the gzip variant, including the
+     *         quotes
+     */
+    public String getGzipETag() {
+        return m_etag.substring(0, m_etag.length() - 1) + "-gzip\"";
+    }
+
+    /**
+     * Checks whether a client accepts gzip-encoded responses.
+     * @param acceptEncoding the <code>Accept-Encoding</code> header, may be
+     *        <code>null</code>
+     * @return <code>true</code> if gzip is accepted
+     */
+    public static boolean acceptsGzip(String acceptEncoding) {
+        if (acceptEncoding == null) {
+            return false;
+        }
+        for (String coding : acceptEncoding.split(",")) {
+            String[] params = coding.split(";");
+            String name = params[0].trim();
+            if (name.equalsIgnoreCase("gzip") || name.equalsIgnoreCase("x-gzip")
+                    || name.equals("*")) {
+                for (int i = 1; i < params.length; i++) {
+                    String param = params[i].trim();
+                    if (param.startsWith("q=")) {
+                        try {
+                            return Float.parseFloat(param.substring(2)) > 0;
+                        } catch (NumberFormatException e) {
+                            return false;
+                        }
+                    }
+                }
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Gets the content type of the serialized feed.
+     * @return the content type
+     */
+    public String getContentType() {
+        return m_contentType;
+    }
+
+    /**
+     * Gets the entity tag of the rendered version.
+     * @return the strong entity tag, including the quotes
+     */
+    public String getETag() {
+        return m_etag;
+    }
+
+    /**
+     * Gets the modification time of the feed.
+     * @return the time in ms (second precision), -1 if unknown
+     */
+    public long getLastModified() {
+        return m_lastModified;
+    }
+
+    /**
+     * Checks whether a client already has the rendered version, according to
+     * the validators of its conditional request. As required by HTTP,
+     * <code>If-Modified-Since</code> is ignored when
+     * <code>If-None-Match</code> is present.
+     * @param ifNoneMatch the <code>If-None-Match</code> header, may be
+     *        <code>null</code>
+     * @param ifModifiedSince the <code>If-Modified-Since</code> date in ms,
+     *        -1 if not set
+     * @return <code>true</code> if a <code>304 Not Modified</code> response
+     *         can be sent
+     */
+    public boolean isNotModified(String ifNoneMatch, long ifModifiedSince) {
+        if (ifNoneMatch != null) {
+            for (String tag : ifNoneMatch.split(",")) {
+                tag = tag.trim();
+                // Weak comparison is allowed for GET and HEAD
+                if (tag.startsWith("W/")) {
+                    tag = tag.substring(2);
+                }
+                if (tag.equals("*") || tag.equals(m_etag)
+                        || tag.equals(getGzipETag())) {
+                    return true;
+                }
+            }
+            return false;
+        }
+        return ifModifiedSince >= 0 && m_lastModified >= 0
+                && m_lastModified <= ifModifiedSince;
+    }
+
+}
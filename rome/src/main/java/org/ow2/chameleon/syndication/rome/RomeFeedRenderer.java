@@ -0,0 +1,263 @@
+/*
+ * Copyright 2009 OW2 Chameleon
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ow2.chameleon.syndication.rome;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.jdom.Document;
+import org.jdom.Element;
+import org.jdom.Namespace;
+import org.jdom.output.Format;
+import org.jdom.output.XMLOutputter;
+
+import com.sun.syndication.feed.synd.SyndEntry;
+import com.sun.syndication.feed.synd.SyndFeed;
+import com.sun.syndication.feed.synd.SyndFeedImpl;
+import com.sun.syndication.io.FeedException;
+import com.sun.syndication.io.WireFeedOutput;
+
+/**
+ * Renders the RSS and Atom formats supported by Rome. Each entry is
+ * serialized once, as a standalone <code>item</code> or <code>entry</code>
+ * element, and feeds are assembled by concatenating the cached fragments
+ * between the header and the footer of the feed. RDF based formats
+ * (<code>rss_0.90</code>, <code>rss_1.0</code>) list the items in the
+ * channel too, so they are always rendered as a whole document.
+ */
+public class RomeFeedRenderer implements FeedRenderer {
+
+    /**
+     * The Atom 1.0 namespace, used for the paging links of RSS feeds.
+     */
+    private static final Namespace ATOM_NS = Namespace.getNamespace("atom",
+            "http://www.w3.org/2005/Atom");
+
+    /**
+     * The Rome feed type (<code>rss_2.0</code>, <code>atom_1.0</code>...).
+     */
+    private final String m_type;
+
+    /**
+     * Can the feed be assembled from fragments.
+     */
+    private final boolean m_fragmented;
+
+    /**
+     * Creates a {@link RomeFeedRenderer}.
+     * @param type the Rome feed type
+     */
+    public RomeFeedRenderer(String type) {
+        m_type = type;
+        m_fragmented = type != null && !type.equals("rss_0.90")
+                && !type.equals("rss_1.0");
+    }
+
+    /**
+     * Gets the Rome feed type.
+     * @return the feed type
+     * @see org.ow2.chameleon.syndication.rome.FeedRenderer#getName()
+     */
+    public String getName() {
+        return m_type;
+    }
+
+    /**
+     * Gets the content type, according to the feed type.
+     * @return the content type
+     * @see org.ow2.chameleon.syndication.rome.FeedRenderer#getContentType()
+     */
+    public String getContentType() {
+        if (m_type != null && m_type.startsWith("atom")) {
+            return "application/atom+xml; charset=UTF-8";
+        } else {
+            return "application/rss+xml; charset=UTF-8";
+        }
+    }
+
+    /**
+     * Serializes a selection of entries. This method switches the Thread
+     * Context ClassLoader and restores it after the rendering.
+     * @param feed the feed
+     * @param entries the selected entries
+     * @param links the paging links (relation and URL)
+     * @param cache the fragment cache
+     * @return the serialized feed
+     * @throws FeedException if the feed cannot be rendered
+     * @see org.ow2.chameleon.syndication.rome.FeedRenderer#render(SyndFeed,
+     *      List, List, FragmentCache)
+     */
+    public byte[] render(SyndFeed feed, List<SyndEntry> entries,
+            List<String[]> links, FragmentCache cache) throws FeedException {
+        ClassLoader bundle = this.getClass().getClassLoader();
+        ClassLoader thread = Thread.currentThread().getContextClassLoader();
+        try {
+            // Switch
+            Thread.currentThread().setContextClassLoader(bundle);
+            ByteArrayOutputStream out;
+            if (!m_fragmented) {
+                out = new ByteArrayOutputStream();
+                Document document = toDocument(feed, entries, links);
+                new XMLOutputter(getFormat()).output(document, out);
+                return out.toByteArray();
+            }
+            byte[][] envelope = getEnvelope(feed, links, cache);
+            List<byte[]> fragments = new ArrayList<byte[]>(entries.size());
+            int length = envelope[0].length + envelope[1].length;
+            for (SyndEntry entry : entries) {
+                byte[] fragment = cache.get(entry);
+                if (fragment == null) {
+                    fragment = renderEntry(feed, entry);
+                    cache.put(entry, fragment);
+                }
+                fragments.add(fragment);
+                length += fragment.length;
+            }
+            out = new ByteArrayOutputStream(length);
+            out.write(envelope[0]);
+            for (byte[] fragment : fragments) {
+                out.write(fragment);
+            }
+            out.write(envelope[1]);
+            return out.toByteArray();
+        } catch (IOException e) {
+            throw new FeedException("Cannot render the feed", e);
+        } finally {
+            // Restore
+            Thread.currentThread().setContextClassLoader(thread);
+        }
+    }
+
+    /**
+     * Gets the header and the footer of a feed: the serialization of the
+     * feed without entries, split where the entries are inserted.
+     * @param feed the feed
+     * @param links the paging links
+     * @param cache the fragment cache
+     * @return the header and the footer
+     * @throws FeedException if the feed cannot be rendered
+     */
+    private byte[][] getEnvelope(SyndFeed feed, List<String[]> links,
+            FragmentCache cache) throws FeedException {
+        StringBuilder key = new StringBuilder();
+        for (String[] link : links) {
+            key.append(link[0]).append(' ').append(link[1]).append(' ');
+        }
+        byte[][] envelope = cache.getEnvelope(key.toString());
+        if (envelope == null) {
+            List<SyndEntry> none = Collections.emptyList();
+            String xml = new XMLOutputter(getFormat()).outputString(toDocument(
+                    feed, none, links));
+            String end;
+            if (m_type.startsWith("atom")) {
+                end = "</feed>";
+            } else {
+                end = "</channel>";
+            }
+            int index = xml.lastIndexOf(end);
+            if (index == -1) {
+                throw new FeedException("Cannot find the end of the feed");
+            }
+            try {
+                envelope = new byte[][] {
+                    xml.substring(0, index).getBytes("UTF-8"),
+                    xml.substring(index).getBytes("UTF-8")};
+            } catch (IOException e) {
+                throw new FeedException("Cannot render the feed", e);
+            }
+            cache.putEnvelope(key.toString(), envelope);
+        }
+        return envelope;
+    }
+
+    /**
+     * Serializes an entry as a standalone element.
+     * @param feed the feed
+     * @param entry the entry
+     * @return the fragment
+     * @throws FeedException if the entry cannot be rendered
+     */
+    private byte[] renderEntry(SyndFeed feed, SyndEntry entry)
+            throws FeedException {
+        List<String[]> none = Collections.emptyList();
+        Element root = toDocument(feed, Collections.singletonList(entry),
+                none).getRootElement();
+        Element element;
+        if (m_type.startsWith("atom")) {
+            element = root.getChild("entry", root.getNamespace());
+        } else {
+            element = root.getChild("channel", root.getNamespace()).getChild(
+                    "item", root.getNamespace());
+        }
+        element.detach();
+        try {
+            return new XMLOutputter(getFormat()).outputString(element)
+                    .getBytes("UTF-8");
+        } catch (IOException e) {
+            throw new FeedException("Cannot render the entry", e);
+        }
+    }
+
+    /**
+     * Builds the JDOM document of a feed.
+     * @param feed the feed
+     * @param entries the entries
+     * @param links the paging links
+     * @return the document
+     * @throws FeedException if the feed cannot be converted
+     */
+    private Document toDocument(SyndFeed feed, List<SyndEntry> entries,
+            List<String[]> links) throws FeedException {
+        SyndFeed copy = new SyndFeedImpl();
+        copy.setFeedType(m_type);
+        copy.setEncoding("UTF-8");
+        copy.setTitle(feed.getTitle());
+        copy.setLink(feed.getLink());
+        copy.setDescription(feed.getDescription());
+        copy.setEntries(entries);
+        Document document = new WireFeedOutput().outputJDom(copy
+                .createWireFeed());
+        Element root = document.getRootElement();
+        Element parent = root;
+        Namespace ns = root.getNamespace();
+        if (!root.getName().equals("feed")) {
+            // RSS, links go in the channel, in the Atom namespace
+            parent = root.getChild("channel", ns);
+            ns = ATOM_NS;
+        }
+        for (String[] link : links) {
+            Element element = new Element("link", ns);
+            element.setAttribute("rel", link[0]);
+            element.setAttribute("href", link[1]);
+            parent.addContent(element);
+        }
+        return document;
+    }
+
+    /**
+     * Gets the output format. Fragments are concatenated, so the output is
+     * not indented.
+     * @return the format
+     */
+    private Format getFormat() {
+        Format format = Format.getCompactFormat();
+        format.setEncoding("UTF-8");
+        return format;
+    }
+
+}
@@ -0,0 +1,772 @@
+/*
+ * Copyright 2009 OW2 Chameleon
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ow2.chameleon.syndication.rome;
+
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.LinkedList;
+import java.util.List;
+
+import javax.xml.stream.XMLEventFactory;
+import javax.xml.stream.XMLEventReader;
+import javax.xml.stream.XMLEventWriter;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.stream.events.StartElement;
+import javax.xml.stream.events.XMLEvent;
+
+import org.ow2.chameleon.syndication.FeedEntry;
+
+import com.sun.syndication.feed.synd.SyndFeed;
+import com.sun.syndication.io.FeedException;
+import com.sun.syndication.io.SyndFeedInput;
+import com.sun.syndication.io.impl.DateParser;
+
+/**
+ * Streaming feed parser. This parser pulls the feed document with StAX and
+ * creates the read-only feed entries directly, without building a JDOM
+ * document nor a SyndFeed. The entries are not read anymore once enough
+ * entries were read, or once an entry older than a given date is reached.
+ * The rest of the document is then only skipped, so that the title and the
+ * refresh hints (<code>ttl</code>, <code>sy:updatePeriod</code>) placed
+ * after the entries are still read.
+ * <p>
+ * Supported formats are RSS 0.9x, RSS 1.0, RSS 2.0, Atom 0.3 and Atom 1.0.
+ * Entries are mapped the same way Rome maps them to SyndEntry objects: the
+ * content is the description (RSS) or the summary (Atom) and falls back to
+ * the full content, the author is an empty string if not set.
+ */
+public class StreamingFeedParser {
+
+    /**
+     * Dublin Core namespace.
+     */
+    private static final String DC_NS = "http://purl.org/dc/elements/1.1/";
+
+    /**
+     * Content module namespace.
+     */
+    private static final String CONTENT_NS = "http://purl.org/rss/1.0/modules/content/";
+
+    /**
+     * Syndication module namespace.
+     */
+    private static final String SY_NS = "http://purl.org/rss/1.0/modules/syndication/";
+
+    /**
+     * RDF namespace.
+     */
+    private static final String RDF_NS = "http://www.w3.org/1999/02/22-rdf-syntax-ns#";
+
+    /**
+     * The StAX factory.
+     */
+    private final XMLInputFactory m_factory;
+
+    /**
+     * Creates a {@link StreamingFeedParser}.
+     */
+    public StreamingFeedParser() {
+        m_factory = XMLInputFactory.newInstance();
+        m_factory.setProperty(XMLInputFactory.IS_COALESCING, Boolean.TRUE);
+        m_factory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, Boolean.TRUE);
+        m_factory.setProperty(
+                XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES,
+                Boolean.FALSE);
+    }
+
+    /**
+     * Parses the metadata of a feed, without its entries. The document is
+     * copied up to its first item or entry, the open elements are closed,
+     * and the copy is parsed by ROME: all the channel metadata is read,
+     * and the cost does not depend on the number of entries.
+     * @param reader the reader providing the feed document
+     * @return the feed, without entries
+     * @throws FeedException if the document is not a valid feed
+     */
+    public SyndFeed parseMetadata(Reader reader) throws FeedException {
+        StringWriter header = new StringWriter();
+        XMLEventReader in = null;
+        try {
+            in = m_factory.createXMLEventReader(reader);
+            XMLEventWriter out = XMLOutputFactory.newInstance()
+                    .createXMLEventWriter(header);
+            LinkedList<StartElement> open = new LinkedList<StartElement>();
+            while (in.hasNext()) {
+                XMLEvent event = in.nextEvent();
+                if (event.isStartElement()) {
+                    StartElement start = event.asStartElement();
+                    String name = start.getName().getLocalPart();
+                    if ("item".equals(name) || "entry".equals(name)) {
+                        break;
+                    }
+                    open.addFirst(start);
+                } else if (event.isEndElement()) {
+                    open.removeFirst();
+                } else if (event.getEventType() == XMLStreamConstants.DTD
+                        || event.isEndDocument()) {
+                    continue;
+                }
+                out.add(event);
+            }
+            XMLEventFactory events = XMLEventFactory.newInstance();
+            for (StartElement start : open) {
+                out.add(events.createEndElement(start.getName(), null));
+            }
+            out.add(events.createEndDocument());
+            out.close();
+        } catch (XMLStreamException e) {
+            throw new FeedException("Cannot parse the feed : "
+                    + e.getMessage(), e);
+        } finally {
+            if (in != null) {
+                try {
+                    in.close();
+                } catch (XMLStreamException e) {
+                    // Ignored.
+                }
+            }
+        }
+        return new SyndFeedInput().build(new StringReader(header.toString()));
+    }
+
+    /**
+     * Moves to the root element, skipping the prolog: DOCTYPE declaration,
+     * comments, processing instructions and whitespace.
+     * @param xml the reader
+     * @throws XMLStreamException if the document cannot be read
+     * @throws FeedException if the document has no root element
+     */
+    private static void toRootElement(XMLStreamReader xml)
+        throws XMLStreamException, FeedException {
+        int event = xml.getEventType();
+        while (event != XMLStreamConstants.START_ELEMENT) {
+            if (event == XMLStreamConstants.END_DOCUMENT) {
+                throw new FeedException("Invalid feed, no root element");
+            }
+            event = xml.next();
+        }
+    }
+
+    /**
+     * Parses the feed.
+     * @param reader the reader providing the feed document
+     * @param max the maximum number of entries to read, <code>-1</code> to
+     *        read all the entries
+     * @param stopBefore the entries are not read anymore from the first
+     *        entry published before this date, <code>null</code> to read
+     *        all the entries
+     * @return the parsed feed
+     * @throws FeedException if the document is not a valid feed
+     */
+    public ParsedFeed parse(Reader reader, int max, Date stopBefore)
+        throws FeedException {
+        XMLStreamReader xml = null;
+        try {
+            xml = m_factory.createXMLStreamReader(reader);
+            toRootElement(xml);
+            String root = xml.getLocalName();
+            ParsedFeed feed = new ParsedFeed(max, stopBefore);
+            if ("rss".equals(root)) {
+                parseRSS(xml, feed);
+            } else if ("RDF".equals(root)) {
+                parseRDF(xml, feed);
+            } else if ("feed".equals(root)) {
+                parseAtom(xml, feed);
+            } else {
+                throw new FeedException("Unsupported feed format : " + root);
+            }
+            if (feed.m_title == null) {
+                throw new FeedException("Invalid feed, no title found");
+            }
+            return feed;
+        } catch (XMLStreamException e) {
+            throw new FeedException("Cannot parse the feed : "
+                    + e.getMessage(), e);
+        } finally {
+            if (xml != null) {
+                try {
+                    xml.close();
+                } catch (XMLStreamException e) {
+                    // Ignored.
+                }
+            }
+        }
+    }
+
+    /**
+     * Parses a RSS 0.9x / 2.0 document.
+     * @param xml the reader, on the <code>rss</code> element
+     * @param feed the feed to fill
+     * @throws XMLStreamException if the document is malformed
+     */
+    private void parseRSS(XMLStreamReader xml, ParsedFeed feed)
+        throws XMLStreamException {
+        while (nextChild(xml)) {
+            if ("channel".equals(xml.getLocalName())) {
+                parseChannel(xml, feed);
+            } else {
+                skip(xml);
+            }
+        }
+    }
+
+    /**
+     * Parses a RSS 1.0 document. Items are siblings of the channel.
+     * @param xml the reader, on the <code>rdf:RDF</code> element
+     * @param feed the feed to fill
+     * @throws XMLStreamException if the document is malformed
+     */
+    private void parseRDF(XMLStreamReader xml, ParsedFeed feed)
+        throws XMLStreamException {
+        while (nextChild(xml)) {
+            String name = xml.getLocalName();
+            if ("channel".equals(name)) {
+                parseChannel(xml, feed);
+            } else if ("item".equals(name) && !feed.isComplete()) {
+                feed.add(parseItem(xml));
+            } else {
+                skip(xml);
+            }
+        }
+    }
+
+    /**
+     * Parses a RSS channel.
+     * @param xml the reader, on the <code>channel</code> element
+     * @param feed the feed to fill
+     * @throws XMLStreamException if the document is malformed
+     */
+    private void parseChannel(XMLStreamReader xml, ParsedFeed feed)
+        throws XMLStreamException {
+        while (nextChild(xml)) {
+            String name = xml.getLocalName();
+            if ("title".equals(name) && isRSS(xml)) {
+                feed.m_title = readText(xml);
+            } else if ("ttl".equals(name) && isRSS(xml)) {
+                feed.m_ttl = toLong(readText(xml)) * 60 * 1000;
+            } else if (SY_NS.equals(xml.getNamespaceURI())) {
+                parseSyndication(xml, feed);
+            } else if ("item".equals(name) && !feed.isComplete()) {
+                feed.add(parseItem(xml));
+            } else {
+                skip(xml);
+            }
+        }
+    }
+
+    /**
+     * Parses a syndication module element (<code>sy:updatePeriod</code> or
+     * <code>sy:updateFrequency</code>).
+     * @param xml the reader, on the element
+     * @param feed the feed to fill
+     * @throws XMLStreamException if the document is malformed
+     */
+    private void parseSyndication(XMLStreamReader xml, ParsedFeed feed)
+        throws XMLStreamException {
+        String name = xml.getLocalName();
+        if ("updatePeriod".equals(name)) {
+            String period = readText(xml).trim();
+            long hour = 60 * 60 * 1000L;
+            if ("hourly".equals(period)) {
+                feed.m_updatePeriod = hour;
+            } else if ("daily".equals(period)) {
+                feed.m_updatePeriod = 24 * hour;
+            } else if ("weekly".equals(period)) {
+                feed.m_updatePeriod = 7 * 24 * hour;
+            } else if ("monthly".equals(period)) {
+                feed.m_updatePeriod = 30 * 24 * hour;
+            } else if ("yearly".equals(period)) {
+                feed.m_updatePeriod = 365 * 24 * hour;
+            }
+        } else if ("updateFrequency".equals(name)) {
+            feed.m_updateFrequency = toLong(readText(xml));
+        } else {
+            skip(xml);
+        }
+    }
+
+    /**
+     * Parses a positive number.
+     * @param value the text
+     * @return the number, -1 if the text is not a positive number
+     */
+    private static long toLong(String value) {
+        try {
+            long l = Long.parseLong(value.trim());
+            if (l > 0) {
+                return l;
+            }
+        } catch (NumberFormatException e) {
+            // Invalid value.
+        }
+        return -1;
+    }
+
+    /**
+     * Parses a RSS item.
+     * @param xml the reader, on the <code>item</code> element
+     * @return the entry
+     * @throws XMLStreamException if the document is malformed
+     */
+    private FeedEntry parseItem(XMLStreamReader xml) throws XMLStreamException {
+        String title = null;
+        String link = null;
+        String guid = null;
+        boolean permalink = true;
+        String description = null;
+        String content = null;
+        String author = null;
+        Date date = null;
+        List<String> categories = new ArrayList<String>();
+
+        String about = xml.getAttributeValue(RDF_NS, "about");
+
+        while (nextChild(xml)) {
+            String name = xml.getLocalName();
+            String ns = xml.getNamespaceURI();
+            if (DC_NS.equals(ns)) {
+                if ("creator".equals(name) && author == null) {
+                    author = readText(xml);
+                } else if ("date".equals(name) && date == null) {
+                    date = DateParser.parseDate(readText(xml).trim());
+                } else if ("subject".equals(name)) {
+                    categories.add(readText(xml));
+                } else {
+                    skip(xml);
+                }
+            } else if (CONTENT_NS.equals(ns) && "encoded".equals(name)) {
+                content = readText(xml);
+            } else if (!isRSS(xml)) {
+                skip(xml);
+            } else if ("title".equals(name)) {
+                title = readText(xml);
+            } else if ("link".equals(name)) {
+                link = readText(xml).trim();
+            } else if ("guid".equals(name)) {
+                permalink = !"false".equalsIgnoreCase(xml.getAttributeValue(
+                        null, "isPermaLink"));
+                guid = readText(xml).trim();
+            } else if ("description".equals(name)) {
+                description = readText(xml);
+            } else if ("author".equals(name)) {
+                author = readText(xml);
+            } else if ("pubDate".equals(name)) {
+                date = DateParser.parseDate(readText(xml).trim());
+            } else if ("category".equals(name)) {
+                categories.add(readText(xml));
+            } else {
+                skip(xml);
+            }
+        }
+
+        if (link == null && guid != null && permalink) {
+            link = guid;
+        }
+        if (guid == null) {
+            guid = about;
+        }
+        return new FeedReaderImpl.FeedEntryImpl(guid, title, link, author,
+                description != null ? description : content, date, categories);
+    }
+
+    /**
+     * Parses an Atom 0.3 or 1.0 document.
+     * @param xml the reader, on the <code>feed</code> element
+     * @param feed the feed to fill
+     * @throws XMLStreamException if the document is malformed
+     */
+    private void parseAtom(XMLStreamReader xml, ParsedFeed feed)
+        throws XMLStreamException {
+        String ns = xml.getNamespaceURI();
+        while (nextChild(xml)) {
+            String name = xml.getLocalName();
+            if (SY_NS.equals(xml.getNamespaceURI())) {
+                parseSyndication(xml, feed);
+            } else if (!same(ns, xml.getNamespaceURI())) {
+                skip(xml);
+            } else if ("title".equals(name)) {
+                feed.m_title = readText(xml);
+            } else if ("entry".equals(name) && !feed.isComplete()) {
+                feed.add(parseEntry(xml, ns));
+            } else {
+                skip(xml);
+            }
+        }
+    }
+
+    /**
+     * Parses an Atom entry.
+     * @param xml the reader, on the <code>entry</code> element
+     * @param atom the Atom namespace of the document
+     * @return the entry
+     * @throws XMLStreamException if the document is malformed
+     */
+    private FeedEntry parseEntry(XMLStreamReader xml, String atom)
+        throws XMLStreamException {
+        String id = null;
+        String title = null;
+        String link = null;
+        String summary = null;
+        String content = null;
+        String author = null;
+        Date published = null;
+        Date updated = null;
+        List<String> categories = new ArrayList<String>();
+
+        while (nextChild(xml)) {
+            String name = xml.getLocalName();
+            String ns = xml.getNamespaceURI();
+            if (DC_NS.equals(ns) && "subject".equals(name)) {
+                categories.add(readText(xml));
+            } else if (!same(atom, ns)) {
+                skip(xml);
+            } else if ("id".equals(name)) {
+                id = readText(xml).trim();
+            } else if ("title".equals(name)) {
+                title = readText(xml);
+            } else if ("link".equals(name)) {
+                String rel = xml.getAttributeValue(null, "rel");
+                if (link == null && (rel == null || "alternate".equals(rel))) {
+                    link = xml.getAttributeValue(null, "href");
+                }
+                skip(xml);
+            } else if ("summary".equals(name)) {
+                summary = readText(xml);
+            } else if ("content".equals(name)) {
+                content = readText(xml);
+            } else if ("author".equals(name)) {
+                String n = readAuthor(xml, atom);
+                if (author == null) {
+                    author = n;
+                }
+            } else if ("published".equals(name) || "issued".equals(name)) {
+                published = DateParser.parseDate(readText(xml).trim());
+            } else if ("updated".equals(name) || "modified".equals(name)) {
+                updated = DateParser.parseDate(readText(xml).trim());
+            } else if ("created".equals(name)) {
+                Date created = DateParser.parseDate(readText(xml).trim());
+                if (published == null) {
+                    published = created;
+                }
+            } else if ("category".equals(name)) {
+                String term = xml.getAttributeValue(null, "term");
+                if (term != null) {
+                    categories.add(term);
+                }
+                skip(xml);
+            } else {
+                skip(xml);
+            }
+        }
+
+        return new FeedReaderImpl.FeedEntryImpl(id, title, link, author,
+                summary != null ? summary : content,
+                published != null ? published : updated, categories);
+    }
+
+    /**
+     * Reads the name of an Atom person construct.
+     * @param xml the reader, on the <code>author</code> element
+     * @param atom the Atom namespace
+     * @return the name or <code>null</code> if not set
+     * @throws XMLStreamException if the document is malformed
+     */
+    private String readAuthor(XMLStreamReader xml, String atom)
+        throws XMLStreamException {
+        String name = null;
+        while (nextChild(xml)) {
+            if ("name".equals(xml.getLocalName())
+                    && same(atom, xml.getNamespaceURI())) {
+                name = readText(xml);
+            } else {
+                skip(xml);
+            }
+        }
+        return name;
+    }
+
+    /**
+     * Checks whether the current element belongs to RSS, i.e. has no
+     * namespace or the RSS 1.0 / 0.90 one.
+     * @param xml the reader
+     * @return <code>true</code> if the element is a RSS element
+     */
+    private static boolean isRSS(XMLStreamReader xml) {
+        String ns = xml.getNamespaceURI();
+        return ns == null || ns.length() == 0
+                || ns.startsWith("http://purl.org/rss/1.0")
+                || ns.startsWith("http://my.netscape.com/rdf/simple/0.9");
+    }
+
+    /**
+     * Compares two namespaces.
+     * @param ns1 the first namespace
+     * @param ns2 the second namespace
+     * @return <code>true</code> if both namespaces are the same
+     */
+    private static boolean same(String ns1, String ns2) {
+        if (ns1 == null || ns1.length() == 0) {
+            return ns2 == null || ns2.length() == 0;
+        }
+        return ns1.equals(ns2);
+    }
+
+    /**
+     * Moves to the next child element of the current element.
+     * @param xml the reader
+     * @return <code>true</code> if the reader is on a child element,
+     *         <code>false</code> if the end of the current element was
+     *         reached.
+     * @throws XMLStreamException if the document is malformed
+     */
+    private static boolean nextChild(XMLStreamReader xml)
+        throws XMLStreamException {
+        while (xml.hasNext()) {
+            int event = xml.next();
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                return true;
+            } else if (event == XMLStreamConstants.END_ELEMENT) {
+                return false;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Skips the current element and its children.
+     * @param xml the reader, on a start element
+     * @throws XMLStreamException if the document is malformed
+     */
+    private static void skip(XMLStreamReader xml) throws XMLStreamException {
+        int depth = 1;
+        while (depth > 0 && xml.hasNext()) {
+            int event = xml.next();
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                depth++;
+            } else if (event == XMLStreamConstants.END_ELEMENT) {
+                depth--;
+            }
+        }
+    }
+
+    /**
+     * Reads the content of the current element. Nested markup (such as
+     * XHTML content) is serialized back.
+     * @param xml the reader, on a start element
+     * @return the text content
+     * @throws XMLStreamException if the document is malformed
+     */
+    private static String readText(XMLStreamReader xml)
+        throws XMLStreamException {
+        StringBuilder buffer = new StringBuilder();
+        int depth = 1;
+        while (depth > 0 && xml.hasNext()) {
+            int event = xml.next();
+            switch (event) {
+                case XMLStreamConstants.START_ELEMENT:
+                    depth++;
+                    buffer.append('<').append(xml.getLocalName());
+                    for (int i = 0; i < xml.getAttributeCount(); i++) {
+                        buffer.append(' ')
+                                .append(xml.getAttributeLocalName(i))
+                                .append("=\"");
+                        escape(buffer, xml.getAttributeValue(i));
+                        buffer.append('"');
+                    }
+                    buffer.append('>');
+                    break;
+                case XMLStreamConstants.END_ELEMENT:
+                    depth--;
+                    if (depth > 0) {
+                        buffer.append("</").append(xml.getLocalName())
+                                .append('>');
+                    }
+                    break;
+                case XMLStreamConstants.CHARACTERS:
+                case XMLStreamConstants.CDATA:
+                case XMLStreamConstants.SPACE:
+                case XMLStreamConstants.ENTITY_REFERENCE:
+                    if (depth > 1) {
+                        escape(buffer, xml.getText());
+                    } else {
+                        buffer.append(xml.getText());
+                    }
+                    break;
+                default:
+                    break;
+            }
+        }
+        return buffer.toString();
+    }
+
+    /**
+     * Appends the XML-escaped text to the buffer.
+     * @param buffer the buffer
+     * @param text the text
+     */
+    private static void escape(StringBuilder buffer, String text) {
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            switch (c) {
+                case '<':
+                    buffer.append("&lt;");
+                    break;
+                case '>':
+                    buffer.append("&gt;");
+                    break;
+                case '&':
+                    buffer.append("&amp;");
+                    break;
+                case '"':
+                    buffer.append("&quot;");
+                    break;
+                default:
+                    buffer.append(c);
+                    break;
+            }
+        }
+    }
+
+    /**
+     * Result of the parsing.
+     */
+    public static class ParsedFeed {
+
+        /**
+         * The feed title.
+         */
+        private String m_title;
+
+        /**
+         * The read entries, most recent first.
+         */
+        private final List<FeedEntry> m_entries = new ArrayList<FeedEntry>();
+
+        /**
+         * The RSS ttl in ms, -1 if not set.
+         */
+        private long m_ttl = -1;
+
+        /**
+         * The <code>sy:updatePeriod</code> in ms, -1 if not set.
+         */
+        private long m_updatePeriod = -1;
+
+        /**
+         * The <code>sy:updateFrequency</code>, -1 if not set.
+         */
+        private long m_updateFrequency = -1;
+
+        /**
+         * Maximum number of entries to read.
+         */
+        private final int m_max;
+
+        /**
+         * Date before which the parsing stops.
+         */
+        private final Date m_stopBefore;
+
+        /**
+         * Were the remaining entries skipped.
+         */
+        private boolean m_complete;
+
+        /**
+         * Creates a {@link ParsedFeed}.
+         * @param max the maximum number of entries
+         * @param stopBefore the stop date
+         */
+        private ParsedFeed(int max, Date stopBefore) {
+            m_max = max;
+            m_stopBefore = stopBefore;
+        }
+
+        /**
+         * Adds an entry, unless the entry is older than the stop date.
+         * @param entry the entry
+         */
+        private void add(FeedEntry entry) {
+            if (m_stopBefore != null && entry.publicationDate() != null
+                    && entry.publicationDate().before(m_stopBefore)) {
+                m_complete = true;
+                return;
+            }
+            m_entries.add(entry);
+            if (m_max != -1 && m_entries.size() >= m_max) {
+                m_complete = true;
+            }
+        }
+
+        /**
+         * Checks whether the parsing can stop.
+         * @return <code>true</code> if no more entries are needed
+         */
+        private boolean isComplete() {
+            return m_complete;
+        }
+
+        /**
+         * Gets the feed title.
+         * @return the title
+         */
+        public String getTitle() {
+            return m_title;
+        }
+
+        /**
+         * Gets the refresh hint given by the feed: the RSS
+         * <code>ttl</code>, or the period computed from
+         * <code>sy:updatePeriod</code> and <code>sy:updateFrequency</code>.
+         * The greatest value is returned if both are set.
+         * @return the hint in ms, -1 if the feed gives no hint
+         */
+        public long getRefreshHint() {
+            long sy = -1;
+            if (m_updatePeriod > 0) {
+                sy = m_updatePeriod;
+                if (m_updateFrequency > 0) {
+                    sy = m_updatePeriod / m_updateFrequency;
+                }
+            }
+            return Math.max(m_ttl, sy);
+        }
+
+        /**
+         * Gets the read entries.
+         * @return the entries, most recent first
+         */
+        public List<FeedEntry> getEntries() {
+            return m_entries;
+        }
+
+        /**
+         * Checks whether the remaining entries of the document were
+         * skipped.
+         * @return <code>true</code> if some entries were not read
+         */
+        public boolean isTruncated() {
+            return m_complete;
+        }
+    }
+
+}
@@ -0,0 +1,70 @@
+/*
+ * Copyright 2009 OW2 Chameleon
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ow2.chameleon.syndication.rome.test;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+import org.ow2.chameleon.syndication.rome.AdaptivePollingPolicy;
+
+
+public class AdaptivePollingPolicyTest {
+
+    private static final long MINUTE = 60 * 1000;
+
+    @Test
+    public void testBackOffWhenNothingChanges() {
+        AdaptivePollingPolicy policy = new AdaptivePollingPolicy(60 * MINUTE,
+                MINUTE, 24 * 60 * MINUTE);
+        long now = 0;
+        long interval = policy.getInterval();
+        for (int i = 0; i < 50; i++) {
+            now += interval;
+            long next = policy.next(false, -1, now);
+            Assert.assertTrue(next >= interval);
+            interval = next;
+        }
+        Assert.assertEquals(24 * 60 * MINUTE, interval);
+    }
+
+    @Test
+    public void testFollowChangeRate() {
+        AdaptivePollingPolicy policy = new AdaptivePollingPolicy(60 * MINUTE,
+                MINUTE, 24 * 60 * MINUTE);
+        long now = 0;
+        // The feed changes every 10 minutes.
+        for (int i = 0; i < 20; i++) {
+            now += 10 * MINUTE;
+            policy.next(true, -1, now);
+        }
+        Assert.assertEquals(5 * MINUTE, policy.getInterval());
+    }
+
+    @Test
+    public void testHintAndBounds() {
+        AdaptivePollingPolicy policy = new AdaptivePollingPolicy(60 * MINUTE,
+                MINUTE, 24 * 60 * MINUTE);
+        Assert.assertEquals(30 * MINUTE, policy.next(true, -1, 1));
+        // The publisher asks to wait 2 hours.
+        Assert.assertEquals(120 * MINUTE, policy.next(true, 120 * MINUTE,
+                2));
+        // Never below the minimum.
+        for (int i = 0; i < 20; i++) {
+            policy.next(true, -1, 3 + i);
+        }
+        Assert.assertEquals(MINUTE, policy.getInterval());
+    }
+
+}
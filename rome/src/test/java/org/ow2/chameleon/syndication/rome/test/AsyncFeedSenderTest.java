@@ -0,0 +1,201 @@
+/*
+ * Copyright 2009 OW2 Chameleon
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ow2.chameleon.syndication.rome.test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Arrays;
+
+import javax.servlet.ServletOutputStream;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+import org.ow2.chameleon.syndication.rome.AsyncFeedSender;
+import org.ow2.chameleon.syndication.rome.AsyncFeedSender.AsyncApi;
+
+
+public class AsyncFeedSenderTest {
+
+    public interface AsyncRequest {
+        boolean isAsyncSupported();
+        Object startAsync();
+    }
+
+    public interface StubWriteListener {
+        void onWritePossible() throws IOException;
+        void onError(Throwable t);
+    }
+
+    public static class StubContext {
+        int m_completed;
+
+        public void complete() {
+            m_completed++;
+        }
+    }
+
+    public static class StubOutput extends ServletOutputStream {
+        ByteArrayOutputStream m_written = new ByteArrayOutputStream();
+        int m_ready;
+        StubWriteListener m_listener;
+        RuntimeException m_failure;
+
+        public boolean isReady() {
+            if (m_ready == 0) {
+                return false;
+            }
+            m_ready--;
+            return true;
+        }
+
+        public void setWriteListener(StubWriteListener listener) {
+            if (m_failure != null) {
+                throw m_failure;
+            }
+            m_listener = listener;
+        }
+
+        public void write(int b) {
+            m_written.write(b);
+        }
+
+        public void write(byte[] b, int off, int len) {
+            m_written.write(b, off, len);
+        }
+    }
+
+    private final AsyncApi m_api;
+
+    private final StubContext m_context = new StubContext();
+
+    private final StubOutput m_out = new StubOutput();
+
+    private boolean m_supported = true;
+
+    public AsyncFeedSenderTest() throws Exception {
+        m_api = new AsyncApi(AsyncRequest.class, StubContext.class,
+                StubOutput.class, StubWriteListener.class);
+    }
+
+    private HttpServletRequest request() {
+        return (HttpServletRequest) Proxy.newProxyInstance(getClass()
+                .getClassLoader(), new Class< ? >[] {HttpServletRequest.class,
+                    AsyncRequest.class}, new InvocationHandler() {
+                public Object invoke(Object proxy, Method method,
+                        Object[] args) {
+                    if (method.getName().equals("isAsyncSupported")) {
+                        return Boolean.valueOf(m_supported);
+                    } else if (method.getName().equals("startAsync")) {
+                        return m_context;
+                    }
+                    throw new UnsupportedOperationException(method.getName());
+                }
+            });
+    }
+
+    private HttpServletResponse response() {
+        return (HttpServletResponse) Proxy.newProxyInstance(getClass()
+                .getClassLoader(), new Class< ? >[] {HttpServletResponse.class},
+                new InvocationHandler() {
+                public Object invoke(Object proxy, Method method,
+                        Object[] args) {
+                    if (method.getName().equals("getOutputStream")) {
+                        return m_out;
+                    }
+                    throw new UnsupportedOperationException(method.getName());
+                }
+            });
+    }
+
+    private byte[] body() {
+        byte[] bytes = new byte[AsyncFeedSender.THRESHOLD * 2 + 100];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = (byte) i;
+        }
+        return bytes;
+    }
+
+    @Test
+    public void testSmallBodyIsNotAsync() throws Exception {
+        Assert.assertFalse(AsyncFeedSender.send(m_api, request(), response(),
+                new byte[10]));
+        Assert.assertFalse(AsyncFeedSender.send(null, request(), response(),
+                body()));
+        m_supported = false;
+        Assert.assertFalse(AsyncFeedSender.send(m_api, request(), response(),
+                body()));
+        Assert.assertNull(m_out.m_listener);
+        Assert.assertEquals(0, m_context.m_completed);
+    }
+
+    @Test
+    public void testPartialWrites() throws Exception {
+        byte[] bytes = body();
+        Assert.assertTrue(AsyncFeedSender.send(m_api, request(), response(),
+                bytes));
+        Assert.assertNotNull(m_out.m_listener);
+
+        // The output accepts one chunk, then blocks
+        m_out.m_ready = 1;
+        m_out.m_listener.onWritePossible();
+        int written = m_out.m_written.size();
+        Assert.assertTrue(written > 0);
+        Assert.assertTrue(written < bytes.length);
+        Assert.assertEquals(0, m_context.m_completed);
+
+        // Not ready: nothing is written
+        m_out.m_listener.onWritePossible();
+        Assert.assertEquals(written, m_out.m_written.size());
+        Assert.assertEquals(0, m_context.m_completed);
+
+        m_out.m_ready = Integer.MAX_VALUE;
+        m_out.m_listener.onWritePossible();
+        Assert.assertTrue(Arrays.equals(bytes, m_out.m_written.toByteArray()));
+        Assert.assertEquals(1, m_context.m_completed);
+
+        // A late error does not complete the request twice
+        m_out.m_listener.onError(new IOException("reset"));
+        Assert.assertEquals(1, m_context.m_completed);
+    }
+
+    @Test
+    public void testErrorCompletes() throws Exception {
+        Assert.assertTrue(AsyncFeedSender.send(m_api, request(), response(),
+                body()));
+        m_out.m_ready = 1;
+        m_out.m_listener.onWritePossible();
+        m_out.m_listener.onError(new IOException("reset"));
+        Assert.assertEquals(1, m_context.m_completed);
+    }
+
+    @Test
+    public void testListenerFailureCompletes() throws Exception {
+        m_out.m_failure = new IllegalStateException("not async");
+        try {
+            AsyncFeedSender.send(m_api, request(), response(), body());
+            Assert.fail("IOException expected");
+        } catch (IOException e) {
+            Assert.assertSame(m_out.m_failure, e.getCause());
+        }
+        Assert.assertEquals(1, m_context.m_completed);
+    }
+
+}
@@ -0,0 +1,75 @@
+/*
+ * Copyright 2009 OW2 Chameleon
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ow2.chameleon.syndication.rome.test;
+
+import java.io.IOException;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+import org.ow2.chameleon.syndication.rome.CircuitBreaker;
+
+
+public class CircuitBreakerTest {
+
+    @Test
+    public void testOpenAfterThreshold() {
+        CircuitBreaker breaker = new CircuitBreaker(3, 1000, 60000);
+        Assert.assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+        breaker.attempt();
+        breaker.failure(new IOException());
+        breaker.attempt();
+        breaker.failure(new IOException());
+        Assert.assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+        breaker.attempt();
+        breaker.failure(new IOException());
+        Assert.assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        Assert.assertEquals(3, breaker.getFailures());
+
+        breaker.attempt();
+        Assert.assertEquals(CircuitBreaker.State.HALF_OPEN, breaker
+                .getState());
+        breaker.success();
+        Assert.assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+        Assert.assertEquals(0, breaker.getFailures());
+        Assert.assertNull(breaker.getLastFailure());
+    }
+
+    @Test
+    public void testFailedTrialReopens() {
+        CircuitBreaker breaker = new CircuitBreaker(1, 1000, 60000);
+        breaker.failure(new IOException());
+        breaker.attempt();
+        breaker.failure(new IOException());
+        Assert.assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+    }
+
+    @Test
+    public void testExponentialBackoff() {
+        CircuitBreaker breaker = new CircuitBreaker(3, 1000, 60000);
+        Assert.assertEquals(0, breaker.getBackoff());
+        long delay = breaker.failure(new IOException());
+        Assert.assertTrue(delay >= 500 && delay <= 1000);
+        delay = breaker.failure(new IOException());
+        Assert.assertTrue(delay >= 1000 && delay <= 2000);
+        delay = breaker.failure(new IOException());
+        Assert.assertTrue(delay >= 2000 && delay <= 4000);
+        for (int i = 0; i < 100; i++) {
+            delay = breaker.failure(new IOException());
+        }
+        Assert.assertTrue(delay >= 30000 && delay <= 60000);
+    }
+
+}
@@ -0,0 +1,138 @@
+/*
+ * Copyright 2009 OW2 Chameleon
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ow2.chameleon.syndication.rome.test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.util.zip.GZIPOutputStream;
+
+import junit.framework.Assert;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.ow2.chameleon.syndication.rome.DefaultFeedFetcher;
+import org.ow2.chameleon.syndication.rome.FeedReaderImpl;
+import org.ow2.chameleon.syndication.rome.FetchResponse;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+
+public class DefaultFeedFetcherTest {
+
+    private static final String FEED = "<?xml version=\"1.0\"?>"
+            + "<rss version=\"2.0\"><channel><title>Gzipped</title>"
+            + "<item><title>an item</title><description>content</description>"
+            + "</item></channel></rss>";
+
+    private HttpServer m_server;
+
+    private String m_encoding;
+
+    @Before
+    public void setUp() throws Exception {
+        m_server = HttpServer.create(new InetSocketAddress(0), 0);
+        m_server.createContext("/feed", new HttpHandler() {
+            public void handle(HttpExchange exchange) throws IOException {
+                byte[] body = FEED.getBytes("UTF-8");
+                String accepted = exchange.getRequestHeaders().getFirst(
+                        "Accept-Encoding");
+                m_encoding = accepted;
+                if (accepted != null && accepted.contains("gzip")) {
+                    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                    GZIPOutputStream gzip = new GZIPOutputStream(bytes);
+                    gzip.write(body);
+                    gzip.close();
+                    body = bytes.toByteArray();
+                    exchange.getResponseHeaders().set("Content-Encoding",
+                            "gzip");
+                }
+                exchange.getResponseHeaders().set("Content-Type",
+                        "application/rss+xml; charset=UTF-8");
+                exchange.sendResponseHeaders(200, body.length);
+                OutputStream out = exchange.getResponseBody();
+                out.write(body);
+                exchange.close();
+            }
+        });
+        m_server.start();
+    }
+
+    @After
+    public void tearDown() {
+        m_server.stop(0);
+    }
+
+    private URL url() throws Exception {
+        return new URL("http://localhost:" + m_server.getAddress().getPort()
+                + "/feed");
+    }
+
+    @Test
+    public void testGzip() throws Exception {
+        DefaultFeedFetcher fetcher = new DefaultFeedFetcher(1000, 1000,
+                1024 * 1024, 2);
+        FetchResponse response = fetcher.fetch(url(), null, null);
+        Assert.assertTrue(m_encoding.contains("gzip"));
+        Assert.assertTrue(response.isModified());
+        InputStream in = response.getBody();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        int b;
+        while ((b = in.read()) != -1) {
+            out.write(b);
+        }
+        response.close();
+        Assert.assertEquals(FEED, new String(out.toByteArray(), "UTF-8"));
+    }
+
+    @Test(expected = IOException.class)
+    public void testMaxSize() throws Exception {
+        DefaultFeedFetcher fetcher = new DefaultFeedFetcher(1000, 1000, 10, 2);
+        FetchResponse response = fetcher.fetch(url(), null, null);
+        try {
+            InputStream in = response.getBody();
+            while (in.read() != -1) {
+                // Read.
+            }
+        } finally {
+            response.close();
+        }
+    }
+
+    @Test
+    public void testPermitsReleased() throws Exception {
+        DefaultFeedFetcher fetcher = new DefaultFeedFetcher(500, 1000,
+                1024 * 1024, 1);
+        // Would time out if the permit of the host was not released.
+        for (int i = 0; i < 5; i++) {
+            fetcher.fetch(url(), null, null).close();
+        }
+    }
+
+    @Test
+    public void testReaderWithFetcher() throws Exception {
+        FeedReaderImpl reader = new FeedReaderImpl(url(), -1, 5);
+        Assert.assertEquals("Gzipped", reader.getTitle());
+        Assert.assertEquals(1, reader.getEntries().size());
+        Assert.assertEquals("content", reader.getLastEntry().content());
+    }
+
+}
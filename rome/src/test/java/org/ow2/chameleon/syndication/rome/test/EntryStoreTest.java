@@ -0,0 +1,129 @@
+/*
+ * Copyright 2009 OW2 Chameleon
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ow2.chameleon.syndication.rome.test;
+
+import java.util.List;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+import org.ow2.chameleon.syndication.rome.EntryStore;
+
+import com.sun.syndication.feed.synd.SyndContent;
+import com.sun.syndication.feed.synd.SyndContentImpl;
+import com.sun.syndication.feed.synd.SyndEntry;
+import com.sun.syndication.feed.synd.SyndEntryImpl;
+
+
+public class EntryStoreTest {
+
+    private SyndEntry entry(String title) {
+        SyndEntry entry = new SyndEntryImpl();
+        entry.setTitle(title);
+        return entry;
+    }
+
+    @Test
+    public void testOrder() {
+        EntryStore store = new EntryStore();
+        Assert.assertTrue(store.isEmpty());
+        Assert.assertNull(store.first());
+        store.addFirst(entry("b"));
+        store.addFirst(entry("c"));
+        store.addLast(entry("a"));
+        Assert.assertEquals(3, store.size());
+        Assert.assertEquals("c", store.first().getEntry().getTitle());
+        Assert.assertEquals("a", store.last().getEntry().getTitle());
+
+        List<SyndEntry> newest = store.newest(2);
+        Assert.assertEquals(2, newest.size());
+        Assert.assertEquals("c", newest.get(0).getTitle());
+        Assert.assertEquals("b", newest.get(1).getTitle());
+        Assert.assertEquals(3, store.newest(10).size());
+
+        List<SyndEntry> range = store.range(1, 3);
+        Assert.assertEquals("b", range.get(0).getTitle());
+        Assert.assertEquals("a", range.get(1).getTitle());
+    }
+
+    @Test
+    public void testRemove() {
+        EntryStore store = new EntryStore();
+        EntryStore.Node a = store.addFirst(entry("a"));
+        EntryStore.Node b = store.addFirst(entry("b"));
+        EntryStore.Node c = store.addFirst(entry("c"));
+        store.remove(b);
+        Assert.assertEquals(2, store.size());
+        Assert.assertSame(a, c.next());
+        Assert.assertSame(c, a.previous());
+        // Removing twice is harmless
+        store.remove(b);
+        Assert.assertEquals(2, store.size());
+        store.remove(c);
+        Assert.assertSame(a, store.first());
+        store.remove(a);
+        Assert.assertTrue(store.isEmpty());
+        Assert.assertNull(store.first());
+        Assert.assertNull(store.last());
+    }
+
+    @Test
+    public void testIndexes() {
+        EntryStore store = new EntryStore();
+        SyndEntry e1 = entry("a");
+        e1.setUri("urn:1");
+        SyndEntry e2 = entry("a");
+        e2.setUri("urn:2");
+        SyndEntry e3 = entry("b");
+        e3.setUri("urn:3");
+        EntryStore.Node n1 = store.addFirst(e1);
+        EntryStore.Node n2 = store.addFirst(e2);
+        EntryStore.Node n3 = store.addLast(e3);
+
+        Assert.assertSame(n1, store.getById("urn:1"));
+        Assert.assertSame(n3, store.getById("urn:3"));
+        Assert.assertNull(store.getById("urn:4"));
+
+        // The most recent entry comes first in the title chain
+        Assert.assertSame(n2, store.getByTitle("a"));
+        Assert.assertSame(n1, n2.nextWithTitle());
+        Assert.assertNull(n1.nextWithTitle());
+
+        store.remove(n2);
+        Assert.assertTrue(n2.isRemoved());
+        Assert.assertNull(store.getById("urn:2"));
+        Assert.assertSame(n1, store.getByTitle("a"));
+        store.remove(n1);
+        Assert.assertNull(store.getByTitle("a"));
+        Assert.assertSame(n3, store.getByTitle("b"));
+    }
+
+    @Test
+    public void testBytes() {
+        EntryStore store = new EntryStore();
+        SyndEntry e1 = entry("a");
+        SyndContent content = new SyndContentImpl();
+        content.setValue("caf\u00e9 \u20ac");
+        e1.setDescription(content);
+        EntryStore.Node n1 = store.addFirst(e1);
+        EntryStore.Node n2 = store.addFirst(entry("b"));
+        Assert.assertEquals(9, n1.getBytes());
+        Assert.assertEquals(0, n2.getBytes());
+        Assert.assertEquals(9, store.getBytes());
+        store.remove(n1);
+        Assert.assertEquals(0, store.getBytes());
+    }
+
+}
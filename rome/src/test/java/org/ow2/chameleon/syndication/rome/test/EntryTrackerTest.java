@@ -0,0 +1,113 @@
+/*
+ * Copyright 2009 OW2 Chameleon
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ow2.chameleon.syndication.rome.test;
+
+import java.io.StringReader;
+import java.util.List;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+import org.ow2.chameleon.syndication.FeedEntry;
+import org.ow2.chameleon.syndication.rome.EntryTracker;
+import org.ow2.chameleon.syndication.rome.StreamingFeedParser;
+
+
+public class EntryTrackerTest {
+
+    private List<FeedEntry> parse(String items) throws Exception {
+        String rss = "<rss version=\"2.0\"><channel><title>t</title>"
+            + items + "</channel></rss>";
+        return new StreamingFeedParser().parse(new StringReader(rss), -1,
+                null).getEntries();
+    }
+
+    private String item(String guid, String title, String date) {
+        return "<item><guid>" + guid + "</guid><title>" + title
+            + "</title><description>d</description><pubDate>" + date
+            + "</pubDate></item>";
+    }
+
+    @Test
+    public void testNewEntries() throws Exception {
+        EntryTracker tracker = new EntryTracker();
+        Assert.assertTrue(tracker.isEmpty());
+        List<FeedEntry> changed = tracker.diff(parse(
+                item("a", "A", "Mon, 01 Jun 2009 10:00:00 GMT")
+                + item("b", "B", "Mon, 01 Jun 2009 10:00:00 GMT")));
+        Assert.assertEquals(2, changed.size());
+
+        // Same date, but a new guid.
+        changed = tracker.diff(parse(
+                item("c", "C", "Mon, 01 Jun 2009 10:00:00 GMT")
+                + item("a", "A", "Mon, 01 Jun 2009 10:00:00 GMT")
+                + item("b", "B", "Mon, 01 Jun 2009 10:00:00 GMT")));
+        Assert.assertEquals(1, changed.size());
+        Assert.assertEquals("C", changed.get(0).title());
+    }
+
+    @Test
+    public void testRewrittenDates() throws Exception {
+        EntryTracker tracker = new EntryTracker();
+        tracker.diff(parse(item("a", "A", "Mon, 01 Jun 2009 10:00:00 GMT")));
+        List<FeedEntry> changed = tracker.diff(parse(
+                item("a", "A", "Tue, 02 Jun 2009 10:00:00 GMT")));
+        Assert.assertTrue(changed.isEmpty());
+    }
+
+    @Test
+    public void testUpdatedEntries() throws Exception {
+        EntryTracker tracker = new EntryTracker();
+        tracker.diff(parse(item("a", "A", "Mon, 01 Jun 2009 10:00:00 GMT")
+                + item("b", "B", "Mon, 01 Jun 2009 10:00:00 GMT")));
+        List<FeedEntry> changed = tracker.diff(parse(
+                item("a", "A (fixed)", "Mon, 01 Jun 2009 10:00:00 GMT")
+                + item("b", "B", "Mon, 01 Jun 2009 10:00:00 GMT")));
+        Assert.assertEquals(1, changed.size());
+        Assert.assertEquals("A (fixed)", changed.get(0).title());
+    }
+
+    @Test
+    public void testStateRestore() throws Exception {
+        EntryTracker tracker = new EntryTracker();
+        List<FeedEntry> entries = parse(item("a", "A", "")
+                + item("b", "B", ""));
+        tracker.diff(entries);
+        EntryTracker copy = new EntryTracker(tracker.getKeys(),
+                tracker.getVersions());
+        Assert.assertTrue(copy.contains(entries.get(0)));
+        Assert.assertTrue(copy.diff(entries).isEmpty());
+    }
+
+    @Test
+    public void testLargeFeed() throws Exception {
+        StringBuilder items = new StringBuilder();
+        for (int i = 0; i < 2000; i++) {
+            items.append(item("id-" + i, "T" + i, ""));
+        }
+        List<FeedEntry> entries = parse(items.toString());
+        EntryTracker tracker = new EntryTracker();
+        Assert.assertEquals(2000, tracker.diff(entries).size());
+        long[] keys = tracker.getKeys();
+        for (int i = 1; i < keys.length; i++) {
+            Assert.assertTrue(keys[i - 1] <= keys[i]);
+        }
+        for (FeedEntry entry : entries) {
+            Assert.assertTrue(tracker.contains(entry));
+        }
+        Assert.assertTrue(tracker.diff(entries).isEmpty());
+    }
+
+}
@@ -14,14 +14,27 @@
  */
 package org.ow2.chameleon.syndication.rome.test;
 
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.net.InetSocketAddress;
 import java.net.URL;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import junit.framework.Assert;
 
 import org.junit.Test;
 import org.ow2.chameleon.syndication.FeedEntry;
 import org.ow2.chameleon.syndication.rome.FeedReaderImpl;
+import org.ow2.chameleon.syndication.rome.ReaderStateStore;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
 
 
 public class FeedReaderImplTest {
@@ -147,4 +160,211 @@ public class FeedReaderImplTest {
         }
     }
 
+    @Test
+    public void testConditionalGet() throws Exception {
+        HttpServer server = HttpServer.create(new InetSocketAddress(0), 0);
+        server.createContext("/feed", new HttpHandler() {
+            public void handle(HttpExchange exchange) throws IOException {
+                if ("\"v1\"".equals(exchange.getRequestHeaders().getFirst(
+                        "If-None-Match"))) {
+                    exchange.sendResponseHeaders(304, -1);
+                    exchange.close();
+                    return;
+                }
+                File file = new File("src/test/resources/rss-v2.xml");
+                exchange.getResponseHeaders().set("ETag", "\"v1\"");
+                exchange.getResponseHeaders().set("Content-Type",
+                        "application/rss+xml");
+                exchange.sendResponseHeaders(200, file.length());
+                InputStream in = new FileInputStream(file);
+                OutputStream out = exchange.getResponseBody();
+                byte[] buffer = new byte[4096];
+                int read;
+                while ((read = in.read(buffer)) != -1) {
+                    out.write(buffer, 0, read);
+                }
+                in.close();
+                exchange.close();
+            }
+        });
+        server.start();
+        try {
+            URL url = new URL("http://localhost:"
+                    + server.getAddress().getPort() + "/feed");
+            FeedReaderImpl reader = new FeedReaderImpl(url, 200, 5);
+            Assert.assertEquals(1, reader.getFullFetchCount());
+            Thread.sleep(1000);
+            reader.stop();
+            Assert.assertEquals(1, reader.getFullFetchCount());
+            Assert.assertTrue(reader.getNotModifiedCount() > 0);
+            Assert.assertEquals("RSS Example", reader.getTitle());
+            Assert.assertEquals(1, reader.getEntries().size());
+        } finally {
+            server.stop(0);
+        }
+    }
+
+    @Test
+    public void testSnapshot() throws Exception {
+        URL ak = new URL("file:src/test/resources/rss-v2.xml");
+        FeedReaderImpl reader = new FeedReaderImpl(ak, 10000, 5);
+        List<FeedEntry> entries = reader.getEntries();
+        Assert.assertSame(entries, reader.getEntries());
+        Assert.assertSame(entries.get(0), reader.getLastEntry());
+        try {
+            entries.clear();
+            Assert.fail("The entries must be unmodifiable");
+        } catch (UnsupportedOperationException e) {
+            // Ok
+        }
+        reader.stop();
+    }
+
+    @Test
+    public void testRestoredState() throws Exception {
+        File dir = new File("target/state");
+        if (dir.isDirectory()) {
+            for (File file : dir.listFiles()) {
+                file.delete();
+            }
+        }
+        System.setProperty(ReaderStateStore.DIRECTORY_PROPERTY, dir
+                .getAbsolutePath());
+        try {
+            URL ak = new URL("file:src/test/resources/rss-v2.xml");
+            FeedReaderImpl reader = new FeedReaderImpl(ak, -1, 5);
+            Assert.assertEquals(1, reader.getFullFetchCount());
+            Assert.assertTrue(new ReaderStateStore(dir).getFile(
+                    ak.toExternalForm()).isFile());
+
+            // The restarted reader does not fetch the feed.
+            FeedReaderImpl restarted = new FeedReaderImpl(ak, -1, 5);
+            Assert.assertEquals(0, restarted.getFullFetchCount());
+            Assert.assertEquals("RSS Example", restarted.getTitle());
+            Assert.assertEquals(1, restarted.getEntries().size());
+            Assert.assertEquals(reader.getLastEntry().title(), restarted
+                    .getLastEntry().title());
+            Assert.assertEquals(reader.getLastEntry().publicationDate(),
+                    restarted.getLastEntry().publicationDate());
+
+            // A corrupted state is ignored, the feed is fetched again.
+            File state = new ReaderStateStore(dir).getFile(ak
+                    .toExternalForm());
+            RandomAccessFile raf = new RandomAccessFile(state, "rw");
+            raf.seek(20);
+            raf.writeInt(Integer.MAX_VALUE);
+            raf.close();
+            FeedReaderImpl recovered = new FeedReaderImpl(ak, -1, 5);
+            Assert.assertEquals(1, recovered.getFullFetchCount());
+            Assert.assertEquals(1, recovered.getEntries().size());
+        } finally {
+            System.clearProperty(ReaderStateStore.DIRECTORY_PROPERTY);
+        }
+    }
+
+    @Test
+    public void testAsynchronousActivation() throws Exception {
+        HttpServer server = HttpServer.create(new InetSocketAddress(0), 0);
+        server.createContext("/feed", new HttpHandler() {
+            public void handle(HttpExchange exchange) throws IOException {
+                try {
+                    Thread.sleep(500);
+                } catch (InterruptedException e) {
+                    // Ignore
+                }
+                File file = new File("src/test/resources/rss-v2.xml");
+                exchange.sendResponseHeaders(200, file.length());
+                InputStream in = new FileInputStream(file);
+                OutputStream out = exchange.getResponseBody();
+                byte[] buffer = new byte[4096];
+                int read;
+                while ((read = in.read(buffer)) != -1) {
+                    out.write(buffer, 0, read);
+                }
+                in.close();
+                exchange.close();
+            }
+        });
+        server.start();
+        try {
+            FeedReaderImpl reader = new FeedReaderImpl();
+            long begin = System.currentTimeMillis();
+            reader.setUrl("http://localhost:" + server.getAddress().getPort()
+                    + "/feed");
+            Assert.assertTrue(System.currentTimeMillis() - begin < 500);
+            Assert.assertTrue(reader.getEntries().isEmpty());
+
+            reader.start();
+            for (int i = 0; i < 50 && reader.getFullFetchCount() == 0; i++) {
+                Thread.sleep(100);
+            }
+            reader.stop();
+            Assert.assertEquals(1, reader.getFullFetchCount());
+            Assert.assertEquals("RSS Example", reader.getTitle());
+            Assert.assertEquals(1, reader.getEntries().size());
+        } finally {
+            server.stop(0);
+        }
+    }
+
+
+    @Test
+    public void testReconfiguredUrl() throws Exception {
+        final AtomicBoolean validators = new AtomicBoolean();
+        HttpServer server = HttpServer.create(new InetSocketAddress(0), 0);
+        server.createContext("/", new HttpHandler() {
+            public void handle(HttpExchange exchange) throws IOException {
+                boolean atom = exchange.getRequestURI().getPath().equals(
+                        "/atom");
+                if (exchange.getRequestHeaders().getFirst("If-None-Match")
+                        != null) {
+                    if (atom) {
+                        validators.set(true);
+                    }
+                    exchange.sendResponseHeaders(304, -1);
+                    exchange.close();
+                    return;
+                }
+                File file = new File(atom ? "src/test/resources/atom-v1.xml"
+                        : "src/test/resources/rss-v2.xml");
+                exchange.getResponseHeaders().set("ETag", "\"v1\"");
+                exchange.sendResponseHeaders(200, file.length());
+                InputStream in = new FileInputStream(file);
+                OutputStream out = exchange.getResponseBody();
+                byte[] buffer = new byte[4096];
+                int read;
+                while ((read = in.read(buffer)) != -1) {
+                    out.write(buffer, 0, read);
+                }
+                in.close();
+                exchange.close();
+            }
+        });
+        server.start();
+        try {
+            String base = "http://localhost:" + server.getAddress().getPort();
+            FeedReaderImpl reader = new FeedReaderImpl();
+            reader.setUrl(base + "/rss");
+            reader.start();
+            for (int i = 0; i < 50 && reader.getFullFetchCount() == 0; i++) {
+                Thread.sleep(100);
+            }
+            Assert.assertEquals("RSS Example", reader.getTitle());
+
+            // The new feed is read at once, without the old validators
+            reader.setUrl(base + "/atom");
+            for (int i = 0; i < 50 && reader.getFullFetchCount() < 2; i++) {
+                Thread.sleep(100);
+            }
+            reader.stop();
+            Assert.assertEquals(2, reader.getFullFetchCount());
+            Assert.assertFalse(validators.get());
+            Assert.assertEquals("Example Feed", reader.getTitle());
+            Assert.assertEquals("Atom-Powered Robots Run Amok", reader
+                    .getLastEntry().title());
+        } finally {
+            server.stop(0);
+        }
+    }
+
 }
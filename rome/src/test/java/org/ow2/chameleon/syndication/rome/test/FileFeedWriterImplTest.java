@@ -15,6 +15,10 @@
 package org.ow2.chameleon.syndication.rome.test;
 
 import java.io.File;
+import java.io.FileOutputStream;
+import java.io.RandomAccessFile;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import junit.framework.Assert;
 
@@ -23,9 +27,14 @@ import org.junit.Test;
 import org.ow2.chameleon.syndication.FeedEntry;
 import org.ow2.chameleon.syndication.FeedReader;
 import org.ow2.chameleon.syndication.FeedWriter;
+import org.ow2.chameleon.syndication.IdentifiedFeedEntry;
 import org.ow2.chameleon.syndication.rome.FeedReaderImpl;
 import org.ow2.chameleon.syndication.rome.FileFeedWriter;
 
+import com.sun.syndication.feed.synd.SyndFeed;
+import com.sun.syndication.io.SyndFeedInput;
+import com.sun.syndication.io.XmlReader;
+
 
 public class FileFeedWriterImplTest {
 
@@ -108,6 +117,58 @@ public class FileFeedWriterImplTest {
         Assert.assertNotNull(entry.publicationDate());
     }
 
+    @Test
+    public void keepChannelMetadata() throws Exception {
+        File file = new File("target/tmp/" + "metadata" + "-"
+                + System.currentTimeMillis() + ".xml");
+        file.getParentFile().mkdirs();
+        FileOutputStream out = new FileOutputStream(file);
+        out.write(("<?xml version=\"1.0\" encoding=\"UTF-8\"?>"
+                + "<rss version=\"2.0\" xmlns:x=\"urn:x\"><channel>"
+                + "<title>file title</title><link>http://example.org</link>"
+                + "<description>d</description><language>fr</language>"
+                + "<copyright>OW2</copyright><x:extra>e</x:extra>"
+                + "<item><title>t0</title><description>c</description>"
+                + "</item></channel></rss>").getBytes("UTF-8"));
+        out.close();
+
+        FileFeedWriter writer = new FileFeedWriter(file, "a feed", "rss_2.0",
+                20);
+        writer.addEntry(writer.createFeedEntry().title("t1").content("c"));
+        SyndFeed view = writer.getFeed();
+        Assert.assertEquals("fr", view.getLanguage());
+        Assert.assertEquals(1, ((List< ? >) view.getForeignMarkup()).size());
+        writer.stop();
+        SyndFeed feed = read(file);
+        Assert.assertEquals(2, feed.getEntries().size());
+        Assert.assertEquals("fr", feed.getLanguage());
+        Assert.assertEquals("OW2", feed.getCopyright());
+        Assert.assertEquals("file title", feed.getTitle());
+
+        // Entries loaded from the snapshot, metadata from the feed file
+        Assert.assertTrue(new File(file.getPath() + ".entries").isFile());
+        writer = new FileFeedWriter(file, "a feed", "atom_1.0", 20);
+        view = writer.getFeed();
+        Assert.assertEquals(2, view.getEntries().size());
+        Assert.assertEquals("file title", view.getTitle());
+        Assert.assertEquals("rss_2.0", view.getFeedType());
+        Assert.assertEquals("OW2", view.getCopyright());
+        writer.stop();
+
+        // Same metadata with the journal storage
+        writer = new FileFeedWriter(file, "a feed", "atom_1.0", 20);
+        writer.setStorage(FileFeedWriter.STORAGE_JOURNAL);
+        writer.addEntry(writer.createFeedEntry().title("t2").content("c"));
+        writer.stop();
+        writer = new FileFeedWriter(file, "a feed", "atom_1.0", 20);
+        writer.setStorage(FileFeedWriter.STORAGE_JOURNAL);
+        view = writer.getFeed();
+        Assert.assertEquals(3, view.getEntries().size());
+        Assert.assertEquals("file title", view.getTitle());
+        Assert.assertEquals("fr", view.getLanguage());
+        writer.stop();
+    }
+
     @Test
     public void restoreFeed() throws Exception {
         File file = new File("target/tmp/" + System.currentTimeMillis()
@@ -134,4 +195,235 @@ public class FileFeedWriterImplTest {
         Assert.assertEquals("the content", entry.content());
         Assert.assertNotNull(entry.publicationDate());
     }
+    @Test
+    public void writeBehind() throws Exception {
+        File file = new File("target/tmp/" + "behind" + "-"
+                + System.currentTimeMillis() + ".xml");
+
+        FileFeedWriter writer = new FileFeedWriter(file, "a feed", "rss_2.0",
+                20);
+        writer.setWriteDelay(60000);
+        for (int i = 0; i < 5; i++) {
+            writer.addEntry(writer.createFeedEntry().title("title " + i)
+                    .content("the content"));
+        }
+        // Nothing written yet
+        Assert.assertTrue(writer.isDirty());
+        Assert.assertEquals(0, file.length());
+
+        writer.flush();
+        Assert.assertFalse(writer.isDirty());
+        Assert.assertEquals(5, read(file).getEntries().size());
+
+        // A full batch is written in the background
+        writer.setWriteBatch(3);
+        for (int i = 5; i < 8; i++) {
+            writer.addEntry(writer.createFeedEntry().title("title " + i)
+                    .content("the content"));
+        }
+        for (int i = 0; i < 50 && writer.isDirty(); i++) {
+            Thread.sleep(100);
+        }
+        Assert.assertFalse(writer.isDirty());
+        writer.stop();
+        Assert.assertEquals(8, read(file).getEntries().size());
+
+        // Pending modifications are written on invalidation
+        writer.removeEntryByTitle("title 7");
+        Assert.assertTrue(writer.isDirty());
+        writer.stop();
+        Assert.assertEquals(7, read(file).getEntries().size());
+    }
+
+    @Test
+    public void recoverFromBackup() throws Exception {
+        File file = new File("target/tmp/" + "backup" + "-"
+                + System.currentTimeMillis() + ".xml");
+        File backup = new File(file.getPath() + ".bak");
+
+        FileFeedWriter writer = new FileFeedWriter(file, "a feed", "rss_2.0",
+                20);
+        writer.addEntry(writer.createFeedEntry().title("title 1")
+                .content("the content"));
+        // The first version is not a copy of a valid feed
+        Assert.assertFalse(backup.exists());
+        writer.addEntry(writer.createFeedEntry().title("title 2")
+                .content("the content"));
+        Assert.assertEquals(1, read(backup).getEntries().size());
+        Assert.assertEquals(2, read(file).getEntries().size());
+        Assert.assertFalse(new File(file.getPath() + ".tmp").exists());
+
+        // Simulate a truncated feed file
+        FileOutputStream out = new FileOutputStream(file);
+        out.write("<?xml version=\"1.0\"?><rss><chan".getBytes("UTF-8"));
+        out.close();
+
+        writer = new FileFeedWriter(file, "a feed", "rss_2.0", 20);
+        Assert.assertEquals(1, writer.getEntries().size());
+        Assert.assertTrue(new File(file.getPath() + ".corrupt").exists());
+        writer.addEntry(writer.createFeedEntry().title("title 3")
+                .content("the content"));
+        Assert.assertEquals(2, read(file).getEntries().size());
+        // The corrupted file was not kept as backup
+        Assert.assertEquals(1, read(backup).getEntries().size());
+
+        // A lost feed file is recovered from the backup
+        Assert.assertTrue(file.delete());
+        writer = new FileFeedWriter(file, "a feed", "rss_2.0", 20);
+        Assert.assertEquals(1, writer.getEntries().size());
+    }
+
+    @Test
+    public void feedFileAlwaysExists() throws Exception {
+        final File file = new File("target/tmp/" + "replace" + "-"
+                + System.currentTimeMillis() + ".xml");
+        FileFeedWriter writer = new FileFeedWriter(file, "a feed", "rss_2.0",
+                20);
+        writer.addEntry(writer.createFeedEntry().title("t").content("c"));
+        final AtomicBoolean missing = new AtomicBoolean();
+        final AtomicBoolean done = new AtomicBoolean();
+        Thread reader = new Thread() {
+            public void run() {
+                while (!done.get()) {
+                    if (!file.isFile()) {
+                        missing.set(true);
+                    }
+                }
+            }
+        };
+        reader.start();
+        for (int i = 0; i < 100; i++) {
+            writer.addEntry(writer.createFeedEntry().title("t" + i)
+                    .content("c"));
+        }
+        done.set(true);
+        reader.join();
+        writer.stop();
+        Assert.assertFalse(missing.get());
+        Assert.assertTrue(new File(file.getPath() + ".bak").isFile());
+    }
+
+    @Test
+    public void journalStorage() throws Exception {
+        File file = new File("target/tmp/" + "journal" + "-"
+                + System.currentTimeMillis() + ".xml");
+        File journal = new File(file.getPath() + ".journal");
+
+        FileFeedWriter writer = new FileFeedWriter(file, "a feed", "rss_2.0",
+                20);
+        writer.setStorage(FileFeedWriter.STORAGE_JOURNAL);
+        for (int i = 0; i < 5; i++) {
+            writer.addEntry(writer.createFeedEntry().title("title " + i)
+                    .content("content " + i));
+        }
+        writer.removeEntryByTitle("title 3");
+        Assert.assertTrue(journal.length() > 0);
+        Assert.assertTrue(writer.isDirty());
+
+        // Simulate a crash in the middle of a record
+        FileOutputStream out = new FileOutputStream(journal, true);
+        out.write(new byte[] {0, 0, 1, 0, 1, 2});
+        out.close();
+
+        // The entries are rebuilt from the journal
+        writer = new FileFeedWriter(file, "a feed", "rss_2.0", 20);
+        writer.setStorage(FileFeedWriter.STORAGE_JOURNAL);
+        List<FeedEntry> entries = writer.getEntries();
+        Assert.assertEquals(4, entries.size());
+        Assert.assertEquals("title 4", entries.get(0).title());
+        Assert.assertEquals("title 2", entries.get(1).title());
+        Assert.assertEquals("content 0", entries.get(3).content());
+
+        writer.addEntry(writer.createFeedEntry().title("title 5")
+                .content("content 5"));
+        writer.stop();
+        Assert.assertFalse(journal.exists());
+        Assert.assertEquals(5, read(file).getEntries().size());
+
+        // Loaded from the snapshot
+        writer = new FileFeedWriter(file, "a feed", "rss_2.0", 20);
+        writer.setStorage(FileFeedWriter.STORAGE_JOURNAL);
+        Assert.assertEquals(5, writer.getEntries().size());
+        Assert.assertEquals("title 5", writer.getLastEntry().title());
+        writer.removeEntry(writer.getLastEntry());
+        writer.stop();
+        Assert.assertEquals(4, read(file).getEntries().size());
+
+        // A corrupted snapshot is moved aside and the feed file imported
+        File snapshot = new File(file.getPath() + ".snapshot");
+        RandomAccessFile raf = new RandomAccessFile(snapshot, "rw");
+        raf.seek(8);
+        raf.writeLong(-1);
+        raf.close();
+        writer = new FileFeedWriter(file, "a feed", "rss_2.0", 20);
+        writer.setStorage(FileFeedWriter.STORAGE_JOURNAL);
+        Assert.assertEquals(4, writer.getEntries().size());
+        Assert.assertTrue(new File(snapshot.getPath() + ".corrupt").exists());
+        Assert.assertTrue(snapshot.exists());
+        writer.stop();
+
+        // The new snapshot holds the imported entries
+        writer = new FileFeedWriter(file, "a feed", "rss_2.0", 20);
+        writer.setStorage(FileFeedWriter.STORAGE_JOURNAL);
+        Assert.assertEquals(4, writer.getEntries().size());
+        writer.stop();
+    }
+
+    @Test
+    public void entrySnapshot() throws Exception {
+        File file = new File("target/tmp/" + "snapshot" + "-"
+                + System.currentTimeMillis() + ".xml");
+        File entries = new File(file.getPath() + ".entries");
+
+        FileFeedWriter writer = new FileFeedWriter(file, "a feed", "rss_2.0",
+                20);
+        writer.addEntry(writer.createFeedEntry().title("title 1").author("me")
+                .content("caf\u00e9").url("http://example.org/1")
+                .category("c1").category("c2"));
+        writer.addEntry(writer.createFeedEntry().title("title 2").author("me")
+                .content("the content"));
+        Assert.assertTrue(entries.isFile());
+        FeedEntry written = writer.getEntries().get(1);
+
+        // Replace the feed file by garbage of the same size and date: the
+        // snapshot is used, the feed file is not parsed.
+        long modified = file.lastModified();
+        byte[] garbage = new byte[(int) file.length()];
+        FileOutputStream out = new FileOutputStream(file);
+        out.write(garbage);
+        out.close();
+        file.setLastModified(modified);
+
+        writer = new FileFeedWriter(file, "a feed", "rss_2.0", 20);
+        List<FeedEntry> loaded = writer.getEntries();
+        Assert.assertEquals(2, loaded.size());
+        FeedEntry entry = loaded.get(1);
+        Assert.assertEquals(((IdentifiedFeedEntry) written).id(),
+                ((IdentifiedFeedEntry) entry).id());
+        Assert.assertEquals("title 1", entry.title());
+        Assert.assertEquals("me", entry.author());
+        Assert.assertEquals("caf\u00e9", entry.content());
+        Assert.assertEquals("http://example.org/1", entry.url());
+        Assert.assertEquals(2, entry.categories().size());
+        Assert.assertEquals(written.publicationDate(), entry.publicationDate());
+
+        // Unread entries are copied to the next snapshot
+        writer = new FileFeedWriter(file, "a feed", "rss_2.0", 20);
+        writer.removeEntryByTitle("title 2");
+        Assert.assertEquals(1, read(file).getEntries().size());
+        writer = new FileFeedWriter(file, "a feed", "rss_2.0", 20);
+        Assert.assertEquals("caf\u00e9", writer.getLastEntry().content());
+
+        // A stale snapshot is ignored
+        writer.addEntry(writer.createFeedEntry().title("title 3")
+                .content("the content"));
+        file.setLastModified(file.lastModified() - 10000);
+        writer = new FileFeedWriter(file, "a feed", "rss_2.0", 20);
+        Assert.assertEquals(2, writer.getEntries().size());
+    }
+
+    private SyndFeed read(File file) throws Exception {
+        return new SyndFeedInput().build(new XmlReader(file));
+    }
+
 }
@@ -0,0 +1,262 @@
+/*
+ * Copyright 2009 OW2 Chameleon
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ow2.chameleon.syndication.rome.test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.zip.GZIPInputStream;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+import org.ow2.chameleon.syndication.rome.FeedQuery;
+import org.ow2.chameleon.syndication.rome.FeedRenderer;
+import org.ow2.chameleon.syndication.rome.HttpFeedWriter;
+import org.ow2.chameleon.syndication.rome.RenderedFeed;
+
+import com.sun.syndication.feed.synd.SyndEntry;
+import com.sun.syndication.feed.synd.SyndFeed;
+import com.sun.syndication.io.SyndFeedInput;
+import com.sun.syndication.io.XmlReader;
+
+
+public class HttpFeedWriterImplTest {
+
+    @Test
+    public void testRenderingCache() throws Exception {
+        HttpFeedWriter writer = new HttpFeedWriter("feed", "a feed",
+                "rss_2.0", 20);
+        writer.init();
+        RenderedFeed feed = writer.getRenderedFeed();
+        Assert.assertSame(feed, writer.getRenderedFeed());
+        Assert.assertEquals("application/rss+xml; charset=UTF-8", feed
+                .getContentType());
+
+        writer.addEntry(writer.createFeedEntry().title("a title")
+                .author("me").content("the content"));
+        RenderedFeed updated = writer.getRenderedFeed();
+        Assert.assertNotSame(feed, updated);
+        Assert.assertTrue(updated.getVersion() > feed.getVersion());
+        String xml = new String(updated.getBytes(), "UTF-8");
+        Assert.assertTrue(xml.contains("<title>a title</title>"));
+        Assert.assertSame(updated, writer.getRenderedFeed());
+
+        writer.removeEntryByTitle("a title");
+        Assert.assertFalse(new String(writer.getRenderedFeed().getBytes(),
+                "UTF-8").contains("<title>a title</title>"));
+    }
+
+    @Test
+    public void testValidators() throws Exception {
+        HttpFeedWriter writer = new HttpFeedWriter("feed", "a feed",
+                "atom_0.3", 20);
+        writer.init();
+        RenderedFeed feed = writer.getRenderedFeed();
+        Assert.assertEquals(-1, feed.getLastModified());
+        Assert.assertTrue(feed.getETag().startsWith("\""));
+        Assert.assertFalse(feed.isNotModified(null, -1));
+        Assert.assertTrue(feed.isNotModified(feed.getETag(), -1));
+        Assert.assertTrue(feed.isNotModified("\"x\", W/" + feed.getETag(),
+                -1));
+        Assert.assertTrue(feed.isNotModified("*", -1));
+
+        writer.addEntry(writer.createFeedEntry().title("a title")
+                .author("me").content("the content"));
+        RenderedFeed updated = writer.getRenderedFeed();
+        Assert.assertFalse(feed.getETag().equals(updated.getETag()));
+        Assert.assertFalse(updated.isNotModified(feed.getETag(), -1));
+        long modified = updated.getLastModified();
+        Assert.assertTrue(modified > 0);
+        Assert.assertEquals(0, modified % 1000);
+        Assert.assertTrue(updated.isNotModified(null, modified));
+        Assert.assertFalse(updated.isNotModified(null, modified - 1000));
+        // If-None-Match wins over If-Modified-Since
+        Assert.assertFalse(updated.isNotModified(feed.getETag(), modified));
+    }
+
+    @Test
+    public void testGzipVariant() throws Exception {
+        HttpFeedWriter writer = new HttpFeedWriter("feed", "a feed",
+                "rss_2.0", 20);
+        writer.init();
+        for (int i = 0; i < 20; i++) {
+            writer.addEntry(writer.createFeedEntry().title("a title " + i)
+                    .author("me").content("the content"));
+        }
+        RenderedFeed feed = writer.getRenderedFeed();
+        byte[] gzip = feed.getGzipBytes();
+        Assert.assertSame(gzip, feed.getGzipBytes());
+        Assert.assertTrue(gzip.length < feed.getBytes().length);
+
+        InputStream in = new GZIPInputStream(new ByteArrayInputStream(gzip));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        int read;
+        while ((read = in.read()) != -1) {
+            out.write(read);
+        }
+        Assert.assertTrue(Arrays.equals(feed.getBytes(), out.toByteArray()));
+
+        Assert.assertFalse(feed.getETag().equals(feed.getGzipETag()));
+        Assert.assertTrue(feed.isNotModified(feed.getGzipETag(), -1));
+
+        Assert.assertTrue(RenderedFeed.acceptsGzip("gzip, deflate"));
+        Assert.assertTrue(RenderedFeed.acceptsGzip("deflate, gzip;q=0.5"));
+        Assert.assertFalse(RenderedFeed.acceptsGzip("gzip;q=0"));
+        Assert.assertFalse(RenderedFeed.acceptsGzip("identity"));
+        Assert.assertFalse(RenderedFeed.acceptsGzip(null));
+    }
+
+    @Test
+    public void testPaging() throws Exception {
+        HttpFeedWriter writer = new HttpFeedWriter("feed", "a feed",
+                "atom_1.0", 20);
+        writer.init();
+        for (int i = 0; i < 5; i++) {
+            writer.addEntry(writer.createFeedEntry().title("a title " + i)
+                    .author("me").content("the content"));
+        }
+        RenderedFeed page = writer.getRenderedFeed(new FeedQuery(2, 2, null),
+                "http://localhost/feed");
+        String xml = new String(page.getBytes(), "UTF-8");
+        Assert.assertTrue(xml.contains("a title 2"));
+        Assert.assertTrue(xml.contains("a title 1"));
+        Assert.assertFalse(xml.contains("a title 4"));
+        Assert.assertFalse(xml.contains("a title 0"));
+        Assert.assertTrue(xml.contains("href=\"http://localhost/feed?page=3&amp;limit=2\""));
+        Assert.assertTrue(xml.contains("rel=\"next\""));
+        Assert.assertTrue(xml.contains("rel=\"previous\""));
+        Assert.assertSame(page, writer.getRenderedFeed(new FeedQuery(2, 2,
+                null), "http://localhost/feed"));
+        Assert.assertFalse(page.getETag().equals(
+                writer.getRenderedFeed().getETag()));
+
+        // The last page has no next link
+        xml = new String(writer.getRenderedFeed(new FeedQuery(3, 2, null),
+                "http://localhost/feed").getBytes(), "UTF-8");
+        Assert.assertTrue(xml.contains("a title 0"));
+        Assert.assertFalse(xml.contains("rel=\"next\""));
+    }
+
+    @Test
+    public void testSince() throws Exception {
+        HttpFeedWriter writer = new HttpFeedWriter("feed", "a feed",
+                "rss_2.0", 20);
+        writer.init();
+        writer.addEntry(writer.createFeedEntry().title("old").author("me")
+                .content("the content"));
+        String xml = new String(writer.getRenderedFeed().getBytes(), "UTF-8");
+        int begin = xml.indexOf("urn:uuid:");
+        String id = xml.substring(begin, xml.indexOf('<', begin));
+        writer.addEntry(writer.createFeedEntry().title("new").author("me")
+                .content("the content"));
+
+        xml = new String(writer.getRenderedFeed(FeedQuery.parse(null, null,
+                id), "http://localhost/feed").getBytes(), "UTF-8");
+        Assert.assertTrue(xml.contains("<title>new</title>"));
+        Assert.assertFalse(xml.contains("<title>old</title>"));
+
+        xml = new String(writer.getRenderedFeed(FeedQuery.parse(null, null,
+                "Thu, 01 Jan 2009 00:00:00 GMT"), "http://localhost/feed")
+                .getBytes(), "UTF-8");
+        Assert.assertTrue(xml.contains("<title>new</title>"));
+        Assert.assertTrue(xml.contains("<title>old</title>"));
+        // Bounds selecting the same entries share the rendering.
+        Assert.assertSame(writer.getRenderedFeed(FeedQuery.parse(null, null,
+                "Thu, 01 Jan 2009 00:00:00 GMT"), "http://localhost/feed"),
+                writer.getRenderedFeed(FeedQuery.parse(null, null,
+                        "Fri, 02 Jan 2009 00:00:00 GMT"),
+                        "http://localhost/feed"));
+
+        xml = new String(writer.getRenderedFeed(FeedQuery.parse(null, "1",
+                null), "http://localhost/feed").getBytes(), "UTF-8");
+        Assert.assertTrue(xml.contains("<title>new</title>"));
+        Assert.assertFalse(xml.contains("<title>old</title>"));
+        Assert.assertTrue(xml.contains("<atom:link"));
+    }
+
+    @Test
+    public void testContentNegotiation() throws Exception {
+        HttpFeedWriter writer = new HttpFeedWriter("feed", "a feed",
+                "rss_2.0", 20);
+        writer.init();
+        writer.addEntry(writer.createFeedEntry().title("a \"title\"")
+                .author("me").content("the content").category("cat"));
+
+        FeedRenderer renderer = writer.getRenderer(null,
+                "application/feed+json");
+        Assert.assertEquals("json", renderer.getName());
+        Assert.assertEquals("atom_1.0", writer.getRenderer(null,
+                "application/rss+xml;q=0.5, application/atom+xml").getName());
+        Assert.assertEquals("atom_1.0", writer.getRenderer("atom",
+                "application/feed+json").getName());
+        Assert.assertSame(writer.getDefaultRenderer(), writer.getRenderer(
+                null, "text/html,application/xml;q=0.9,*/*;q=0.8"));
+        Assert.assertSame(writer.getDefaultRenderer(), writer.getRenderer(
+                null, null));
+
+        RenderedFeed json = writer.getRenderedFeed(FeedQuery.ALL,
+                "http://localhost/feed", renderer);
+        Assert.assertEquals("application/feed+json; charset=UTF-8", json
+                .getContentType());
+        String content = new String(json.getBytes(), "UTF-8");
+        Assert.assertTrue(content.startsWith(
+                "{\"version\":\"https://jsonfeed.org/version/1.1\""));
+        Assert.assertTrue(content.contains("\"title\":\"a \\\"title\\\"\""));
+        Assert.assertTrue(content.contains("\"authors\":[{\"name\":\"me\"}]"));
+        Assert.assertTrue(content.contains("\"tags\":[\"cat\"]"));
+        Assert.assertTrue(content.contains(
+                "\"feed_url\":\"http://localhost/feed\""));
+        Assert.assertTrue(new String(writer.getRenderedFeed(
+                new FeedQuery(1, 1, null), "http://localhost/feed", renderer)
+                .getBytes(), "UTF-8").contains(
+                "\"feed_url\":\"http://localhost/feed?page=1&limit=1\""));
+        Assert.assertSame(json, writer.getRenderedFeed(FeedQuery.ALL,
+                "http://localhost/feed", renderer));
+
+        RenderedFeed rss = writer.getRenderedFeed();
+        Assert.assertFalse(rss.getETag().equals(json.getETag()));
+        Assert.assertTrue(new String(rss.getBytes(), "UTF-8").contains(
+                "<rss"));
+    }
+
+    @Test
+    public void testFragments() throws Exception {
+        String[] types = new String[] {"rss_2.0", "atom_1.0", "atom_0.3",
+            "rss_1.0"};
+        for (String type : types) {
+            HttpFeedWriter writer = new HttpFeedWriter("feed", "a feed", type,
+                    20);
+            writer.init();
+            writer.addEntry(writer.createFeedEntry().title("a title 0")
+                    .url("http://e/0").author("me").content(
+                            "the <b>content</b>").category("c"));
+            writer.getRenderedFeed();
+            writer.addEntry(writer.createFeedEntry().title("a title 1")
+                    .url("http://e/1").author("me").content("the content"));
+            byte[] bytes = writer.getRenderedFeed().getBytes();
+
+            SyndFeed feed = new SyndFeedInput().build(new XmlReader(
+                    new ByteArrayInputStream(bytes)));
+            Assert.assertEquals(type, feed.getFeedType());
+            Assert.assertEquals("a feed", feed.getTitle());
+            Assert.assertEquals(2, feed.getEntries().size());
+            SyndEntry entry = (SyndEntry) feed.getEntries().get(1);
+            Assert.assertEquals("a title 0", entry.getTitle());
+        }
+    }
+
+}
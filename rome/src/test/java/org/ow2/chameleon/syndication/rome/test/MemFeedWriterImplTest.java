@@ -14,13 +14,21 @@
  */
 package org.ow2.chameleon.syndication.rome.test;
 
+import java.io.File;
+import java.util.List;
+
 import junit.framework.Assert;
 
 import org.junit.Test;
 import org.ow2.chameleon.syndication.FeedEntry;
+import org.ow2.chameleon.syndication.FeedEntryFilter;
 import org.ow2.chameleon.syndication.FeedWriter;
+import org.ow2.chameleon.syndication.IdentifiedFeedEntry;
 import org.ow2.chameleon.syndication.rome.MemoryFeedWriter;
 
+import com.sun.syndication.feed.synd.SyndEntry;
+import com.sun.syndication.io.SyndFeedOutput;
+
 
 public class MemFeedWriterImplTest {
 
@@ -87,4 +95,155 @@ public class MemFeedWriterImplTest {
         Assert.assertNotNull(entry.publicationDate());
     }
 
+    @Test
+    public void removeEntries() throws Exception {
+        FeedWriter writer = new MemoryFeedWriter("a feed", "rss_2.0", 20);
+        writer.addEntry(writer.createFeedEntry().title("a").content("1"));
+        writer.addEntry(writer.createFeedEntry().title("b").content("2"));
+        writer.addEntry(writer.createFeedEntry().title("a").content("3"));
+        writer.addEntry(writer.createFeedEntry().title("c").content("4"));
+        Assert.assertEquals(4, writer.getEntries().size());
+
+        // The most recent entry with the title is removed
+        writer.removeEntryByTitle("a");
+        List<FeedEntry> entries = writer.getEntries();
+        Assert.assertEquals(3, entries.size());
+        Assert.assertEquals("4", entries.get(0).content());
+        Assert.assertEquals("2", entries.get(1).content());
+        Assert.assertEquals("1", entries.get(2).content());
+
+        IdentifiedFeedEntry last = (IdentifiedFeedEntry) writer
+                .getLastEntry();
+        Assert.assertNotNull(last.id());
+        writer.removeEntryById(last.id());
+        Assert.assertEquals("b", writer.getLastEntry().title());
+
+        writer.removeEntry(writer.getLastEntry());
+        Assert.assertEquals(1, writer.getEntries().size());
+        Assert.assertEquals("a", writer.getLastEntry().title());
+    }
+
+    @Test
+    public void removeEntriesInBulk() throws Exception {
+        FeedWriter writer = new MemoryFeedWriter("a feed", "rss_2.0", 20);
+        for (int i = 0; i < 10; i++) {
+            writer.addEntry(writer.createFeedEntry().title("t" + i)
+                    .content(Integer.toString(i % 2)));
+        }
+        List<FeedEntry> entries = writer.getEntries();
+        Assert.assertEquals(2, writer.removeEntries(entries.subList(0, 2)));
+        Assert.assertEquals(0, writer.removeEntries(entries.subList(0, 2)));
+        Assert.assertEquals(8, writer.getEntries().size());
+
+        int removed = writer.removeEntries(new FeedEntryFilter() {
+            public boolean accept(FeedEntry entry) {
+                return "0".equals(entry.content());
+            }
+        });
+        Assert.assertEquals(4, removed);
+        for (FeedEntry entry : writer.getEntries()) {
+            Assert.assertEquals("1", entry.content());
+        }
+    }
+
+    @Test
+    public void retention() throws Exception {
+        MemoryFeedWriter writer = new MemoryFeedWriter("a feed", "rss_2.0",
+                -1);
+        writer.setMaxEntries(3);
+        for (int i = 0; i < 10; i++) {
+            writer.addEntry(writer.createFeedEntry().title("t" + i)
+                    .content("0123456789"));
+        }
+        List<FeedEntry> entries = writer.getEntries();
+        Assert.assertEquals(3, entries.size());
+        Assert.assertEquals("t9", entries.get(0).title());
+        Assert.assertEquals("t7", entries.get(2).title());
+
+        // Lowering a bound evicts immediately
+        writer.setMaxBytes(25);
+        Assert.assertEquals(2, writer.getEntries().size());
+        // The most recent entry is kept even if too large
+        writer.setMaxBytes(5);
+        Assert.assertEquals(1, writer.getEntries().size());
+        Assert.assertEquals("t9", writer.getLastEntry().title());
+
+        writer.setMaxBytes(-1);
+        writer.setMaxEntries(-1);
+        writer.setMaxAge(200);
+        writer.addEntry(writer.createFeedEntry().title("t10").content("x"));
+        Assert.assertEquals(2, writer.getEntries().size());
+        Thread.sleep(300);
+        writer.addEntry(writer.createFeedEntry().title("t11").content("x"));
+        Assert.assertEquals(1, writer.getEntries().size());
+        Thread.sleep(300);
+        // Entries also expire without additions
+        Assert.assertNull(writer.getLastEntry());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void archive() throws Exception {
+        File directory = new File("target/archive");
+        directory.mkdirs();
+        int files = directory.list().length;
+        MemoryFeedWriter writer = new MemoryFeedWriter("a feed", "rss_2.0",
+                -1);
+        writer.setArchive(directory.getPath());
+        StringBuilder content = new StringBuilder();
+        for (int i = 0; i < 200; i++) {
+            content.append("0123456789");
+        }
+        for (int i = 0; i < 1000; i++) {
+            writer.addEntry(writer.createFeedEntry().title("t" + i).author(
+                    "me").category("c" + (i % 2)).content(content + "-" + i));
+        }
+        Assert.assertEquals(1000, writer.getEntries().size());
+        FeedEntry entry = writer.getLastEntry();
+        Assert.assertEquals("t999", entry.title());
+        Assert.assertEquals("me", entry.author());
+        Assert.assertEquals(content + "-999", entry.content());
+        Assert.assertEquals("c1", entry.categories().get(0));
+
+        // Archived entries are rendered as any other entry
+        String xml = new SyndFeedOutput().outputString(writer.getFeedView());
+        Assert.assertTrue(xml.contains(content + "-0<"));
+        List<SyndEntry> before = writer.getFeed().getEntries();
+        Assert.assertEquals(1000, before.size());
+        // The entries of the view are mutable copies
+        before.get(0).setTitle("changed");
+        Assert.assertEquals("t999", writer.getLastEntry().title());
+
+        // Removing most entries compacts the archive
+        int removed = writer.removeEntries(new FeedEntryFilter() {
+            public boolean accept(FeedEntry entry) {
+                return !entry.content().endsWith("0");
+            }
+        });
+        Assert.assertEquals(900, removed);
+        List<FeedEntry> entries = writer.getEntries();
+        Assert.assertEquals(100, entries.size());
+        Assert.assertEquals(content + "-990", entries.get(0).content());
+        Assert.assertEquals(content + "-0", entries.get(99).content());
+        writer.removeEntryByTitle("t990");
+        Assert.assertEquals(content + "-980", writer.getLastEntry().content());
+        // Entries of a view stay readable after a compaction
+        Assert.assertEquals(content + "-1", before.get(998).getDescription()
+                .getValue());
+
+        // The entries survive a stop/init cycle, the archive file does not
+        writer.stop();
+        Assert.assertEquals(files, directory.list().length);
+        writer.init();
+        entries = writer.getEntries();
+        Assert.assertEquals(99, entries.size());
+        Assert.assertEquals(content + "-980", entries.get(0).content());
+        Assert.assertEquals(content + "-0", entries.get(98).content());
+        writer.addEntry(writer.createFeedEntry().title("t").content("c"));
+        Assert.assertEquals("c", writer.getLastEntry().content());
+        Assert.assertEquals(100, writer.getEntries().size());
+        writer.stop();
+        Assert.assertEquals(100, writer.getEntries().size());
+    }
+
 }
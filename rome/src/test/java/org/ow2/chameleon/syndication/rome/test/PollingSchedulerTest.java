@@ -0,0 +1,106 @@
+/*
+ * Copyright 2009 OW2 Chameleon
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ow2.chameleon.syndication.rome.test;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+import org.ow2.chameleon.syndication.rome.PollingScheduler;
+
+
+public class PollingSchedulerTest {
+
+    @Test
+    public void testBoundedWorkers() throws Exception {
+        PollingScheduler scheduler = new PollingScheduler(2);
+        final Set<String> threads = Collections
+                .synchronizedSet(new HashSet<String>());
+        final AtomicInteger count = new AtomicInteger();
+        for (int i = 0; i < 200; i++) {
+            scheduler.register(new PollingScheduler.Task() {
+                public long poll() {
+                    threads.add(Thread.currentThread().getName());
+                    count.incrementAndGet();
+                    return 20;
+                }
+            }, 20);
+        }
+        Thread.sleep(500);
+        scheduler.shutdown();
+        Assert.assertTrue(count.get() >= 200);
+        Assert.assertTrue(threads.size() <= 2);
+    }
+
+    @Test
+    public void testCancel() throws Exception {
+        PollingScheduler scheduler = new PollingScheduler(1);
+        final AtomicInteger count = new AtomicInteger();
+        PollingScheduler.Registration registration = scheduler.schedule(
+                new PollingScheduler.Task() {
+                    public long poll() {
+                        count.incrementAndGet();
+                        return 10;
+                    }
+                }, 0);
+        Thread.sleep(100);
+        registration.cancel();
+        int executions = count.get();
+        Thread.sleep(100);
+        scheduler.shutdown();
+        Assert.assertTrue(registration.isCancelled());
+        Assert.assertTrue(executions > 0);
+        Assert.assertTrue(count.get() <= executions + 1);
+    }
+
+    @Test
+    public void testTaskStop() throws Exception {
+        PollingScheduler scheduler = new PollingScheduler(1);
+        final AtomicInteger count = new AtomicInteger();
+        scheduler.schedule(new PollingScheduler.Task() {
+            public long poll() {
+                count.incrementAndGet();
+                return -1;
+            }
+        }, 0);
+        Thread.sleep(100);
+        scheduler.shutdown();
+        Assert.assertEquals(1, count.get());
+    }
+
+    @Test
+    public void testSharedLifecycle() throws Exception {
+        PollingScheduler first = PollingScheduler.acquire();
+        PollingScheduler second = PollingScheduler.acquire();
+        Assert.assertSame(first, second);
+        PollingScheduler.release(first);
+        Assert.assertFalse(first.isShutdown());
+        PollingScheduler.release(second);
+        Assert.assertTrue(first.isShutdown());
+        // Releasing a stopped scheduler has no effect.
+        PollingScheduler.release(first);
+
+        PollingScheduler third = PollingScheduler.acquire();
+        Assert.assertNotSame(first, third);
+        Assert.assertFalse(third.isShutdown());
+        PollingScheduler.release(third);
+        Assert.assertTrue(third.isShutdown());
+    }
+
+}
@@ -0,0 +1,177 @@
+/*
+ * Copyright 2009 OW2 Chameleon
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ow2.chameleon.syndication.rome.test;
+
+import java.io.FileReader;
+import java.io.StringReader;
+import java.util.Date;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+import org.ow2.chameleon.syndication.FeedEntry;
+import org.ow2.chameleon.syndication.rome.StreamingFeedParser;
+import org.ow2.chameleon.syndication.rome.StreamingFeedParser.ParsedFeed;
+
+import com.sun.syndication.io.FeedException;
+
+
+public class StreamingFeedParserTest {
+
+    private static String rss(int count) {
+        StringBuilder buffer = new StringBuilder();
+        buffer.append("<rss version=\"2.0\" "
+                + "xmlns:dc=\"http://purl.org/dc/elements/1.1/\"><channel>"
+                + "<title>Big feed</title><link>http://example.org</link>");
+        for (int i = count; i > 0; i--) {
+            buffer.append("<item><title>item " + i + "</title>"
+                    + "<guid>http://example.org/" + i + "</guid>"
+                    + "<dc:creator>me</dc:creator>"
+                    + "<category>c" + i + "</category>"
+                    + "<description>content " + i + "</description>"
+                    + "<pubDate>" + "Tue, 29 Aug 2006 0" + (i % 10)
+                    + ":00:00 GMT</pubDate></item>");
+        }
+        buffer.append("</channel></rss>");
+        return buffer.toString();
+    }
+
+    @Test
+    public void testReadRSS() throws Exception {
+        ParsedFeed feed = new StreamingFeedParser().parse(new FileReader(
+                "src/test/resources/rss-v2.xml"), -1, null);
+        Assert.assertEquals("RSS Example", feed.getTitle());
+        Assert.assertEquals(1, feed.getEntries().size());
+        FeedEntry entry = feed.getEntries().get(0);
+        Assert.assertEquals("Item Example", entry.title());
+        Assert.assertEquals("This is an example of an Item", entry.content());
+        Assert.assertEquals("", entry.author());
+        Assert.assertEquals("http://www.domain.com/link.htm", entry.url());
+        Assert.assertNotNull(entry.publicationDate());
+    }
+
+    @Test
+    public void testReadAtom() throws Exception {
+        ParsedFeed feed = new StreamingFeedParser().parse(new FileReader(
+                "src/test/resources/atom-v1.xml"), -1, null);
+        Assert.assertEquals("Example Feed", feed.getTitle());
+        Assert.assertEquals(1, feed.getEntries().size());
+        FeedEntry entry = feed.getEntries().get(0);
+        Assert.assertEquals("Atom-Powered Robots Run Amok", entry.title());
+        Assert.assertEquals("Some text.", entry.content());
+        Assert.assertEquals("http://example.org/2003/12/13/atom03", entry
+                .url());
+        Assert.assertNotNull(entry.publicationDate());
+    }
+
+    @Test
+    public void testDoctype() throws Exception {
+        String rss = "<?xml version=\"1.0\"?>\n"
+            + "<!-- comment -->\n"
+            + "<!DOCTYPE rss PUBLIC \"-//Netscape Communications//DTD RSS"
+            + " 0.91//EN\" \"http://my.netscape.com/publish/formats/"
+            + "rss-0.91.dtd\">\n"
+            + "<?xml-stylesheet type=\"text/xsl\" href=\"rss.xsl\"?>\n"
+            + "<rss version=\"0.91\"><channel><title>Netscape</title>"
+            + "<link>http://example.org</link><description>d</description>"
+            + "<language>en</language><item><title>item</title>"
+            + "<link>http://example.org/1</link></item></channel></rss>";
+        ParsedFeed feed = new StreamingFeedParser().parse(new StringReader(
+                rss), -1, null);
+        Assert.assertEquals("Netscape", feed.getTitle());
+        Assert.assertEquals(1, feed.getEntries().size());
+        Assert.assertEquals("item", feed.getEntries().get(0).title());
+    }
+
+    @Test
+    public void testStopOnMax() throws Exception {
+        ParsedFeed feed = new StreamingFeedParser().parse(new StringReader(
+                rss(500)), 5, null);
+        Assert.assertEquals("Big feed", feed.getTitle());
+        Assert.assertEquals(5, feed.getEntries().size());
+        Assert.assertTrue(feed.isTruncated());
+        FeedEntry entry = feed.getEntries().get(0);
+        Assert.assertEquals("item 500", entry.title());
+        Assert.assertEquals("me", entry.author());
+        Assert.assertEquals("http://example.org/500", entry.url());
+        Assert.assertEquals(1, entry.categories().size());
+    }
+
+    @Test
+    public void testStopBeforeDate() throws Exception {
+        ParsedFeed all = new StreamingFeedParser().parse(new StringReader(
+                rss(9)), -1, null);
+        Assert.assertEquals(9, all.getEntries().size());
+        Assert.assertFalse(all.isTruncated());
+
+        Date limit = all.getEntries().get(3).publicationDate();
+        ParsedFeed feed = new StreamingFeedParser().parse(new StringReader(
+                rss(9)), -1, limit);
+        Assert.assertEquals(4, feed.getEntries().size());
+        Assert.assertTrue(feed.isTruncated());
+    }
+
+    @Test
+    public void testRDF() throws Exception {
+        String rdf = "<rdf:RDF "
+                + "xmlns:rdf=\"http://www.w3.org/1999/02/22-rdf-syntax-ns#\" "
+                + "xmlns=\"http://purl.org/rss/1.0/\">"
+                + "<channel rdf:about=\"http://example.org\">"
+                + "<title>RDF feed</title></channel>"
+                + "<item rdf:about=\"http://example.org/1\">"
+                + "<title>first</title><link>http://example.org/1</link>"
+                + "</item></rdf:RDF>";
+        ParsedFeed feed = new StreamingFeedParser().parse(
+                new StringReader(rdf), -1, null);
+        Assert.assertEquals("RDF feed", feed.getTitle());
+        Assert.assertEquals(1, feed.getEntries().size());
+        Assert.assertEquals("first", feed.getEntries().get(0).title());
+    }
+
+    @Test(expected = FeedException.class)
+    public void testCorruptedFeed() throws Exception {
+        new StreamingFeedParser().parse(new FileReader(
+                "src/test/resources/rss-corrupted.xml"), -1, null);
+    }
+
+    @Test
+    public void testRefreshHints() throws Exception {
+        String rss = "<rss version=\"2.0\" "
+                + "xmlns:sy=\"http://purl.org/rss/1.0/modules/syndication/\">"
+                + "<channel><title>Hints</title><ttl>30</ttl>"
+                + "<sy:updatePeriod>hourly</sy:updatePeriod>"
+                + "<sy:updateFrequency>4</sy:updateFrequency>"
+                + "</channel></rss>";
+        ParsedFeed feed = new StreamingFeedParser().parse(
+                new StringReader(rss), -1, null);
+        // max(30 minutes, 1 hour / 4)
+        Assert.assertEquals(30 * 60 * 1000, feed.getRefreshHint());
+
+        feed = new StreamingFeedParser().parse(new FileReader(
+                "src/test/resources/rss-v2.xml"), -1, null);
+        Assert.assertEquals(-1, feed.getRefreshHint());
+    }
+
+    @Test
+    public void testHintsAfterEntries() throws Exception {
+        String rss = rss(50).replace("</channel>", "<ttl>90</ttl></channel>");
+        ParsedFeed feed = new StreamingFeedParser().parse(
+                new StringReader(rss), 5, null);
+        Assert.assertEquals(5, feed.getEntries().size());
+        Assert.assertTrue(feed.isTruncated());
+        Assert.assertEquals(90 * 60 * 1000, feed.getRefreshHint());
+    }
+
+}
@@ -0,0 +1,31 @@
+/*
+ * Copyright 2009 OW2 Chameleon
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ow2.chameleon.syndication;
+
+/**
+ * Selects feed entries, for example the entries to remove from a feed.
+ * @see FeedWriter#removeEntries(FeedEntryFilter)
+ * @since 1.1.0
+ */
+public interface FeedEntryFilter {
+
+    /**
+     * Checks whether an entry is selected.
+     * @param entry the entry
+     * @return <code>true</code> if the entry is selected.
+     */
+    public boolean accept(FeedEntry entry);
+
+}
@@ -14,6 +14,8 @@
  */
 package org.ow2.chameleon.syndication;
 
+import java.util.Collection;
+
 /**
  * Service defining methods to populate and manipulate a specific feed. The
  * format used by the feed depends on the implementation as well as the storage
@@ -26,7 +28,7 @@ package org.ow2.chameleon.syndication;
  * (String)</li>
  * </ul>
  * Providers must also post an event when a new entry is added to the feed.
- * @version 1.0.0
+ * @version 1.1.0
  * @author <a href="mailto:chameleon-dev@ow2.org">Chameleon Project Team</a>
  */
 public interface FeedWriter extends FeedReader {
@@ -46,11 +48,36 @@ public interface FeedWriter extends FeedReader {
     public void removeEntry(FeedEntry entry);
 
     /**
-     * Removes an entry.
+     * Removes an entry. If several entries have this title, the most recent
+     * one is removed.
      * @param title the title of the entry.
      */
     public void removeEntryByTitle(String title);
 
+    /**
+     * Removes an entry.
+     * @param id the id of the entry.
+     * @see IdentifiedFeedEntry#id()
+     * @since 1.1.0
+     */
+    public void removeEntryById(String id);
+
+    /**
+     * Removes a set of entries.
+     * @param entries the entries to remove.
+     * @return the number of removed entries.
+     * @since 1.1.0
+     */
+    public int removeEntries(Collection<FeedEntry> entries);
+
+    /**
+     * Removes the entries accepted by a filter.
+     * @param filter the filter selecting the entries to remove.
+     * @return the number of removed entries.
+     * @since 1.1.0
+     */
+    public int removeEntries(FeedEntryFilter filter);
+
     /**
      * Factory methods to create a new feed entry.
      * @return a new feed entry.
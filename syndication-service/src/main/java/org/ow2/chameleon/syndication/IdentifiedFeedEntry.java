@@ -0,0 +1,32 @@
+/*
+ * Copyright 2009 OW2 Chameleon
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.ow2.chameleon.syndication;
+
+/**
+ * Feed entry identified in its feed. The entries returned by the
+ * {@link FeedReader} and {@link FeedWriter} services implement this
+ * interface. Entries created by the clients do not need to.
+ * @since 1.1.0
+ */
+public interface IdentifiedFeedEntry extends FeedEntry {
+
+    /**
+     * Gets the entry id (RSS guid, Atom id). Unlike the title, the id
+     * identifies the entry in the feed.
+     * @return the id or <code>null</code> if not set.
+     */
+    public String id();
+
+}